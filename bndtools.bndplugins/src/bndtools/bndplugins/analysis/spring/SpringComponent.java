@@ -1,10 +1,6 @@
 package bndtools.bndplugins.analysis.spring;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -16,12 +12,10 @@ import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.InputSource;
 
 import aQute.bnd.service.AnalyzerPlugin;
 import aQute.bnd.service.Plugin;
@@ -34,8 +28,8 @@ import aQute.libg.reporter.Reporter;
  * This component is called when we find a resource in the META-INF/*.xml
  * pattern. We parse the resource and and the imports to the builder.
  *
- * Parsing is done with XSLT (first time I see the use of having XML for the
- * Spring configuration files!).
+ * Parsing is done in a single streaming SAX pass. No parser state is shared
+ * between calls, so several builds may analyse Spring resources concurrently.
  *
  * @author aqute
  *
@@ -45,45 +39,25 @@ public class SpringComponent implements AnalyzerPlugin, Plugin {
 	static final Pattern[] DEFAULT_SPRING_PATTERNS = new Pattern[] { Pattern.compile("META-INF/spring/.*\\.xml") };
 	static final Pattern QN = Pattern.compile("[_A-Za-z$][_A-Za-z0-9$]*(\\.[_A-Za-z$][_A-Za-z0-9$]*)*");
 
-	static Transformer transformer;
+	static final String FEATURE_LOAD_EXTERNAL_DTD = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
 
     private Reporter reporter;
     private Map<String, String> properties;
 
 	public static Set<CharSequence> analyze(InputStream in) throws Exception {
-		if (transformer == null) {
-			TransformerFactory tf = TransformerFactory.newInstance();
-			Source source = new StreamSource(SpringComponent.class.getResourceAsStream("extract.xsl"));
-			transformer = tf.newTransformer(source);
-		}
-
 		Set<CharSequence> refers = new HashSet<CharSequence>();
 
-		ByteArrayOutputStream bout = new ByteArrayOutputStream();
-		Result r = new StreamResult(bout);
-		Source s = new StreamSource(in);
-		transformer.transform(s, r);
-
-		ByteArrayInputStream bin = new ByteArrayInputStream(bout.toByteArray());
-		bout.close();
-
-		BufferedReader br = new BufferedReader(new InputStreamReader(bin));
-
-		String line = br.readLine();
-		while (line != null) {
-			line = line.trim();
-			if (line.length() > 0) {
-				String parts[] = line.split("\\s*,\\s*");
-				for (int i = 0; i < parts.length; i++) {
-					int n = parts[i].lastIndexOf('.');
-					if (n > 0) {
-						refers.add(parts[i].subSequence(0, n));
-					}
-				}
-			}
-			line = br.readLine();
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		factory.setValidating(false);
+		try {
+			factory.setFeature(FEATURE_LOAD_EXTERNAL_DTD, false);
+		} catch (Exception e) {
+			// Not supported by this parser; DTDs may be fetched
 		}
-		br.close();
+
+		SAXParser parser = factory.newSAXParser();
+		parser.parse(new InputSource(in), new SpringContextHandler(refers));
 		return refers;
 	}
 
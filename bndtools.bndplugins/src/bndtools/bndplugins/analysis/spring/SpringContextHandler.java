@@ -0,0 +1,103 @@
+package bndtools.bndplugins.analysis.spring;
+
+import java.util.BitSet;
+import java.util.Set;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX handler that collects the packages of all classes referenced from a
+ * Spring application context file in a single streaming pass. Instances hold
+ * per-document state only and must not be shared between parses.
+ */
+class SpringContextHandler extends DefaultHandler {
+
+    static final String NS_BEANS = "http://www.springframework.org/schema/beans";
+    static final String NS_AOP = "http://www.springframework.org/schema/aop";
+    static final String NS_CONTEXT = "http://www.springframework.org/schema/context";
+    static final String NS_JEE = "http://www.springframework.org/schema/jee";
+    static final String NS_LANG = "http://www.springframework.org/schema/lang";
+    static final String NS_OSGI = "http://www.springframework.org/schema/osgi";
+    static final String NS_UTIL = "http://www.springframework.org/schema/util";
+    static final String NS_WEBFLOW_CONFIG = "http://www.springframework.org/schema/webflow-config";
+
+    static final String OSGI_SERVICE_FACTORY_BEAN = "org.springframework.osgi.service.exporter.support.OsgiServiceFactoryBean";
+    static final String OSGI_SERVICE_PROXY_FACTORY_BEAN = "org.springframework.osgi.service.importer.support.OsgiServiceProxyFactoryBean";
+
+    private final Set<CharSequence> packages;
+
+    /** Element depths at which an OSGi service (proxy) factory bean is open. */
+    private final BitSet osgiFactoryBeanDepths = new BitSet();
+    private int depth = 0;
+
+    SpringContextHandler(Set<CharSequence> packages) {
+        this.packages = packages;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attribs) throws SAXException {
+        depth++;
+
+        if (NS_BEANS.equals(uri)) {
+            addClassNames(attribs.getValue("value-type"));
+            if ("bean".equals(localName)) {
+                String className = attribs.getValue("class");
+                addClassNames(className);
+                if (OSGI_SERVICE_FACTORY_BEAN.equals(className) || OSGI_SERVICE_PROXY_FACTORY_BEAN.equals(className))
+                    osgiFactoryBeanDepths.set(depth);
+            } else if ("property".equals(localName) && osgiFactoryBeanDepths.get(depth - 1) && "interfaces".equals(attribs.getValue("name"))) {
+                addClassNames(attribs.getValue("value"));
+            }
+        } else if (NS_AOP.equals(uri)) {
+            addClassNames(attribs.getValue("implement-interface"));
+            addClassNames(attribs.getValue("default-impl"));
+        } else if (NS_CONTEXT.equals(uri)) {
+            if ("load-time-weaver".equals(localName))
+                addClassNames(attribs.getValue("weaver-class"));
+        } else if (NS_JEE.equals(uri)) {
+            if ("jndi-lookup".equals(localName)) {
+                addClassNames(attribs.getValue("expected-type"));
+                addClassNames(attribs.getValue("proxy-interface"));
+            } else if ("remote-slsb".equals(localName)) {
+                addClassNames(attribs.getValue("ejbType"));
+            }
+            addClassNames(attribs.getValue("business-interface"));
+        } else if (NS_LANG.equals(uri)) {
+            addClassNames(attribs.getValue("script-interfaces"));
+        } else if (NS_OSGI.equals(uri)) {
+            addClassNames(attribs.getValue("interface"));
+        } else if (NS_UTIL.equals(uri)) {
+            if ("list".equals(localName))
+                addClassNames(attribs.getValue("list-class"));
+            else if ("set".equals(localName))
+                addClassNames(attribs.getValue("set-class"));
+            else if ("map".equals(localName))
+                addClassNames(attribs.getValue("map-class"));
+        } else if (NS_WEBFLOW_CONFIG.equals(uri)) {
+            addClassNames(attribs.getValue("class"));
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        osgiFactoryBeanDepths.clear(depth);
+        depth--;
+    }
+
+    /**
+     * Adds the package of each class name in a comma-separated list.
+     */
+    private void addClassNames(String value) {
+        if (value == null)
+            return;
+
+        String[] parts = value.trim().split("\\s*,\\s*");
+        for (String part : parts) {
+            int n = part.lastIndexOf('.');
+            if (n > 0)
+                packages.add(part.substring(0, n));
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package bndtools.bndplugins.repo.eclipse;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -18,7 +18,7 @@ import aQute.libg.reporter.Reporter;
 import aQute.libg.version.Version;
 import aQute.libg.version.VersionRange;
 
-public class EclipseRepo implements Plugin, RepositoryPlugin {
+public class EclipseRepo implements Plugin, RepositoryPlugin, Closeable {
 
     private static final String DEFAULT_VERSION = "0";
     private File root;
@@ -27,12 +27,22 @@ public class EclipseRepo implements Plugin, RepositoryPlugin {
 
     private Map<String, Map<String, File>> index;
 
+    private final SourceAugmenter augmenter = new SourceAugmenter();
+
     public static String LOCATION = "location";
     public static String NAME = "name";
 
 
+    /**
+     * Stops the background merging of source bundles.
+     */
+    public void close() {
+        augmenter.shutdown();
+    }
+
     public void setReporter(Reporter reporter) {
         this.reporter = reporter;
+        augmenter.setReporter(reporter);
     }
 
     public void setProperties(Map<String, String> map) {
@@ -192,29 +202,8 @@ public class EclipseRepo implements Plugin, RepositoryPlugin {
         cacheDir.mkdirs();
         File augmentedFile = new File(cacheDir, pluginFile.getName());
 
-        // Check if the augmented plugin needs to be (re)built
-        long originalTimestamp = Math.max(pluginFile.lastModified(), sourceFile.lastModified());
-        long augmentedTimestamp = (augmentedFile.isFile()) ? augmentedFile.lastModified() : 0;
-        try {
-            if(originalTimestamp > augmentedTimestamp) {
-                mergeSource(pluginFile, sourceFile, augmentedFile);
-            }
-            return augmentedFile;
-        } catch (Exception e) {
-            if(reporter != null)
-                reporter.error("Error merging plugin and source JARs");
-            return null;
-        }
-    }
-
-    private void mergeSource(File pluginFile, File sourceFile, File augmentedFile) throws Exception {
-            Jar mainJar = new Jar(pluginFile);
-            mainJar.setDoNotTouchManifest();
-            Jar sourceJar = new Jar(sourceFile);
-
-            mainJar.addAll(sourceJar, new Instruction(".*\\.java", false), "OSGI-OPT/src");
-            FileOutputStream out = new FileOutputStream(augmentedFile);
-            mainJar.write(out);
+        // Returns null and merges in the background if the augmented plugin needs to be (re)built
+        return augmenter.getAugmented(pluginFile, sourceFile, augmentedFile);
     }
 
     public File get(String bsn, String range, Strategy strategy, Map<String, String> properties) throws Exception {
@@ -0,0 +1,124 @@
+package bndtools.bndplugins.repo.eclipse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import aQute.lib.osgi.Instruction;
+import aQute.lib.osgi.Jar;
+import aQute.libg.reporter.Reporter;
+
+/**
+ * Merges plugin JARs with their source JARs in the background. Requests for a
+ * plugin whose merge is already queued or running share the same task, and the
+ * augmented file only appears once it has been completely written.
+ */
+class SourceAugmenter {
+
+    private static final int MAX_WORKERS = 2;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final ConcurrentMap<File, FutureTask<File>> inFlight = new ConcurrentHashMap<File, FutureTask<File>>();
+    private final ExecutorService executor;
+
+    private volatile Reporter reporter;
+
+    SourceAugmenter() {
+        // Workers are started on first use and are daemon threads, so an idle
+        // pool never keeps the VM alive
+        executor = Executors.newFixedThreadPool(MAX_WORKERS, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "EclipseRepo source augmenter " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    void setReporter(Reporter reporter) {
+        this.reporter = reporter;
+    }
+
+    /**
+     * Returns the augmented file if it is up to date with respect to the
+     * plugin and source files; otherwise schedules a merge (unless one is
+     * already pending for the same output file) and returns {@code null}, in
+     * which case the caller should fall back to the plain plugin file.
+     */
+    File getAugmented(final File pluginFile, final File sourceFile, final File augmentedFile) {
+        long originalTimestamp = Math.max(pluginFile.lastModified(), sourceFile.lastModified());
+        long augmentedTimestamp = (augmentedFile.isFile()) ? augmentedFile.lastModified() : 0;
+        if (originalTimestamp <= augmentedTimestamp)
+            return augmentedFile;
+
+        if (!inFlight.containsKey(augmentedFile)) {
+            FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+                public File call() throws Exception {
+                    try {
+                        mergeSource(pluginFile, sourceFile, augmentedFile);
+                        return augmentedFile;
+                    } catch (Exception e) {
+                        Reporter r = reporter;
+                        if (r != null)
+                            r.error("Error merging plugin and source JARs for %s: %s", pluginFile.getName(), e.getMessage());
+                        throw e;
+                    } finally {
+                        inFlight.remove(augmentedFile);
+                    }
+                }
+            });
+            if (inFlight.putIfAbsent(augmentedFile, task) == null)
+                executor.execute(task);
+        }
+        return null;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+        inFlight.clear();
+    }
+
+    private static void mergeSource(File pluginFile, File sourceFile, File augmentedFile) throws Exception {
+        File tempFile = new File(augmentedFile.getParentFile(), augmentedFile.getName() + TEMP_SUFFIX);
+
+        Jar mainJar = new Jar(pluginFile);
+        Jar sourceJar = new Jar(sourceFile);
+        try {
+            mainJar.setDoNotTouchManifest();
+            mainJar.addAll(sourceJar, new Instruction(".*\\.java", false), "OSGI-OPT/src");
+
+            FileOutputStream out = new FileOutputStream(tempFile);
+            try {
+                mainJar.write(out);
+            } finally {
+                out.close();
+            }
+        } catch (Exception e) {
+            tempFile.delete();
+            throw e;
+        } finally {
+            sourceJar.close();
+            mainJar.close();
+        }
+
+        // Rename into place. On some platforms the rename fails if the target exists.
+        if (!tempFile.renameTo(augmentedFile)) {
+            augmentedFile.delete();
+            if (!tempFile.renameTo(augmentedFile)) {
+                tempFile.delete();
+                throw new IOException("Failed to rename " + tempFile + " to " + augmentedFile);
+            }
+        }
+    }
+}
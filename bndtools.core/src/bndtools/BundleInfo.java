@@ -1,19 +1,75 @@
 package bndtools;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 
-import aQute.lib.osgi.Clazz;
+import aQute.libg.version.Version;
 
-class BundleInfo {
+/**
+ * The public classes of a single repository bundle. Class names are held as
+ * (package, short name) pairs sorted by short name, so the strings can be
+ * shared between bundles.
+ */
+public class BundleInfo {
+    final String repository;
     final String bsn;
     final String version;
     final File file;
-    final Map<String, List<Clazz>> clazzes;
+    final long lastModified;
+    final long length;
 
-    public BundleInfo(String bsn, String version, File file, Map<String, List<Clazz>> clazzes) {
-        this.bsn = bsn; this.version = version; this.file = file; this.clazzes = clazzes;
+    final String[] packages;
+    final String[] shortNames;
+
+    private final Version parsedVersion;
+
+    BundleInfo(String repository, String bsn, String version, File file, long lastModified, long length, String[] packages, String[] shortNames) {
+        this.repository = repository; this.bsn = bsn; this.version = version; this.file = file;
+        this.lastModified = lastModified; this.length = length;
+        this.packages = packages; this.shortNames = shortNames;
+        this.parsedVersion = parseVersion(version);
+    }
+
+    private static Version parseVersion(String version) {
+        if (version == null)
+            return Version.emptyVersion;
+        try {
+            return new Version(version.trim());
+        } catch (IllegalArgumentException e) {
+            return Version.emptyVersion;
+        }
+    }
+
+    static BundleInfo create(String repository, String bsn, String version, File file, List<String> classNames, StringPool pool) {
+        String[][] pairs = new String[classNames.size()][];
+        int i = 0;
+        for (String className : classNames) {
+            int dot = className.lastIndexOf('.');
+            String pkg = dot < 0 ? "" : className.substring(0, dot);
+            String shortName = className.substring(dot + 1);
+            pairs[i++] = new String[] { pool.intern(pkg), pool.intern(shortName) };
+        }
+        Arrays.sort(pairs, new Comparator<String[]>() {
+            public int compare(String[] o1, String[] o2) {
+                return o1[1].compareTo(o2[1]);
+            }
+        });
+
+        String[] packages = new String[pairs.length];
+        String[] shortNames = new String[pairs.length];
+        for (i = 0; i < pairs.length; i++) {
+            packages[i] = pairs[i][0];
+            shortNames[i] = pairs[i][1];
+        }
+        return new BundleInfo(pool.intern(repository), pool.intern(bsn), pool.intern(version), file, file.lastModified(), file.length(), packages, shortNames);
+    }
+
+    public String getRepository() {
+        return repository;
     }
 
     public String getBsn() {
@@ -24,7 +80,34 @@ class BundleInfo {
         return version;
     }
 
+    Version getParsedVersion() {
+        return parsedVersion;
+    }
+
     public File getFile() {
         return file;
     }
-}
\ No newline at end of file
+
+    boolean isUpToDate(File file) {
+        return file.lastModified() == lastModified && file.length() == length;
+    }
+
+    /**
+     * Returns the fully qualified names of the classes in this bundle with the
+     * given short name.
+     */
+    public List<String> getClassNames(String shortName) {
+        int index = Arrays.binarySearch(shortNames, shortName);
+        if (index < 0)
+            return Collections.emptyList();
+
+        int start = index;
+        while (start > 0 && shortNames[start - 1].equals(shortName))
+            start--;
+
+        List<String> result = new ArrayList<String>(1);
+        for (int i = start; i < shortNames.length && shortNames[i].equals(shortName); i++)
+            result.add(packages[i].length() == 0 ? shortName : packages[i] + "." + shortName);
+        return result;
+    }
+}
@@ -1,24 +1,26 @@
 package bndtools;
 
+import java.io.Closeable;
 import java.io.File;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.IResourceDelta;
-import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ResourcesPlugin;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
@@ -26,22 +28,68 @@ import org.eclipse.jdt.core.JavaCore;
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
 import aQute.bnd.service.Refreshable;
+import bndtools.builder.HeaderLineIndex;
 
 public class Central {
 
+    private static final boolean TRACE = "true".equalsIgnoreCase(Platform.getDebugOption(Plugin.PLUGIN_ID + "/debug/central"));
+
+    // Loaded from its own JAR by the bnd workspace, so it can only be matched by name
+    private static final String ECLIPSE_REPO_CLASS = "bndtools.bndplugins.repo.eclipse.EclipseRepo";
+
     static Workspace workspace = null;
     static WorkspaceObrProvider workspaceObr = null;
 
-    final Map<IJavaProject, Project> javaProjectToModel = new HashMap<IJavaProject, Project>();
+    // Registry of the bnd models of Eclipse projects, indexed both ways
+    final ConcurrentMap<IProject, Project> projectToModel = new ConcurrentHashMap<IProject, Project>();
+    final ConcurrentMap<String, IProject> nameToProject = new ConcurrentHashMap<String, IProject>();
+    final ConcurrentMap<File, IProject> baseToProject = new ConcurrentHashMap<File, IProject>();
     final List<ModelListener>        listeners          = new CopyOnWriteArrayList<ModelListener>();
 
-    Central() { }
+    // One lock per project, so that loading one model does not hold up the others
+    private final ConcurrentMap<IProject, Object> modelLocks = new ConcurrentHashMap<IProject, Object>();
+
+    private final IResourceChangeListener projectRemovalListener = new IResourceChangeListener() {
+        public void resourceChanged(IResourceChangeEvent event) {
+            IResource resource = event.getResource();
+            if (resource instanceof IProject) {
+                unregister((IProject) resource);
+                IPath location = resource.getLocation();
+                if (location != null)
+                    HeaderLineIndex.evict(location.toFile());
+            }
+        }
+    };
+
+    Central() {
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(projectRemovalListener, IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+    }
 
     public Project getModel(IJavaProject project) {
-        try {
-            Project model = javaProjectToModel.get(project);
-             if (model == null) {
-                File projectDir = project.getProject().getLocation().makeAbsolute().toFile();
+        IProject iproject = project.getProject();
+        Project model = projectToModel.get(iproject);
+        if (model != null)
+            return model;
+
+        // Only one thread creates a model; the others wait for it rather than creating their own
+        Object lock = modelLocks.get(iproject);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = modelLocks.putIfAbsent(iproject, newLock);
+            if (lock == null)
+                lock = newLock;
+        }
+        long start = TRACE ? System.nanoTime() : 0;
+        synchronized (lock) {
+            if (TRACE)
+                trace("waited %d us for the model lock to load %s", (System.nanoTime() - start) / 1000, iproject.getName());
+
+            model = projectToModel.get(iproject);
+            if (model != null)
+                return model;
+
+            try {
+                File projectDir = iproject.getLocation().makeAbsolute().toFile();
                 try {
                     model = Workspace.getProject(projectDir);
                 } catch (IllegalArgumentException e) {
@@ -53,99 +101,99 @@ public class Central {
                     model.getWorkspace();
                 }
                 if (model != null) {
-                    javaProjectToModel.put(project, model);
+                    register(iproject, model);
                 }
+                return model;
+            } catch (Exception e) {
+                // TODO do something more useful here
+                throw new RuntimeException(e);
+            } finally {
+                if (TRACE)
+                    trace("held the model lock for %d us to load %s", (System.nanoTime() - start) / 1000, iproject.getName());
             }
-            return model;
-        } catch (Exception e) {
-            // TODO do something more useful here
-            throw new RuntimeException(e);
+        }
+    }
+
+    private void register(IProject project, Project model) {
+        projectToModel.put(project, model);
+        nameToProject.put(model.getName(), project);
+        baseToProject.put(model.getBase().getAbsoluteFile(), project);
+    }
+
+    private void unregister(IProject project) {
+        modelLocks.remove(project);
+        Project model = projectToModel.remove(project);
+        if (model != null) {
+            nameToProject.remove(model.getName(), project);
+            baseToProject.remove(model.getBase().getAbsoluteFile(), project);
+            if (TRACE)
+                trace("unregistered %s", project.getName());
         }
     }
 
     /**
      * Implementation of the resource changed interface. We are checking in the
-     * POST_CHANGE phase if one of our tracked models needs to be updated.
+     * POST_CHANGE phase if one of our tracked models needs to be updated. Only
+     * the project level of the delta is examined, together with the
+     * {@code bnd.bnd} file of each project and the contents of {@code cnf}.
      */
-    public synchronized void resourceChanged(IResourceChangeEvent event) {
+    public void resourceChanged(IResourceChangeEvent event) {
         if (event.getType() != IResourceChangeEvent.POST_CHANGE)
             return;
 
-        IResourceDelta rootDelta = event.getDelta();
+        long start = TRACE ? System.nanoTime() : 0;
         try {
-            final Set<Project> changed = new HashSet<Project>();
-            rootDelta.accept(new IResourceDeltaVisitor() {
-                public boolean visit(IResourceDelta delta) throws CoreException {
-                    try {
-
-                        IPath location = delta.getResource().getLocation();
-                        if (location == null) {
-                            System.out
-                                    .println("Cannot convert resource to file: "
-                                            + delta.getResource());
-                        } else {
-                            File file = location.toFile();
-                            File parent = file.getParentFile();
-                            boolean parentIsWorkspace = parent
-                                    .equals(getWorkspace().getBase());
-
-                            // file
-                            // /development/osgi/svn/build/org.osgi.test.cases.distribution/bnd.bnd
-                            // parent
-                            // /development/osgi/svn/build/org.osgi.test.cases.distribution
-                            // workspace /development/amf/workspaces/osgi
-                            // false
-
-                            if (parent != null && parentIsWorkspace) {
-                                // We now are on project level, we do not go
-                                // deeper
-                                // because projects/workspaces should check for
-                                // any
-                                // changes.
-                                // We are careful not to create unnecessary
-                                // projects
-                                // here.
-                                if (file.getName().equals(Workspace.CNFDIR)) {
-                                    if (workspace.refresh()) {
-                                        changed.addAll(workspace
-                                                .getCurrentProjects());
-                                    }
-                                    return false;
-                                }
-                                if (workspace.isPresent(file.getName())) {
-                                    Project project = workspace.getProject(file
-                                            .getName());
-                                    changed.add(project);
-                                } else {
-                                    ; // Project not created yet, so we
-                                    // have
-                                    // no cached results
-
-                                }
-                                return false;
-                            }
-                        }
-                        return true;
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        throw new CoreException(new Status(Status.ERROR,
-                                Activator.PLUGIN_ID,
-                                "During checking project changes", e));
-                    }
+            File base = getWorkspace().getBase();
+            Set<Project> changed = new HashSet<Project>();
+            for (IResourceDelta projectDelta : event.getDelta().getAffectedChildren()) {
+                IPath location = projectDelta.getResource().getLocation();
+                if (location == null)
+                    continue;
+                File file = location.toFile();
+                if (!base.equals(file.getParentFile()))
+                    continue;
+
+                if (file.getName().equals(Workspace.CNFDIR)) {
+                    if (isContentChange(projectDelta) && workspace.refresh())
+                        changed.addAll(workspace.getCurrentProjects());
+                } else if (isProjectChange(projectDelta) && workspace.isPresent(file.getName())) {
+                    changed.add(workspace.getProject(file.getName()));
                 }
-
-            });
+            }
 
             for (Project p : changed) {
                 p.refresh();
                 changed(p);
-
             }
-        } catch (CoreException e) {
+        } catch (Exception e) {
             Activator.getDefault().error("While handling changes", e);
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+        } finally {
+            if (TRACE)
+                trace("processed resource delta in %d us", (System.nanoTime() - start) / 1000);
+        }
+    }
+
+    private static boolean isProjectChange(IResourceDelta projectDelta) {
+        if (projectDelta.getKind() != IResourceDelta.CHANGED || (projectDelta.getFlags() & IResourceDelta.OPEN) != 0)
+            return true;
+        IResourceDelta bndDelta = projectDelta.findMember(new Path(Project.BNDFILE));
+        return bndDelta != null && bndDelta.getFlags() != IResourceDelta.MARKERS;
+    }
+
+    private static boolean isContentChange(IResourceDelta delta) {
+        if (delta.getKind() != IResourceDelta.CHANGED)
+            return true;
+        if (delta.getResource().getType() == IResource.FILE)
+            return delta.getFlags() != IResourceDelta.MARKERS;
+        for (IResourceDelta child : delta.getAffectedChildren()) {
+            if (isContentChange(child))
+                return true;
         }
+        return false;
+    }
+
+    private static void trace(String message, Object... args) {
+        Plugin.log(new Status(IStatus.INFO, Plugin.PLUGIN_ID, 0, Thread.currentThread().getName() + ": " + String.format(message, args), null));
     }
 
     public static IFile getWorkspaceBuildFile() throws Exception {
@@ -219,14 +267,18 @@ public class Central {
     }
 
     public IJavaProject getJavaProject(Project model) {
-        for (IProject iproj : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
-            if (iproj.getName().equals(model.getName())) {
-                IJavaProject ij = JavaCore.create(iproj);
-                if (ij != null && ij.exists()) {
-                    return ij;
-                }
-                // current project is not a Java project
+        IProject iproj = baseToProject.get(model.getBase().getAbsoluteFile());
+        if (iproj == null)
+            iproj = nameToProject.get(model.getName());
+        if (iproj == null)
+            iproj = ResourcesPlugin.getWorkspace().getRoot().getProject(model.getName());
+
+        if (iproj.exists()) {
+            IJavaProject ij = JavaCore.create(iproj);
+            if (ij != null && ij.exists()) {
+                return ij;
             }
+            // current project is not a Java project
         }
         return null;
     }
@@ -294,6 +346,25 @@ public class Central {
     }
 
     public void close() {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(projectRemovalListener);
+
+        // Let the Eclipse repositories stop their source augmenter threads. Other
+        // workspace plugins are owned by bnd and are left alone.
+        Workspace ws;
+        synchronized (Central.class) {
+            ws = workspace;
+        }
+        if (ws != null) {
+            for (Closeable plugin : ws.getPlugins(Closeable.class)) {
+                if (!ECLIPSE_REPO_CLASS.equals(plugin.getClass().getName()))
+                    continue;
+                try {
+                    plugin.close();
+                } catch (Exception e) {
+                    Plugin.logError("Error closing workspace plugin " + plugin, e);
+                }
+            }
+        }
     }
 
 }
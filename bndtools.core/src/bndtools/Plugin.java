@@ -10,16 +10,15 @@
  *******************************************************************************/
 package bndtools;
 
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.bndtools.core.obr.ObrResolutionJob;
+import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IWorkspace;
-import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.dialogs.ErrorDialog;
 import org.eclipse.jface.dialogs.MessageDialog;
@@ -34,8 +33,13 @@ import org.osgi.service.url.URLStreamHandlerService;
 import org.osgi.util.tracker.ServiceTracker;
 
 import aQute.bnd.build.Workspace;
+import aQute.bnd.service.RepositoryListenerPlugin;
 import aQute.lib.osgi.Processor;
 import aQute.libg.version.Version;
+import bndtools.builder.ValidatorRegistry;
+import bndtools.javamodel.JavaProjectIndexes;
+import bndtools.launch.RunProjectCache;
+import bndtools.refactor.BndFilePackageIndex;
 import bndtools.services.WorkspaceURLStreamHandlerService;
 
 public class Plugin extends AbstractUIPlugin {
@@ -61,9 +65,13 @@ public class Plugin extends AbstractUIPlugin {
 
 	private BundleContext bundleContext;
 	private Activator bndActivator;
-	private final List<IStartupParticipant> startupParticipants = new LinkedList<IStartupParticipant>();
+	private volatile StartupParticipantRunner startupParticipants;
+
+    private static final long REPOSITORY_INDEX_DELAY = 5000;
 
     private volatile RepositoryModel repositoryModel;
+    private volatile BndFilePackageIndex bndFilePackageIndex;
+    private volatile ServiceRegistration repositoryModelReg;
     private volatile ServiceTracker workspaceTracker;
     private volatile ServiceRegistration urlHandlerReg;
     private volatile IndexerTracker indexerTracker;
@@ -89,6 +97,16 @@ public class Plugin extends AbstractUIPlugin {
         central = new Central();
 
         repositoryModel = new RepositoryModel();
+        repositoryModelReg = context.registerService(RepositoryListenerPlugin.class.getName(), repositoryModel, null);
+        new RepositoryIndexerJob(repositoryModel).schedule(REPOSITORY_INDEX_DELAY);
+
+        bndFilePackageIndex = new BndFilePackageIndex();
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(bndFilePackageIndex, IResourceChangeEvent.POST_CHANGE);
+
+        JavaProjectIndexes.start();
+        RunProjectCache.start();
+        ObrResolutionJob.start();
+        ValidatorRegistry.start();
 
         runStartupParticipants();
     }
@@ -110,33 +128,13 @@ public class Plugin extends AbstractUIPlugin {
     }
 
     private void runStartupParticipants() {
-        IConfigurationElement[] elements = Platform.getExtensionRegistry().getConfigurationElementsFor(PLUGIN_ID, "bndtoolsStartupParticipant");
-
-        for (IConfigurationElement element : elements) {
-            try {
-                Object obj = element.createExecutableExtension("class");
-                if (obj instanceof Runnable) {
-                    Runnable participant = (Runnable) obj;
-                    participant.run();
-                } else if (obj instanceof IStartupParticipant) {
-                    IStartupParticipant isp = (IStartupParticipant) obj;
-                    startupParticipants.add(isp);
-                    isp.start();
-                }
-            } catch (CoreException e) {
-                logError("Error executing startup participant", e);
-            }
-        }
+        startupParticipants = new StartupParticipantRunner();
+        startupParticipants.start();
     }
 
     private void stopStartupParticipants() {
-        for (IStartupParticipant isp : startupParticipants) {
-            try {
-                isp.stop();
-            } catch (Exception e) {
-                logError("Error stopping startup participant", e);
-            }
-        }
+        if (startupParticipants != null)
+            startupParticipants.stop();
     }
 
 	private void unregisterWorkspaceURLHandler() {
@@ -147,6 +145,13 @@ public class Plugin extends AbstractUIPlugin {
     @Override
     public void stop(BundleContext context) throws Exception {
         stopStartupParticipants();
+        repositoryModelReg.unregister();
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(bndFilePackageIndex);
+        JavaProjectIndexes.stop();
+        RunProjectCache.stop();
+        ObrResolutionJob.stop();
+        ValidatorRegistry.stop();
+        RefreshFileJob.stop();
 
         bndActivator.stop(context);
         central.close();
@@ -178,6 +183,10 @@ public class Plugin extends AbstractUIPlugin {
         return repositoryModel;
     }
 
+    public BndFilePackageIndex getBndFilePackageIndex() {
+        return bndFilePackageIndex;
+    }
+
     public void report(boolean warnings, boolean acknowledge , Processor reporter, final String title, final String extra ) {
         if (reporter.getErrors().size() > 0
                 || (warnings && reporter.getWarnings().size() > 0)) {
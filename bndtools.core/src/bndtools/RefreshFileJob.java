@@ -1,57 +1,241 @@
 package bndtools;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.resources.WorkspaceJob;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 
+/**
+ * Refreshes files changed outside Eclipse, e.g. by bnd, into the workspace.
+ * Files requested within a short delay of each other are refreshed together
+ * in one run of the job: the requests are reduced to the smallest set of
+ * resources that covers them, each refreshed with the smallest depth that
+ * picks up the change, and the derived flags of the resources that were
+ * actually refreshed are set in the same run.
+ */
 public class RefreshFileJob extends WorkspaceJob {
 
-    private final File file;
-    private final boolean derived;
+    private static final long COALESCE_DELAY = 100;
 
-    private final IResource resource;
-    private final int depth;
+    private static final RefreshFileJob instance = new RefreshFileJob();
 
-    public RefreshFileJob(File file, boolean derived) throws Exception {
-        super("Refreshing " + file);
-        this.file = file;
-        this.derived = derived;
+    // Requested files, mapped to the derived flag they should get, or null to leave it as it is
+    private final Map<File, Boolean> requests = new LinkedHashMap<File, Boolean>();
 
-        IPath wsPath = Central.toPath(file);
-        IResource target;
-        if (wsPath == null) {
-            target = null;
-            this.depth = 0;
-        } else if (file.isFile()) {
-            target = ResourcesPlugin.getWorkspace().getRoot().getFile(wsPath);
-            this.depth = 0;
-        } else if (file.isDirectory()) {
-            target = ResourcesPlugin.getWorkspace().getRoot().getFolder(wsPath);
-            this.depth = IResource.DEPTH_INFINITE;
-        } else {
-            target = ResourcesPlugin.getWorkspace().getRoot().getFolder(wsPath.removeLastSegments(1));
-            this.depth = IResource.DEPTH_INFINITE;
+    private RefreshFileJob() {
+        super("Refreshing files");
+        setSystem(true);
+    }
+
+    /**
+     * Schedules a refresh of the file, which may be a directory or a file that
+     * has been deleted, without changing its derived flag.
+     */
+    public static void refresh(File file) {
+        request(file, null);
+    }
+
+    /**
+     * Schedules a refresh of the file, which may be a directory or a file that
+     * has been deleted.
+     *
+     * @param derived
+     *            the derived flag to set on the file's resource if it is
+     *            refreshed.
+     */
+    public static void refresh(File file, boolean derived) {
+        request(file, derived);
+    }
+
+    private static void request(File file, Boolean derived) {
+        synchronized (instance.requests) {
+            // A file marked as derived by one request stays derived
+            Boolean previous = instance.requests.get(file);
+            if (previous != null && (derived == null || previous.booleanValue()))
+                derived = previous;
+            instance.requests.put(file, derived);
         }
+        // Rescheduling a job that has not run yet would postpone it again, so
+        // a steady stream of requests could keep it from ever running
+        int state = instance.getState();
+        if (state != Job.SLEEPING && state != Job.WAITING)
+            instance.schedule(COALESCE_DELAY);
+    }
 
-        this.resource = target;
+    /**
+     * Cancels the refresh of any files that have not been refreshed yet.
+     */
+    static void stop() {
+        synchronized (instance.requests) {
+            instance.requests.clear();
+        }
+        instance.cancel();
     }
 
-    public boolean needsToSchedule() {
-        return resource != null && !resource.isSynchronized(depth);
+    private static class Refresh {
+        final IResource resource;
+        final int depth;
+
+        Refresh(IResource resource, int depth) {
+            this.resource = resource;
+            this.depth = depth;
+        }
     }
 
     @Override
     public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException {
-        resource.refreshLocal(depth, monitor);
-        resource.setDerived(derived);
+        Map<File, Boolean> pending;
+        synchronized (requests) {
+            pending = new LinkedHashMap<File, Boolean>(requests);
+            requests.clear();
+        }
+
+        MultiStatus status = new MultiStatus(Plugin.PLUGIN_ID, 0, "Errors occurred while refreshing files", null);
+        IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+
+        // Work out what to refresh for each file, keeping the deepest refresh of each resource
+        Map<IPath, Refresh> refreshes = new HashMap<IPath, Refresh>();
+        Map<IPath, Boolean> derivedFlags = new LinkedHashMap<IPath, Boolean>();
+        Map<IPath, IPath> refreshedBy = new HashMap<IPath, IPath>();
+        for (Entry<File, Boolean> request : pending.entrySet()) {
+            File file = request.getKey();
+            IPath path;
+            try {
+                path = Central.toPath(file);
+            } catch (Exception e) {
+                status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error refreshing " + file, e));
+                continue;
+            }
+            if (path == null)
+                continue;
+
+            Refresh refresh = calculateRefresh(root, file, path);
+            if (refresh != null) {
+                Refresh existing = refreshes.get(refresh.resource.getFullPath());
+                if (existing == null || existing.depth < refresh.depth)
+                    refreshes.put(refresh.resource.getFullPath(), refresh);
+            }
+            if (refresh != null && request.getValue() != null) {
+                derivedFlags.put(path, request.getValue());
+                refreshedBy.put(path, refresh.resource.getFullPath());
+            }
+        }
 
-        return Status.OK_STATUS;
+        // Drop resources that are covered by a deep refresh of one of their ancestors
+        List<Refresh> sorted = new ArrayList<Refresh>(refreshes.values());
+        Collections.sort(sorted, new Comparator<Refresh>() {
+            public int compare(Refresh r1, Refresh r2) {
+                return r1.resource.getFullPath().segmentCount() - r2.resource.getFullPath().segmentCount();
+            }
+        });
+        Set<IPath> deep = new HashSet<IPath>();
+        List<Refresh> minimal = new ArrayList<Refresh>(sorted.size());
+        for (Refresh refresh : sorted) {
+            IPath path = refresh.resource.getFullPath();
+            if (isCovered(path, deep))
+                continue;
+            minimal.add(refresh);
+            if (refresh.depth == IResource.DEPTH_INFINITE)
+                deep.add(path);
+        }
+
+        SubMonitor progress = SubMonitor.convert(monitor, minimal.size() + 1);
+        Set<IPath> refreshed = new HashSet<IPath>();
+        Set<IPath> refreshedDeep = new HashSet<IPath>();
+        for (Refresh refresh : minimal) {
+            try {
+                if (!refresh.resource.isSynchronized(refresh.depth)) {
+                    IPath path = refresh.resource.getFullPath();
+                    refreshed.add(path);
+                    if (refresh.depth == IResource.DEPTH_INFINITE)
+                        refreshedDeep.add(path);
+                    refresh.resource.refreshLocal(refresh.depth, progress.newChild(1));
+                } else {
+                    progress.worked(1);
+                }
+            } catch (CoreException e) {
+                status.add(e.getStatus());
+            }
+            if (progress.isCanceled())
+                return Status.CANCEL_STATUS;
+        }
+
+        // Only touch the derived flag of resources that were out of sync, as other requests may have set it
+        for (Entry<IPath, Boolean> entry : derivedFlags.entrySet()) {
+            IPath refreshPath = refreshedBy.get(entry.getKey());
+            if (!refreshed.contains(refreshPath) && !isCovered(refreshPath, refreshedDeep))
+                continue;
+            IResource resource = root.findMember(entry.getKey());
+            boolean derived = entry.getValue();
+            try {
+                if (resource != null && resource.isDerived() != derived)
+                    resource.setDerived(derived);
+            } catch (CoreException e) {
+                status.add(e.getStatus());
+            }
+        }
+        progress.worked(1);
+
+        return status.isOK() ? Status.OK_STATUS : status;
+    }
+
+    /**
+     * Returns the refresh that picks up a change to the file, or null if there
+     * is nothing to refresh.
+     */
+    private static Refresh calculateRefresh(IWorkspaceRoot root, File file, IPath path) {
+        if (!file.exists()) {
+            // Deleted: only the resource itself needs to go, if the workspace knows it
+            IResource resource = root.findMember(path);
+            return resource != null ? new Refresh(resource, IResource.DEPTH_ZERO) : null;
+        }
+
+        // Find the closest ancestor that the workspace already knows about
+        IPath parentPath = path.removeLastSegments(1);
+        IResource parent = root.findMember(parentPath);
+        if (parent instanceof IContainer) {
+            if (file.isDirectory()) {
+                IResource resource = path.segmentCount() == 1 ? root.getProject(path.segment(0)) : root.getFolder(path);
+                return new Refresh(resource, IResource.DEPTH_INFINITE);
+            }
+            return new Refresh(root.getFile(path), IResource.DEPTH_ZERO);
+        }
+
+        // A new directory: refresh the topmost new folder with everything below it
+        IPath known = parentPath;
+        while (known.segmentCount() > 1 && root.findMember(known.removeLastSegments(1)) == null)
+            known = known.removeLastSegments(1);
+        if (known.segmentCount() < 2)
+            return null;
+        return new Refresh(root.getFolder(known), IResource.DEPTH_INFINITE);
+    }
+
+    private static boolean isCovered(IPath path, Set<IPath> deep) {
+        for (IPath ancestor = path.removeLastSegments(1); ancestor.segmentCount() > 0; ancestor = ancestor.removeLastSegments(1)) {
+            if (deep.contains(ancestor))
+                return true;
+        }
+        return false;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,182 @@
+package bndtools;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+
+import aQute.bnd.service.RemoteRepositoryPlugin;
+import aQute.bnd.service.RepositoryPlugin;
+import aQute.bnd.service.RepositoryPlugin.Strategy;
+import aQute.bnd.service.ResourceHandle;
+import aQute.bnd.service.ResourceHandle.Location;
+import aQute.libg.version.Version;
+
+/**
+ * Fills the {@link RepositoryModel} from the workspace repositories. Bundles
+ * whose file is unchanged since it was last indexed are skipped, so after the
+ * first run only new or modified bundles are scanned. Remote bundles are only
+ * indexed once they are in the local cache; nothing is downloaded.
+ */
+public class RepositoryIndexerJob extends Job {
+
+    private static final String CACHE_REPOSITORY = "cache";
+
+    private static final ISchedulingRule MUTEX = new ISchedulingRule() {
+        public boolean isConflicting(ISchedulingRule rule) {
+            return rule == this;
+        }
+        public boolean contains(ISchedulingRule rule) {
+            return rule == this;
+        }
+    };
+
+    private final RepositoryModel model;
+    private final Map<RepositoryPlugin, File> files;
+
+    /**
+     * Create a job that re-indexes all repositories.
+     */
+    public RepositoryIndexerJob(RepositoryModel model) {
+        this(model, null);
+    }
+
+    /**
+     * Create a job that indexes only the specified files.
+     */
+    public RepositoryIndexerJob(RepositoryModel model, Map<RepositoryPlugin, File> files) {
+        super("Indexing repository classes");
+        this.model = model;
+        this.files = files;
+        setSystem(true);
+        setPriority(Job.DECORATE);
+        setRule(MUTEX);
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        MultiStatus status = new MultiStatus(Plugin.PLUGIN_ID, 0, "Problems occurred while indexing repository classes.", null);
+        loadModel(status);
+
+        if (files != null) {
+            SubMonitor progress = SubMonitor.convert(monitor, files.size());
+            for (Entry<RepositoryPlugin, File> entry : files.entrySet())
+                indexFile(entry.getKey(), entry.getValue(), progress.newChild(1), status);
+        } else {
+            if (!indexAll(monitor, status))
+                return Status.CANCEL_STATUS;
+        }
+
+        saveModel(status);
+        return status;
+    }
+
+    private boolean indexAll(IProgressMonitor monitor, MultiStatus status) {
+        List<RepositoryPlugin> repos;
+        try {
+            repos = Central.getWorkspace().getPlugins(RepositoryPlugin.class);
+        } catch (Exception e) {
+            status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error listing repositories.", e));
+            return true;
+        }
+
+        SubMonitor progress = SubMonitor.convert(monitor, repos.size());
+        Set<File> seen = new HashSet<File>();
+        for (RepositoryPlugin repo : repos) {
+            if (progress.isCanceled())
+                return false;
+            SubMonitor repoProgress = progress.newChild(1);
+            if (CACHE_REPOSITORY.equals(repo.getName()))
+                continue;
+
+            try {
+                List<String> bsns = repo.list(null);
+                if (bsns == null)
+                    continue;
+                repoProgress.setWorkRemaining(bsns.size());
+                for (String bsn : bsns) {
+                    if (repoProgress.isCanceled())
+                        return false;
+                    List<Version> versions = repo.versions(bsn);
+                    if (versions != null) for (Version version : versions) {
+                        File file = getLocalFile(repo, bsn, version);
+                        if (file != null && seen.add(file))
+                            indexFile(repo, file, null, status);
+                    }
+                    repoProgress.worked(1);
+                }
+            } catch (Exception e) {
+                status.add(new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, MessageFormat.format("Error indexing repository {0}.", repo.getName()), e));
+            }
+        }
+
+        model.retainBundles(seen);
+        return true;
+    }
+
+    private void indexFile(RepositoryPlugin repo, File file, IProgressMonitor monitor, MultiStatus status) {
+        try {
+            model.updateRepositoryBundle(repo, file, monitor);
+        } catch (CoreException e) {
+            status.add(e.getStatus());
+        } catch (Exception e) {
+            status.add(new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, MessageFormat.format("Error indexing bundle {0}.", file.getPath()), e));
+        }
+    }
+
+    private static File getLocalFile(RepositoryPlugin repo, String bsn, Version version) throws Exception {
+        String range = "[" + version + "," + version + "]";
+        File file;
+        if (repo instanceof RemoteRepositoryPlugin) {
+            ResourceHandle handle = ((RemoteRepositoryPlugin) repo).getHandle(bsn, range, Strategy.HIGHEST, null);
+            if (handle != null && (handle.getLocation() == Location.local || handle.getLocation() == Location.remote_cached))
+                file = handle.request();
+            else
+                file = null;
+        } else {
+            file = repo.get(bsn, range, Strategy.HIGHEST, null);
+        }
+        return file != null && file.exists() ? file : null;
+    }
+
+    private void loadModel(MultiStatus status) {
+        File indexFile = getIndexFile();
+        if (indexFile == null)
+            return;
+        try {
+            model.load(indexFile);
+        } catch (Exception e) {
+            status.add(new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, "Error loading repository class index.", e));
+        }
+    }
+
+    private void saveModel(MultiStatus status) {
+        File indexFile = getIndexFile();
+        if (indexFile == null)
+            return;
+        try {
+            model.save(indexFile);
+        } catch (Exception e) {
+            status.add(new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, "Error saving repository class index.", e));
+        }
+    }
+
+    private static File getIndexFile() {
+        Plugin plugin = Plugin.getDefault();
+        if (plugin == null)
+            return null;
+        return new File(plugin.getStateLocation().toFile(), RepositoryModel.INDEX_FILE_NAME);
+    }
+}
@@ -1,15 +1,24 @@
 package bndtools;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.SortedMap;
 
@@ -22,30 +31,46 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 
+import aQute.bnd.service.RepositoryListenerPlugin;
 import aQute.bnd.service.RepositoryPlugin;
-import aQute.lib.osgi.Builder;
-import aQute.lib.osgi.Clazz;
 import aQute.lib.osgi.Jar;
 import bndtools.types.Pair;
+import bndtools.utils.BundleClassScanner;
 
-public class RepositoryModel {
+/**
+ * Index of the public classes in all repository bundles, keyed by short class
+ * name. The index is filled in the background by {@link RepositoryIndexerJob}
+ * and persisted in the plugin state location as a string table followed by
+ * one record per bundle; the name trie is rebuilt from those records on load.
+ */
+public class RepositoryModel implements RepositoryListenerPlugin {
 
-    private Trie<String, Map<File, BundleInfo>> nameLookup = new PatriciaTrie<String, Map<File, BundleInfo>>(new StringKeyAnalyzer());
-    private Map<File, Set<String>> reverseLookup = new HashMap<File, Set<String>>();
+    static final String INDEX_FILE_NAME = "repositoryIndex.dat";
 
-    public List<Pair<Clazz, BundleInfo>> findMatches(String prefix) {
-        List<Pair<Clazz, BundleInfo>> result = new LinkedList<Pair<Clazz,BundleInfo>>();
+    private static final int FORMAT_MAGIC = 0x424e4443;
+    private static final int FORMAT_VERSION = 1;
+    private static final int NULL_STRING = -1;
 
-        SortedMap<String,Map<File,BundleInfo>> map = nameLookup.getPrefixedBy(prefix);
-        if(map != null) for (Entry<String, Map<File, BundleInfo>> entry : map.entrySet()) {
+    private final Trie<String, Map<File, BundleInfo>> nameLookup = new PatriciaTrie<String, Map<File, BundleInfo>>(new StringKeyAnalyzer());
+    private final Map<File, BundleInfo> bundles = new HashMap<File, BundleInfo>();
+    private final StringPool pool = new StringPool();
+
+    private boolean loaded = false;
+    private boolean dirty = false;
+
+    /**
+     * Returns the classes whose short name starts with the given prefix,
+     * together with the bundle that contains each of them.
+     */
+    public synchronized List<Pair<String, BundleInfo>> findMatches(String prefix) {
+        List<Pair<String, BundleInfo>> result = new LinkedList<Pair<String, BundleInfo>>();
+
+        SortedMap<String, Map<File, BundleInfo>> map = nameLookup.getPrefixedBy(prefix);
+        if (map != null) for (Entry<String, Map<File, BundleInfo>> entry : map.entrySet()) {
             String shortName = entry.getKey();
-            Map<File, BundleInfo> fileMap = entry.getValue();
-            for (Entry<File, BundleInfo> fileEntry : fileMap.entrySet()) {
-                BundleInfo bundleInfo = fileEntry.getValue();
-                List<Clazz> list = bundleInfo.clazzes.get(shortName);
-                for (Clazz clazz : list) {
-                    Pair<Clazz, BundleInfo> pair = new Pair<Clazz, BundleInfo>(clazz, bundleInfo);
-                    result.add(pair);
+            for (BundleInfo bundleInfo : entry.getValue().values()) {
+                for (String className : bundleInfo.getClassNames(shortName)) {
+                    result.add(new Pair<String, BundleInfo>(className, bundleInfo));
                 }
             }
         }
@@ -53,26 +78,213 @@ public class RepositoryModel {
         return result;
     }
 
-    private synchronized void insertBundleInfo(BundleInfo info) {
-        for (Entry<String, List<Clazz>> entry : info.clazzes.entrySet()) {
-            String shortName = entry.getKey();
+    /**
+     * Returns the bundles that contain a class with exactly the given short
+     * name.
+     */
+    public synchronized Collection<BundleInfo> findBundles(String shortName) {
+        Map<File, BundleInfo> map = nameLookup.get(shortName);
+        if (map == null)
+            return Collections.emptyList();
+        return new ArrayList<BundleInfo>(map.values());
+    }
+
+    /**
+     * Returns the classes with exactly the given short name and the bundles
+     * providing them, ranked for use in quick fixes. See
+     * {@link #findProvidersByPrefix(String, Map, Set, int)} for the ranking.
+     *
+     * @param repositoryOrder
+     *            the order of the workspace repositories, from
+     *            {@link #getRepositoryOrder()}.
+     */
+    public List<Pair<String, BundleInfo>> findProviders(String shortName, Map<String, Integer> repositoryOrder) {
+        List<Pair<String, BundleInfo>> candidates = new ArrayList<Pair<String, BundleInfo>>();
+        synchronized (this) {
+            Map<File, BundleInfo> map = nameLookup.get(shortName);
+            if (map != null) for (BundleInfo bundleInfo : map.values()) {
+                for (String className : bundleInfo.getClassNames(shortName))
+                    candidates.add(new Pair<String, BundleInfo>(className, bundleInfo));
+            }
+        }
+        return rank(candidates, repositoryOrder, Collections.<String> emptySet(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the classes whose short name starts with the given prefix and
+     * the bundles providing them. Each class is reported at most once per
+     * bundle symbolic name: candidates are ranked by the position of their
+     * repository in the workspace configuration and then by descending
+     * version, and only the best ranked version of each bundle is kept.
+     *
+     * @param repositoryOrder
+     *            the order of the workspace repositories, from
+     *            {@link #getRepositoryOrder()}.
+     * @param excludedBsns
+     *            bundles whose classes are not to be returned, e.g. those
+     *            already on the build path.
+     * @param limit
+     *            the maximum number of results to return, after excluding
+     *            bundles.
+     */
+    public List<Pair<String, BundleInfo>> findProvidersByPrefix(String prefix, Map<String, Integer> repositoryOrder, Set<String> excludedBsns, int limit) {
+        List<Pair<String, BundleInfo>> candidates;
+        synchronized (this) {
+            candidates = findMatches(prefix);
+        }
+        return rank(candidates, repositoryOrder, excludedBsns, limit);
+    }
+
+    private static List<Pair<String, BundleInfo>> rank(List<Pair<String, BundleInfo>> candidates, Map<String, Integer> repositoryOrder, Set<String> excludedBsns, int limit) {
+        Comparator<Pair<String, BundleInfo>> comparator = new ProviderComparator(repositoryOrder);
+
+        // Keep the best ranked version of each class and bundle
+        Map<String, Pair<String, BundleInfo>> best = new HashMap<String, Pair<String, BundleInfo>>();
+        for (Pair<String, BundleInfo> candidate : candidates) {
+            String bsn = candidate.getSecond().bsn;
+            if (bsn == null || excludedBsns.contains(bsn))
+                continue;
+            String key = candidate.getFirst() + "@" + bsn;
+            Pair<String, BundleInfo> current = best.get(key);
+            if (current == null || comparator.compare(candidate, current) < 0)
+                best.put(key, candidate);
+        }
+        if (limit <= 0)
+            return new ArrayList<Pair<String, BundleInfo>>();
+        if (best.size() <= limit) {
+            List<Pair<String, BundleInfo>> result = new ArrayList<Pair<String, BundleInfo>>(best.values());
+            Collections.sort(result, comparator);
+            return result;
+        }
+
+        // Only the top entries are needed, so keep a bounded heap whose head is the worst of them
+        PriorityQueue<Pair<String, BundleInfo>> top = new PriorityQueue<Pair<String, BundleInfo>>(limit, Collections.reverseOrder(comparator));
+        for (Pair<String, BundleInfo> candidate : best.values()) {
+            if (top.size() < limit) {
+                top.add(candidate);
+            } else if (comparator.compare(candidate, top.peek()) < 0) {
+                top.poll();
+                top.add(candidate);
+            }
+        }
+        List<Pair<String, BundleInfo>> result = new ArrayList<Pair<String, BundleInfo>>(top);
+        Collections.sort(result, comparator);
+        return result;
+    }
+
+    /**
+     * Returns the position of each workspace repository in the workspace
+     * configuration, keyed by repository name. Callers should compute it once
+     * per request and pass it to the lookup methods.
+     */
+    public static Map<String, Integer> getRepositoryOrder() {
+        Map<String, Integer> order = new HashMap<String, Integer>();
+        try {
+            for (RepositoryPlugin repo : Central.getWorkspace().getPlugins(RepositoryPlugin.class)) {
+                if (!order.containsKey(repo.getName()))
+                    order.put(repo.getName(), order.size());
+            }
+        } catch (Exception e) {
+            Plugin.logError("Error listing repositories.", e);
+        }
+        return order;
+    }
+
+    public synchronized int size() {
+        return bundles.size();
+    }
+
+    private static class ProviderComparator implements Comparator<Pair<String, BundleInfo>> {
+        private final Map<String, Integer> repositoryOrder;
+
+        ProviderComparator(Map<String, Integer> repositoryOrder) {
+            this.repositoryOrder = repositoryOrder;
+        }
+
+        public int compare(Pair<String, BundleInfo> o1, Pair<String, BundleInfo> o2) {
+            BundleInfo b1 = o1.getSecond();
+            BundleInfo b2 = o2.getSecond();
+
+            int diff = getRepositoryIndex(b1) - getRepositoryIndex(b2);
+            if (diff != 0)
+                return diff;
+
+            diff = o1.getFirst().compareTo(o2.getFirst());
+            if (diff != 0)
+                return diff;
+
+            diff = compareNullable(b1.bsn, b2.bsn);
+            if (diff != 0)
+                return diff;
+
+            return b2.getParsedVersion().compareTo(b1.getParsedVersion());
+        }
+
+        private int getRepositoryIndex(BundleInfo info) {
+            Integer index = info.repository != null ? repositoryOrder.get(info.repository) : null;
+            return index != null ? index.intValue() : Integer.MAX_VALUE / 2;
+        }
+
+        private static int compareNullable(String s1, String s2) {
+            if (s1 == null)
+                return s2 == null ? 0 : 1;
+            return s2 == null ? -1 : s1.compareTo(s2);
+        }
+    }
+
+    private void insertBundleInfo(BundleInfo info) {
+        removeBundleInfo(info.file);
+        bundles.put(info.file, info);
+
+        String last = null;
+        for (String shortName : info.shortNames) {
+            // Short names are sorted, so duplicates are adjacent
+            if (shortName.equals(last))
+                continue;
+            last = shortName;
 
-            // Update the classname map
             Map<File, BundleInfo> map = nameLookup.get(shortName);
-            if(map == null) {
-                map = new HashMap<File, BundleInfo>();
+            if (map == null) {
+                map = new HashMap<File, BundleInfo>(4);
                 nameLookup.put(shortName, map);
             }
             map.put(info.file, info);
+        }
+        dirty = true;
+    }
+
+    private void removeBundleInfo(File file) {
+        BundleInfo old = bundles.remove(file);
+        if (old == null)
+            return;
 
-            // Update the reverse lookup map
-            Set<String> nameSet = reverseLookup.get(info.file);
-            if(nameSet == null) {
-                nameSet = new HashSet<String>();
-                reverseLookup.put(info.file, nameSet);
+        for (String shortName : old.shortNames) {
+            Map<File, BundleInfo> map = nameLookup.get(shortName);
+            if (map != null) {
+                map.remove(file);
+                if (map.isEmpty())
+                    nameLookup.remove(shortName);
             }
-            nameSet.add(shortName);
         }
+        dirty = true;
+    }
+
+    /**
+     * Drops all bundles that are not in the given set of files.
+     */
+    synchronized void retainBundles(Set<File> files) {
+        List<File> stale = new LinkedList<File>();
+        for (File file : bundles.keySet()) {
+            if (!files.contains(file))
+                stale.add(file);
+        }
+        for (File file : stale)
+            removeBundleInfo(file);
+    }
+
+    synchronized boolean isUpToDate(File file) {
+        BundleInfo info = bundles.get(file);
+        return info != null && info.isUpToDate(file);
     }
 
     /**
@@ -90,48 +302,137 @@ public class RepositoryModel {
     public void updateRepositoryBundle(RepositoryPlugin repo, File file, IProgressMonitor monitor) throws IOException, CoreException {
         SubMonitor progress = SubMonitor.convert(monitor, file.getName(), 1);
 
-        Collection<Clazz> clazzes = analyseBundleFile(file);
-        int size = clazzes != null ? clazzes.size() : 0;
+        if (!isUpToDate(file)) {
+            BundleClassScanner.Result result;
+            try {
+                result = BundleClassScanner.scan(file);
+            } catch (IOException e) {
+                throw new CoreException(new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to analyse public classes in bundle \"{0}\".", file.getPath()), e));
+            }
+
+            synchronized (this) {
+                insertBundleInfo(BundleInfo.create(repo.getName(), result.getBsn(), result.getVersion(), file, result.getClassNames(), pool));
+            }
+        }
+        progress.worked(1);
+    }
+
+    public void bundleAdded(RepositoryPlugin repository, Jar jar, File file) {
+        Map<RepositoryPlugin, File> files = new HashMap<RepositoryPlugin, File>(1);
+        files.put(repository, file);
+        new RepositoryIndexerJob(this, files).schedule();
     }
 
-    Collection<Clazz> analyseBundleFile(File file) throws IOException, CoreException {
-        Builder builder = new Builder();
-        Jar jar = new Jar(file);
-        builder.setJar(jar);
+    /**
+     * Loads the persisted index, unless it has already been loaded.
+     */
+    synchronized void load(File indexFile) throws IOException {
+        if (loaded)
+            return;
+        loaded = true;
+        if (!indexFile.isFile())
+            return;
 
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
         try {
-            builder.analyze();
-        } catch (Exception e) {
-            throw new CoreException(new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to analyse bundle \"{0}\".", file.getPath()), e));
+            if (in.readInt() != FORMAT_MAGIC || in.readInt() != FORMAT_VERSION)
+                return;
+
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++)
+                strings[i] = pool.intern(in.readUTF());
+
+            int bundleCount = in.readInt();
+            for (int i = 0; i < bundleCount; i++) {
+                String repository = readString(in, strings);
+                String bsn = readString(in, strings);
+                String version = readString(in, strings);
+                File file = new File(in.readUTF());
+                long lastModified = in.readLong();
+                long length = in.readLong();
+
+                int classCount = in.readInt();
+                String[] packages = new String[classCount];
+                String[] shortNames = new String[classCount];
+                for (int j = 0; j < classCount; j++) {
+                    packages[j] = strings[in.readInt()];
+                    shortNames[j] = strings[in.readInt()];
+                }
+                insertBundleInfo(new BundleInfo(repository, bsn, version, file, lastModified, length, packages, shortNames));
+            }
+            dirty = false;
         } finally {
-            jar.close();
+            in.close();
         }
+    }
 
-        String bsn = builder.getBsn();
-        String version = builder.getVersion();
+    private static String readString(DataInputStream in, String[] strings) throws IOException {
+        int index = in.readInt();
+        return index == NULL_STRING ? null : strings[index];
+    }
+
+    synchronized void save(File indexFile) throws IOException {
+        if (!dirty)
+            return;
+
+        // Build the string table from the live bundles only
+        Map<String, Integer> table = new HashMap<String, Integer>();
+        List<String> strings = new ArrayList<String>();
+        for (BundleInfo info : bundles.values()) {
+            addString(info.repository, table, strings);
+            addString(info.bsn, table, strings);
+            addString(info.version, table, strings);
+            for (int i = 0; i < info.shortNames.length; i++) {
+                addString(info.packages[i], table, strings);
+                addString(info.shortNames[i], table, strings);
+            }
+        }
 
-        Collection<Clazz> clazzes = null;
+        File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
         try {
-            clazzes = builder.getClasses("classes", "PUBLIC");
-            if(clazzes != null) {
-                Map<String, List<Clazz>> classMap = new HashMap<String, List<Clazz>>();
-                for (Clazz clazz : clazzes) {
-                    String shortName = Clazz.getShortName(clazz.getFQN());
-
-                    List<Clazz> list = classMap.get(shortName);
-                    if(list == null) {
-                        list = new LinkedList<Clazz>();
-                        classMap.put(shortName, list);
-                    }
-                    list.add(clazz);
-                }
+            out.writeInt(FORMAT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
 
-                BundleInfo bundleInfo = new BundleInfo(bsn, version, file, classMap);
-                insertBundleInfo(bundleInfo);
+            out.writeInt(strings.size());
+            for (String s : strings)
+                out.writeUTF(s);
+
+            out.writeInt(bundles.size());
+            for (BundleInfo info : bundles.values()) {
+                writeString(out, info.repository, table);
+                writeString(out, info.bsn, table);
+                writeString(out, info.version, table);
+                out.writeUTF(info.file.getAbsolutePath());
+                out.writeLong(info.lastModified);
+                out.writeLong(info.length);
+
+                out.writeInt(info.shortNames.length);
+                for (int i = 0; i < info.shortNames.length; i++) {
+                    out.writeInt(table.get(info.packages[i]));
+                    out.writeInt(table.get(info.shortNames[i]));
+                }
             }
-        } catch (Exception e) {
-            throw new CoreException(new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to analyse public classes in bundle \"{0}\".", file.getPath()), e));
+        } finally {
+            out.close();
+        }
+
+        if (!tempFile.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!tempFile.renameTo(indexFile))
+                throw new IOException("Failed to rename " + tempFile + " to " + indexFile);
+        }
+        dirty = false;
+    }
+
+    private static void addString(String s, Map<String, Integer> table, List<String> strings) {
+        if (s != null && !table.containsKey(s)) {
+            table.put(s, strings.size());
+            strings.add(s);
         }
-        return clazzes;
     }
-}
\ No newline at end of file
+
+    private static void writeString(DataOutputStream out, String s, Map<String, Integer> table) throws IOException {
+        out.writeInt(s == null ? NULL_STRING : table.get(s));
+    }
+}
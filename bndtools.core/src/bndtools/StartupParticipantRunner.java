@@ -0,0 +1,197 @@
+package bndtools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * Starts the contributions to the {@code bndtoolsStartupParticipant} extension
+ * point on a small thread pool, so that they do not delay the activation of
+ * the plug-in. A participant may name the ids of the participants that must
+ * have started before it in its {@code after} attribute.
+ */
+class StartupParticipantRunner {
+
+    private static final String EXTENSION_POINT = "bndtoolsStartupParticipant";
+    private static final int THREADS = 2;
+    private static final long SLOW_START = 500;
+    private static final long STOP_TIMEOUT = 30;
+
+    private static final boolean TRACE = "true".equalsIgnoreCase(Platform.getDebugOption(Plugin.PLUGIN_ID + "/debug/startup"));
+
+    private final ExecutorService executor;
+    private final List<IStartupParticipant> started = new LinkedList<IStartupParticipant>();
+
+    private static class Participant {
+        final IConfigurationElement element;
+        final String id;
+        final String[] after;
+        Future<?> future = null;
+
+        Participant(IConfigurationElement element, String id, String[] after) {
+            this.element = element;
+            this.id = id;
+            this.after = after;
+        }
+
+        String getName() {
+            return id != null ? id : element.getAttribute("class");
+        }
+    }
+
+    StartupParticipantRunner() {
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "bndtools startup " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submits all participants for starting, and returns immediately.
+     */
+    void start() {
+        IConfigurationElement[] elements = Platform.getExtensionRegistry().getConfigurationElementsFor(Plugin.PLUGIN_ID, EXTENSION_POINT);
+
+        Map<String, Participant> byId = new HashMap<String, Participant>();
+        List<Participant> participants = new ArrayList<Participant>(elements.length);
+        for (IConfigurationElement element : elements) {
+            String id = element.getAttribute("id");
+            String afterAttr = element.getAttribute("after");
+            String[] after = afterAttr != null && afterAttr.trim().length() > 0 ? afterAttr.trim().split("\\s*,\\s*") : new String[0];
+            Participant participant = new Participant(element, id, after);
+            participants.add(participant);
+            if (id != null)
+                byId.put(id, participant);
+        }
+
+        // Submitting in dependency order means that a participant can only wait for
+        // participants that are already running, so the pool cannot deadlock.
+        for (Participant participant : sort(participants, byId))
+            submit(participant, byId);
+    }
+
+    private static List<Participant> sort(List<Participant> participants, Map<String, Participant> byId) {
+        Map<Participant, Boolean> visited = new LinkedHashMap<Participant, Boolean>();
+        for (Participant participant : participants)
+            visit(participant, byId, visited);
+        return new ArrayList<Participant>(visited.keySet());
+    }
+
+    private static void visit(Participant participant, Map<String, Participant> byId, Map<Participant, Boolean> visited) {
+        Boolean done = visited.get(participant);
+        if (done != null) {
+            if (!done)
+                Plugin.log(new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, "Cyclic ordering between startup participants involving " + participant.getName(), null));
+            return;
+        }
+        // Insert a placeholder to detect cycles; the final position is set by re-inserting
+        visited.put(participant, Boolean.FALSE);
+        for (String dependency : participant.after) {
+            Participant other = byId.get(dependency);
+            if (other != null)
+                visit(other, byId, visited);
+        }
+        visited.remove(participant);
+        visited.put(participant, Boolean.TRUE);
+    }
+
+    private void submit(final Participant participant, final Map<String, Participant> byId) {
+        final List<Future<?>> dependencies = new ArrayList<Future<?>>(participant.after.length);
+        for (String dependency : participant.after) {
+            Participant other = byId.get(dependency);
+            if (other == null)
+                Plugin.log(new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, String.format("Startup participant %s should start after unknown participant %s", participant.getName(), dependency), null));
+            else if (other.future != null)
+                dependencies.add(other.future);
+        }
+
+        participant.future = executor.submit(new Runnable() {
+            public void run() {
+                for (Future<?> dependency : dependencies) {
+                    try {
+                        dependency.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (ExecutionException e) {
+                        // Failures are logged by the participant's own task; start anyway
+                    }
+                }
+                runParticipant(participant);
+            }
+        });
+    }
+
+    private void runParticipant(Participant participant) {
+        long start = System.currentTimeMillis();
+        try {
+            Object obj = participant.element.createExecutableExtension("class");
+            if (obj instanceof Runnable) {
+                ((Runnable) obj).run();
+            } else if (obj instanceof IStartupParticipant) {
+                IStartupParticipant isp = (IStartupParticipant) obj;
+                isp.start();
+                synchronized (started) {
+                    started.add(isp);
+                }
+            }
+        } catch (CoreException e) {
+            Plugin.logError("Error executing startup participant", e);
+        } catch (RuntimeException e) {
+            Plugin.logError("Error executing startup participant", e);
+        } finally {
+            long elapsed = System.currentTimeMillis() - start;
+            if (TRACE || elapsed > SLOW_START)
+                Plugin.log(new Status(IStatus.INFO, Plugin.PLUGIN_ID, 0, String.format("Startup participant %s took %d ms to start", participant.getName(), elapsed), null));
+        }
+    }
+
+    /**
+     * Waits for the participants to finish starting, then stops them in the
+     * reverse order of starting.
+     */
+    void stop() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(STOP_TIMEOUT, TimeUnit.SECONDS))
+                Plugin.log(new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, "Timed out waiting for startup participants to start", null));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<IStartupParticipant> toStop;
+        synchronized (started) {
+            toStop = new ArrayList<IStartupParticipant>(started);
+            started.clear();
+        }
+        Collections.reverse(toStop);
+        for (IStartupParticipant isp : toStop) {
+            try {
+                isp.stop();
+            } catch (Exception e) {
+                Plugin.logError("Error stopping startup participant", e);
+            }
+        }
+    }
+}
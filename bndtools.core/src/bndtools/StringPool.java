@@ -0,0 +1,26 @@
+package bndtools;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Canonicalises equal strings to a single instance. Not thread-safe.
+ */
+class StringPool {
+
+    private final Map<String, String> strings = new HashMap<String, String>();
+
+    String intern(String s) {
+        if (s == null)
+            return null;
+        String existing = strings.get(s);
+        if (existing != null)
+            return existing;
+        strings.put(s, s);
+        return s;
+    }
+
+    void clear() {
+        strings.clear();
+    }
+}
@@ -21,14 +21,7 @@ public final class WorkspaceListener extends BndListener {
 
     @Override
     public void changed(final File file) {
-        try {
-            RefreshFileJob job = new RefreshFileJob(file, true);
-            if (job.needsToSchedule()) {
-                job.schedule();
-            }
-        } catch (Exception e) {
-            Plugin.logError("Error refreshing workspace", e);
-        }
+        RefreshFileJob.refresh(file, true);
     }
 
     @Override
@@ -0,0 +1,16 @@
+package bndtools.api;
+
+import org.eclipse.core.runtime.IStatus;
+
+import aQute.lib.osgi.Builder;
+import aQute.lib.osgi.Jar;
+
+/**
+ * Validates a bundle after it has been built, e.g. for split packages or
+ * imports without a version range. Implementations are registered through the
+ * {@code validators} extension point, like {@link IValidator}, and may
+ * implement both interfaces.
+ */
+public interface IJarValidator {
+    IStatus validate(Builder builder, Jar jar);
+}
@@ -0,0 +1,271 @@
+package bndtools.builder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records how long each phase of each bnd project build took. The most recent
+ * builds are kept in a ring buffer of fixed capacity, from which the timings
+ * can be summarised per project or per phase, or exported as CSV.
+ */
+public class BuildTimings {
+
+    public static final String PHASE_CLASSPATH = "classpath";
+    public static final String PHASE_CHANGES = "local changes";
+    public static final String PHASE_VALIDATE = "validate";
+    public static final String PHASE_BUILD = "build";
+    public static final String PHASE_VALIDATE_JAR = "validate output";
+    public static final String PHASE_REFRESH = "refresh target";
+    public static final String PHASE_OBR = "workspace OBR";
+    public static final String PHASE_MARKERS = "markers";
+    public static final String PHASE_DEPENDS_ON = "depends-on";
+
+    private static final int CAPACITY = 500;
+
+    private static final Record[] records = new Record[CAPACITY];
+    private static int next = 0;
+    private static int size = 0;
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    public interface Listener {
+        void timingsChanged();
+    }
+
+    /**
+     * The timings of one build of one project.
+     */
+    public static class Record {
+        private final String project;
+        private final long timestamp;
+        private final long totalNanos;
+        private final Map<String, Long> phaseNanos;
+
+        Record(String project, long timestamp, long totalNanos, Map<String, Long> phaseNanos) {
+            this.project = project;
+            this.timestamp = timestamp;
+            this.totalNanos = totalNanos;
+            this.phaseNanos = Collections.unmodifiableMap(phaseNanos);
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @return The time spent in each phase of the build, in the order the
+         *         phases were first entered.
+         */
+        public Map<String, Long> getPhaseNanos() {
+            return phaseNanos;
+        }
+    }
+
+    /**
+     * The accumulated timings of a project or phase over the recorded builds.
+     */
+    public static class Summary {
+        private final String name;
+        private int count = 0;
+        private long totalNanos = 0;
+        private long maxNanos = 0;
+
+        Summary(String name) {
+            this.name = name;
+        }
+
+        void add(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getMeanNanos() {
+            return count > 0 ? totalNanos / count : 0;
+        }
+    }
+
+    /**
+     * Times the phases of a single build. Not thread-safe; a timer belongs to
+     * the build that created it.
+     */
+    public static class Timer {
+        private final long start = System.nanoTime();
+        private final long timestamp = System.currentTimeMillis();
+        private final Map<String, Long> phaseNanos = new LinkedHashMap<String, Long>();
+
+        /**
+         * Adds the time since {@code phaseStart}, a value of
+         * {@link System#nanoTime()}, to the named phase.
+         */
+        public void phase(String name, long phaseStart) {
+            long elapsed = System.nanoTime() - phaseStart;
+            Long previous = phaseNanos.get(name);
+            phaseNanos.put(name, previous != null ? previous + elapsed : elapsed);
+        }
+
+        /**
+         * @return Whether time was added to the named phase.
+         */
+        public boolean hasPhase(String name) {
+            return phaseNanos.containsKey(name);
+        }
+
+        /**
+         * Records the build, and returns its record.
+         */
+        public Record finish(String project) {
+            Record record = new Record(project, timestamp, System.nanoTime() - start, new LinkedHashMap<String, Long>(phaseNanos));
+            BuildTimings.add(record);
+            return record;
+        }
+    }
+
+    private BuildTimings() {
+    }
+
+    public static Timer startTimer() {
+        return new Timer();
+    }
+
+    static void add(Record record) {
+        synchronized (records) {
+            records[next] = record;
+            next = (next + 1) % CAPACITY;
+            size = Math.min(size + 1, CAPACITY);
+        }
+        fireTimingsChanged();
+    }
+
+    /**
+     * @return The recorded builds, oldest first.
+     */
+    public static List<Record> getRecords() {
+        synchronized (records) {
+            List<Record> result = new ArrayList<Record>(size);
+            int first = (next - size + CAPACITY) % CAPACITY;
+            for (int i = 0; i < size; i++)
+                result.add(records[(first + i) % CAPACITY]);
+            return result;
+        }
+    }
+
+    public static void clear() {
+        synchronized (records) {
+            for (int i = 0; i < CAPACITY; i++)
+                records[i] = null;
+            next = 0;
+            size = 0;
+        }
+        fireTimingsChanged();
+    }
+
+    /**
+     * @return The total build time of each project, slowest first.
+     */
+    public static List<Summary> summariseByProject() {
+        Map<String, Summary> summaries = new LinkedHashMap<String, Summary>();
+        for (Record record : getRecords())
+            getSummary(summaries, record.getProject()).add(record.getTotalNanos());
+        return sortSlowestFirst(summaries);
+    }
+
+    /**
+     * @return The time spent in each phase over all projects, slowest first.
+     */
+    public static List<Summary> summariseByPhase() {
+        Map<String, Summary> summaries = new LinkedHashMap<String, Summary>();
+        for (Record record : getRecords()) {
+            for (Entry<String, Long> entry : record.getPhaseNanos().entrySet())
+                getSummary(summaries, entry.getKey()).add(entry.getValue());
+        }
+        return sortSlowestFirst(summaries);
+    }
+
+    private static Summary getSummary(Map<String, Summary> summaries, String name) {
+        Summary summary = summaries.get(name);
+        if (summary == null) {
+            summary = new Summary(name);
+            summaries.put(name, summary);
+        }
+        return summary;
+    }
+
+    private static List<Summary> sortSlowestFirst(Map<String, Summary> summaries) {
+        List<Summary> result = new ArrayList<Summary>(summaries.values());
+        Collections.sort(result, new Comparator<Summary>() {
+            public int compare(Summary s1, Summary s2) {
+                return s1.getTotalNanos() < s2.getTotalNanos() ? 1 : (s1.getTotalNanos() > s2.getTotalNanos() ? -1 : 0);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Writes the recorded builds as CSV, one line per phase of each build plus
+     * a line for the build's total time.
+     */
+    public static void writeCsv(Writer writer) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS");
+        writer.write("project,time,phase,nanos\n");
+        for (Record record : getRecords()) {
+            String prefix = csvField(record.getProject()) + "," + format.format(new Date(record.getTimestamp())) + ",";
+            for (Entry<String, Long> entry : record.getPhaseNanos().entrySet())
+                writer.write(prefix + csvField(entry.getKey()) + "," + entry.getValue() + "\n");
+            writer.write(prefix + "total," + record.getTotalNanos() + "\n");
+        }
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+            return value;
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    public static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private static void fireTimingsChanged() {
+        for (Listener listener : listeners)
+            listener.timingsChanged();
+    }
+}
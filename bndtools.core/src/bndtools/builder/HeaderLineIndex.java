@@ -0,0 +1,139 @@
+package bndtools.builder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import aQute.lib.io.IO;
+
+/**
+ * Line numbers of the headers in a bnd file, used to place build problems on
+ * the line of the header they mention. Indexes are cached per file until the
+ * file's timestamp or length changes, or its project is closed or deleted.
+ */
+public class HeaderLineIndex {
+
+    private static final Map<File, HeaderLineIndex> cache = new HashMap<File, HeaderLineIndex>();
+
+    private final long lastModified;
+    private final long length;
+    private final Map<String, Integer> lines = new HashMap<String, Integer>();
+
+    private HeaderLineIndex(File file) {
+        this.lastModified = file.lastModified();
+        this.length = file.length();
+    }
+
+    static HeaderLineIndex get(File file) throws IOException {
+        synchronized (cache) {
+            HeaderLineIndex index = cache.get(file);
+            if (index == null || index.lastModified != file.lastModified() || index.length != file.length()) {
+                index = new HeaderLineIndex(file);
+                index.scan(file);
+                cache.put(file, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Discards the cached indexes of the files in the given directory and its
+     * subdirectories.
+     */
+    public static void evict(File dir) {
+        String prefix = dir.getAbsolutePath() + File.separator;
+        synchronized (cache) {
+            for (Iterator<File> iter = cache.keySet().iterator(); iter.hasNext();) {
+                if (iter.next().getAbsolutePath().startsWith(prefix))
+                    iter.remove();
+            }
+        }
+    }
+
+    private void scan(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "ISO-8859-1"));
+        try {
+            boolean continued = false;
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                boolean header = !continued;
+                continued = endsWithContinuation(line);
+                if (!header)
+                    continue;
+
+                int start = 0;
+                while (start < line.length() && Character.isWhitespace(line.charAt(start)))
+                    start++;
+                if (start == line.length() || line.charAt(start) == '#' || line.charAt(start) == '!') {
+                    continued = false;
+                    continue;
+                }
+
+                int end = start;
+                while (end < line.length()) {
+                    char c = line.charAt(end);
+                    if (c == ':' || c == '=' || Character.isWhitespace(c))
+                        break;
+                    end += c == '\\' ? 2 : 1;
+                }
+                end = Math.min(end, line.length());
+                if (end > start)
+                    lines.put(line.substring(start, end), lineNumber);
+            }
+        } finally {
+            IO.close(reader);
+        }
+    }
+
+    private static boolean endsWithContinuation(String line) {
+        int backslashes = 0;
+        for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; i--)
+            backslashes++;
+        return backslashes % 2 == 1;
+    }
+
+    /**
+     * Returns the line of the longest header named in the message, or else
+     * the line of the default header, or -1 if neither is in the file.
+     */
+    int findLine(String message, String defaultHeader) {
+        String found = null;
+        int line = -1;
+        for (Entry<String, Integer> entry : lines.entrySet()) {
+            String header = entry.getKey();
+            if ((found == null || header.length() > found.length()) && mentions(message, header)) {
+                found = header;
+                line = entry.getValue();
+            }
+        }
+        if (found == null && defaultHeader != null) {
+            Integer defaultLine = lines.get(defaultHeader);
+            if (defaultLine != null)
+                line = defaultLine;
+        }
+        return line;
+    }
+
+    private static boolean mentions(String message, String header) {
+        int index = message.indexOf(header);
+        while (index >= 0) {
+            int end = index + header.length();
+            if ((index == 0 || !isNameChar(message.charAt(index - 1))) && (end == message.length() || !isNameChar(message.charAt(end))))
+                return true;
+            index = message.indexOf(header, index + 1);
+        }
+        return false;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+    }
+}
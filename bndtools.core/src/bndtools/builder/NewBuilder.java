@@ -2,13 +2,23 @@ package bndtools.builder;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bndtools.core.utils.workspace.WorkspaceUtils;
@@ -19,18 +29,18 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.resources.ProjectScope;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Path;
-import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.core.IJavaModelMarker;
 import org.eclipse.jface.preference.IPreferenceStore;
@@ -40,9 +50,11 @@ import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
 import aQute.lib.io.IO;
 import aQute.lib.osgi.Builder;
+import aQute.lib.osgi.Constants;
+import aQute.lib.osgi.Jar;
 import bndtools.Central;
 import bndtools.Plugin;
-import bndtools.api.IValidator;
+import bndtools.builder.ValidatorRegistry.ValidatorDescriptor;
 import bndtools.classpath.BndContainerInitializer;
 import bndtools.preferences.CompileErrorAction;
 
@@ -55,6 +67,9 @@ public class NewBuilder extends IncrementalProjectBuilder {
     private static final int LOG_BASIC = 1;
     private static final int LOG_NONE = 0;
 
+    // Validators running for longer than this (in ms) are reported in the basic build log
+    private static final long VALIDATOR_TIME_BUDGET = 500;
+
     private Project model;
 
     private List<String> classpathErrors;
@@ -62,6 +77,10 @@ public class NewBuilder extends IncrementalProjectBuilder {
 
     private List<String> buildLog;
     private int logLevel = LOG_NONE;
+    private BuildTimings.Timer timer;
+
+    private List<ValidatorDescriptor> cachedValidators = null;
+    private final Map<String, ValidationResult> validationCache = new HashMap<String, ValidationResult>();
 
     @Override
     protected IProject[] build(int kind, @SuppressWarnings("rawtypes") Map args, IProgressMonitor monitor) throws CoreException {
@@ -71,6 +90,7 @@ public class NewBuilder extends IncrementalProjectBuilder {
         classpathErrors = new LinkedList<String>();
         validationResults = new MultiStatus(Plugin.PLUGIN_ID, 0, "Validation errors in bnd project", null);
         buildLog = new ArrayList<String>(5);
+        timer = BuildTimings.startTimer();
 
         // Initialise workspace OBR index (should only happen once)
         boolean builtAny = false;
@@ -89,7 +109,7 @@ public class NewBuilder extends IncrementalProjectBuilder {
                 log(LOG_BASIC, "cnf project changed");
                 model.refresh();
                 model.getWorkspace().refresh();
-                if (BndContainerInitializer.resetClasspaths(model, myProject, classpathErrors)) {
+                if (resetClasspaths(myProject)) {
                     log(LOG_BASIC, "classpaths were changed");
                 } else {
                     log(LOG_FULL, "classpaths did not need to change");
@@ -108,7 +128,7 @@ public class NewBuilder extends IncrementalProjectBuilder {
             }
             if (localChange) {
                 model.refresh();
-                if (BndContainerInitializer.resetClasspaths(model, myProject, classpathErrors)) {
+                if (resetClasspaths(myProject)) {
                     log(LOG_BASIC, "classpaths were changed");
                     return calculateDependsOn();
                 } else {
@@ -124,7 +144,7 @@ public class NewBuilder extends IncrementalProjectBuilder {
             if (changedDependency != null) {
                 log(LOG_BASIC, "target files in dependency project %s changed", changedDependency.getName());
                 model.propertiesChanged();
-                if (BndContainerInitializer.resetClasspaths(model, myProject, classpathErrors)) {
+                if (resetClasspaths(myProject)) {
                     log(LOG_BASIC, "classpaths were changed");
                     return calculateDependsOn();
                 } else {
@@ -147,6 +167,21 @@ public class NewBuilder extends IncrementalProjectBuilder {
                 }
             }
 
+            // Only record builds that rebuilt the bundles or reset the classpath,
+            // so that no-op builds do not skew the summaries
+            if (builtAny || timer.hasPhase(BuildTimings.PHASE_CLASSPATH)) {
+                BuildTimings.Record timings = timer.finish(getProject().getName());
+                if (logLevel >= LOG_FULL) {
+                    StringBuilder phases = new StringBuilder();
+                    for (Entry<String, Long> phase : timings.getPhaseNanos().entrySet()) {
+                        if (phases.length() > 0)
+                            phases.append(", ");
+                        phases.append(phase.getKey()).append('=').append(TimeUnit.NANOSECONDS.toMillis(phase.getValue())).append("ms");
+                    }
+                    log(LOG_FULL, "build took %d ms: %s", TimeUnit.NANOSECONDS.toMillis(timings.getTotalNanos()), phases);
+                }
+            }
+
             if (!buildLog.isEmpty() && logLevel > 0) {
                 StringBuilder builder = new StringBuilder();
                 builder.append(String.format("BUILD LOG for project %s (%d entries):", getProject(), buildLog.size()));
@@ -158,6 +193,15 @@ public class NewBuilder extends IncrementalProjectBuilder {
         }
     }
 
+    private boolean resetClasspaths(IProject project) throws CoreException {
+        long start = System.nanoTime();
+        try {
+            return BndContainerInitializer.resetClasspaths(model, project, classpathErrors);
+        } finally {
+            timer.phase(BuildTimings.PHASE_CLASSPATH, start);
+        }
+    }
+
     @Override
     protected void clean(IProgressMonitor monitor) throws CoreException {
         try {
@@ -309,6 +353,7 @@ public class NewBuilder extends IncrementalProjectBuilder {
      */
     private boolean rebuildIfLocalChanges() throws Exception {
         log(LOG_FULL, "calculating local changes...");
+        long start = System.nanoTime();
 
         final Set<File> changedFiles = new HashSet<File>();
 
@@ -384,6 +429,8 @@ public class NewBuilder extends IncrementalProjectBuilder {
             }
         }
 
+        timer.phase(BuildTimings.PHASE_CHANGES, start);
+
         // Do it
         boolean builtAny = false;
         if (force) {
@@ -421,15 +468,13 @@ public class NewBuilder extends IncrementalProjectBuilder {
      * @return Whether any files were built
      */
     private boolean rebuild(boolean force) throws Exception {
-        clearBuildMarkers();
-
         // Check if compilation errors exist, and if so check the project settings for what to do about that...
         Action buildAction = Action.build;
         if (hasBlockingErrors()) {
             ScopedPreferenceStore store = new ScopedPreferenceStore(new ProjectScope(getProject()), Plugin.PLUGIN_ID);
             switch (CompileErrorAction.parse(store.getString(CompileErrorAction.PREFERENCE_KEY))) {
             case skip:
-                addBuildMarker(String.format("Will not build OSGi bundle(s) for project %s until compilation problems are fixed.", model.getName()), IMarker.SEVERITY_ERROR);
+                replaceBuildMarkers(String.format("Will not build OSGi bundle(s) for project %s until compilation problems are fixed.", model.getName()));
                 log(LOG_BASIC, "SKIPPING due to Java problem markers");
                 return false;
             case build:
@@ -443,7 +488,7 @@ public class NewBuilder extends IncrementalProjectBuilder {
             ScopedPreferenceStore store = new ScopedPreferenceStore(new ProjectScope(getProject()), Plugin.PLUGIN_ID);
             switch (CompileErrorAction.parse(store.getString(CompileErrorAction.PREFERENCE_KEY))) {
             case skip:
-                addBuildMarker("Will not build OSGi bundle(s) for project %s until classpath resolution problems are fixed.", IMarker.SEVERITY_ERROR);
+                replaceBuildMarkers(String.format("Will not build OSGi bundle(s) for project %s until classpath resolution problems are fixed.", model.getName()));
                 log(LOG_BASIC, "SKIPPING due to classpath resolution problem markers");
                 return false;
             case build:
@@ -459,13 +504,17 @@ public class NewBuilder extends IncrementalProjectBuilder {
         File[] built;
 
         // Validate
-        List<IValidator> validators = loadValidators();
-        if (validators != null) {
-            Collection<? extends Builder> builders = model.getSubBuilders();
-            for (Builder builder : builders) {
-                validate(builder, validators);
-            }
+        List<ValidatorDescriptor> validators = ValidatorRegistry.getValidators();
+        if (validators != cachedValidators) {
+            validationCache.clear();
+            cachedValidators = validators;
         }
+        Collection<? extends Builder> builders = model.getSubBuilders();
+        long start = System.nanoTime();
+        for (Builder builder : builders) {
+            validate(builder, validators);
+        }
+        timer.phase(BuildTimings.PHASE_VALIDATE, start);
 
         // Clear errors & warnings before build
         model.clear();
@@ -473,11 +522,13 @@ public class NewBuilder extends IncrementalProjectBuilder {
         if (buildAction == Action.build) {
             // Build!
             model.setTrace(true);
+            start = System.nanoTime();
             if (force)
                 built = model.buildLocal(false);
             else
                 built = model.build();
             if (built == null) built = new File[0];
+            timer.phase(BuildTimings.PHASE_BUILD, start);
 
             // Log rebuilt files
             log(LOG_BASIC, "requested rebuild of %d files", built.length);
@@ -486,6 +537,15 @@ public class NewBuilder extends IncrementalProjectBuilder {
                     log(LOG_FULL, "target file %s has an age of %d ms", builtFile, System.currentTimeMillis() - builtFile.lastModified());
                 }
             }
+
+            // Validate the output bundles
+            start = System.nanoTime();
+            for (Builder builder : builders) {
+                File targetFile = new File(model.getTarget(), builder.getBsn() + ".jar");
+                if (targetFile.isFile())
+                    validateJar(builder, targetFile, validators);
+            }
+            timer.phase(BuildTimings.PHASE_VALIDATE_JAR, start);
         } else {
             // Delete target files since the project has compile errors and the delete action was selected.
             for (Builder builder : model.getSubBuilders()) {
@@ -498,16 +558,20 @@ public class NewBuilder extends IncrementalProjectBuilder {
 
 
         // Make sure Eclipse knows about the changed files (should already have been done?)
+        start = System.nanoTime();
         IFolder targetFolder = getProject().getFolder(calculateTargetDirPath(model));
         targetFolder.refreshLocal(IResource.DEPTH_INFINITE, null);
+        timer.phase(BuildTimings.PHASE_REFRESH, start);
 
         // Replace into the workspace OBR provider
         if (built.length > 0) {
+            start = System.nanoTime();
             try {
                 Central.getWorkspaceObrProvider().replaceProjectFiles(model, built);
             } catch (Exception e) {
                 Plugin.logError("Error rebuilding workspace OBR index", e);
             }
+            timer.phase(BuildTimings.PHASE_OBR, start);
         }
 
         // Report errors
@@ -518,31 +582,152 @@ public class NewBuilder extends IncrementalProjectBuilder {
         return built.length > 0;
     }
 
-    List<IValidator> loadValidators() {
-        List<IValidator> validators = null;
-        IConfigurationElement[] validatorElems = Platform.getExtensionRegistry().getConfigurationElementsFor(Plugin.PLUGIN_ID, "validators");
-        if (validatorElems != null && validatorElems.length > 0) {
-            validators = new ArrayList<IValidator>(validatorElems.length);
-            for (IConfigurationElement elem : validatorElems) {
-                try {
-                    validators.add((IValidator) elem.createExecutableExtension("class"));
-                } catch (Exception e) {
-                    Plugin.logError("Unable to instantiate validator: " + elem.getAttribute("name"), e);
-                }
+    private interface Validation {
+        IStatus validate(ValidatorDescriptor validator) throws Exception;
+    }
+
+    private static class ValidationResult {
+        final String digest;
+        final List<IStatus> statuses;
+
+        ValidationResult(String digest, List<IStatus> statuses) {
+            this.digest = digest;
+            this.statuses = statuses;
+        }
+    }
+
+    void validate(final Builder builder, List<ValidatorDescriptor> validators) throws Exception {
+        List<ValidatorDescriptor> applicable = new ArrayList<ValidatorDescriptor>(validators.size());
+        for (ValidatorDescriptor validator : validators) {
+            if (validator.getValidator() != null)
+                applicable.add(validator);
+        }
+        runValidators("builder:" + builder.getBsn(), calculateInputDigest(builder), builder.getBsn(), applicable, new Validation() {
+            public IStatus validate(ValidatorDescriptor validator) {
+                return validator.getValidator().validate(builder);
             }
+        });
+    }
+
+    void validateJar(final Builder builder, File jarFile, List<ValidatorDescriptor> validators) throws Exception {
+        List<ValidatorDescriptor> applicable = new ArrayList<ValidatorDescriptor>(validators.size());
+        for (ValidatorDescriptor validator : validators) {
+            if (validator.getJarValidator() != null)
+                applicable.add(validator);
+        }
+        if (applicable.isEmpty())
+            return;
+
+        String digest = calculateInputDigest(builder) + ":" + jarFile.lastModified() + ":" + jarFile.length();
+        final Jar jar = new Jar(jarFile);
+        try {
+            runValidators("jar:" + builder.getBsn(), digest, jarFile.getName(), applicable, new Validation() {
+                public IStatus validate(ValidatorDescriptor validator) {
+                    return validator.getJarValidator().validate(builder, jar);
+                }
+            });
+        } finally {
+            jar.close();
         }
-        return validators;
     }
 
-    void validate(Builder builder, List<IValidator> validators) {
-        for (IValidator validator : validators) {
-            IStatus status = validator.validate(builder);
-            if (!status.isOK())
+    /**
+     * Runs the validators in turn, unless the results cached under the key
+     * were calculated from the same digest of the inputs.
+     */
+    private void runValidators(String key, String digest, String subject, List<ValidatorDescriptor> validators, Validation validation) {
+        ValidationResult cached = validationCache.get(key);
+        if (cached != null && cached.digest.equals(digest)) {
+            log(LOG_FULL, "inputs of %s are unchanged, reusing %d validation results", subject, cached.statuses.size());
+            for (IStatus status : cached.statuses)
+                validationResults.add(status);
+            return;
+        }
+
+        // Validators share the builder, which is not thread-safe, so they run one at a time
+        List<IStatus> statuses = new ArrayList<IStatus>();
+        for (ValidatorDescriptor validator : validators) {
+            String name = validator.getName();
+            long start = System.currentTimeMillis();
+            IStatus status;
+            try {
+                status = validation.validate(validator);
+            } catch (Exception e) {
+                status = new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, String.format("Validator '%s' failed on %s.", name, subject), e);
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            if (status != null && !status.isOK()) {
+                statuses.add(status);
                 validationResults.add(status);
+            }
+
+            if (elapsed > VALIDATOR_TIME_BUDGET)
+                log(LOG_BASIC, "validator '%s' took %d ms on %s, over its budget of %d ms", name, elapsed, subject, VALIDATOR_TIME_BUDGET);
+            else
+                log(LOG_FULL, "validator '%s' took %d ms on %s", name, elapsed, subject);
+        }
+        validationCache.put(key, new ValidationResult(digest, statuses));
+    }
+
+    /**
+     * Calculates a digest of the properties and classpath of a builder.
+     */
+    private static String calculateInputDigest(Builder builder) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+
+        Map<String, String> properties = new TreeMap<String, String>();
+        Properties props = builder.getProperties();
+        for (Enumeration<?> e = props.propertyNames(); e.hasMoreElements();) {
+            String key = (String) e.nextElement();
+            properties.put(key, props.getProperty(key));
+        }
+        for (Entry<String, String> entry : properties.entrySet())
+            updateDigest(md, entry.getKey() + "=" + entry.getValue());
+
+        File propertiesFile = builder.getPropertiesFile();
+        if (propertiesFile != null)
+            updateDigest(md, propertiesFile.getAbsolutePath());
+
+        for (Jar jar : builder.getClasspath()) {
+            File source = jar.getSource();
+            if (source != null) {
+                updateDigest(md, source.getAbsolutePath());
+                // The timestamp of a directory does not change with the files below it
+                updateTimestamps(md, source);
+            } else {
+                updateDigest(md, jar.getName() + ":" + jar.lastModified());
+            }
+        }
+
+        StringBuilder result = new StringBuilder();
+        for (byte b : md.digest())
+            result.append(String.format("%02x", b));
+        return result.toString();
+    }
+
+    private static void updateTimestamps(MessageDigest md, File file) throws Exception {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                updateDigest(md, Integer.toString(children.length));
+                for (File child : children) {
+                    updateDigest(md, child.getName());
+                    updateTimestamps(md, child);
+                }
+            }
+        } else {
+            updateDigest(md, file.lastModified() + ":" + file.length());
         }
     }
 
+    private static void updateDigest(MessageDigest md, String s) throws Exception {
+        md.update(s.getBytes("UTF-8"));
+        md.update((byte) 0);
+    }
+
     private IProject[] calculateDependsOn() throws Exception {
+        long start = System.nanoTime();
         Collection<Project> dependsOn = model.getDependson();
         List<IProject> result = new ArrayList<IProject>(dependsOn.size() + 1);
 
@@ -560,6 +745,7 @@ public class NewBuilder extends IncrementalProjectBuilder {
         }
 
         log(LOG_FULL, "returning depends-on list: %s", result);
+        timer.phase(BuildTimings.PHASE_DEPENDS_ON, start);
         return result.toArray(new IProject[result.size()]);
     }
 
@@ -592,30 +778,123 @@ public class NewBuilder extends IncrementalProjectBuilder {
         return true;
     }
 
+    private static class Problem {
+        final int severity;
+        final String message;
+
+        Problem(int severity, String message) {
+            this.severity = severity;
+            this.message = message;
+        }
+    }
+
     private void createBuildMarkers(Collection<? extends String> errors, Collection<? extends String> warnings) throws CoreException {
+        List<Problem> problems = new ArrayList<Problem>(errors.size() + warnings.size());
         for (String error : errors) {
-            addBuildMarker(error, IMarker.SEVERITY_ERROR);
+            problems.add(new Problem(IMarker.SEVERITY_ERROR, error));
         }
         for (String warning : warnings) {
-            addBuildMarker(warning, IMarker.SEVERITY_WARNING);
+            problems.add(new Problem(IMarker.SEVERITY_WARNING, warning));
         }
+        if (!validationResults.isOK()) {
+            for (IStatus status : validationResults.getChildren()) {
+                problems.add(new Problem(toMarkerSeverity(status), status.getMessage()));
+            }
+        }
+
+        List<Problem> classpathProblems = new ArrayList<Problem>(classpathErrors.size());
         for (String error : classpathErrors) {
-            addClasspathMarker(error, IMarker.SEVERITY_ERROR);
+            classpathProblems.add(new Problem(IMarker.SEVERITY_ERROR, error));
         }
 
-        if (!validationResults.isOK()) {
-            for (IStatus status : validationResults.getChildren()) {
-                addClasspathMarker(status);
+        updateBuildMarkers(problems, classpathProblems);
+    }
+
+    private void replaceBuildMarkers(String error) throws CoreException {
+        updateBuildMarkers(Collections.singletonList(new Problem(IMarker.SEVERITY_ERROR, error)), Collections.<Problem> emptyList());
+    }
+
+    /**
+     * Replaces the build problem markers with markers for the given problems,
+     * and adds classpath problem markers that do not exist yet. Markers are
+     * only created or deleted where the problems differ from the existing
+     * markers, and all changes are made in a single workspace operation.
+     */
+    private void updateBuildMarkers(final List<Problem> problems, final List<Problem> classpathProblems) throws CoreException {
+        long start = System.nanoTime();
+        final IResource resource = getBuildMarkerTargetResource();
+
+        HeaderLineIndex headers = null;
+        if (resource.getType() == IResource.FILE) {
+            try {
+                headers = HeaderLineIndex.get(resource.getLocation().toFile());
+            } catch (IOException e) {
+                Plugin.logError("Error reading headers of " + resource.getFullPath(), e);
             }
         }
+        final HeaderLineIndex lineIndex = headers;
+
+        IWorkspaceRunnable operation = new IWorkspaceRunnable() {
+            public void run(IProgressMonitor monitor) throws CoreException {
+                updateMarkers(resource, MARKER_BND_PROBLEM, problems, lineIndex, null, true);
+                updateMarkers(resource, BndContainerInitializer.MARKER_BND_CLASSPATH_PROBLEM, classpathProblems, lineIndex, Constants.BUILDPATH, false);
+            }
+        };
+        ResourcesPlugin.getWorkspace().run(operation, resource, IWorkspace.AVOID_UPDATE, null);
+        timer.phase(BuildTimings.PHASE_MARKERS, start);
     }
 
-    private void clearBuildMarkers() throws CoreException {
-        IFile bndFile = getProject().getFile(Project.BNDFILE);
+    private void updateMarkers(IResource resource, String type, List<Problem> problems, HeaderLineIndex lineIndex, String defaultHeader, boolean deleteStale) throws CoreException {
+        // Count the markers wanted for each distinct problem
+        Map<String, Integer> wanted = new HashMap<String, Integer>();
+        int[] lines = new int[problems.size()];
+        for (int i = 0; i < problems.size(); i++) {
+            Problem problem = problems.get(i);
+            lines[i] = lineIndex != null ? lineIndex.findLine(problem.message, defaultHeader) : -1;
+            String key = markerKey(type, problem.severity, lines[i], problem.message);
+            Integer count = wanted.get(key);
+            wanted.put(key, count == null ? 1 : count + 1);
+        }
 
-        if (bndFile.exists()) {
-            bndFile.deleteMarkers(MARKER_BND_PROBLEM, true, IResource.DEPTH_INFINITE);
+        // Keep the existing markers that are still wanted
+        List<IMarker> stale = new ArrayList<IMarker>();
+        IMarker[] existing = resource.findMarkers(type, false, IResource.DEPTH_ZERO);
+        for (IMarker marker : existing) {
+            String key = markerKey(type, marker.getAttribute(IMarker.SEVERITY, -1), marker.getAttribute(IMarker.LINE_NUMBER, -1), marker.getAttribute(IMarker.MESSAGE, ""));
+            Integer count = wanted.get(key);
+            if (count != null && count > 0)
+                wanted.put(key, count - 1);
+            else
+                stale.add(marker);
         }
+        if (deleteStale && !stale.isEmpty())
+            resource.getWorkspace().deleteMarkers(stale.toArray(new IMarker[stale.size()]));
+
+        // Create the missing ones
+        int created = 0;
+        for (int i = 0; i < problems.size(); i++) {
+            Problem problem = problems.get(i);
+            String key = markerKey(type, problem.severity, lines[i], problem.message);
+            Integer count = wanted.get(key);
+            if (count == null || count == 0)
+                continue;
+            wanted.put(key, count - 1);
+
+            IMarker marker = resource.createMarker(type);
+            if (lines[i] > 0)
+                marker.setAttributes(new String[] { IMarker.SEVERITY, IMarker.MESSAGE, IMarker.LINE_NUMBER }, new Object[] { problem.severity, problem.message, lines[i] });
+            else
+                marker.setAttributes(new String[] { IMarker.SEVERITY, IMarker.MESSAGE }, new Object[] { problem.severity, problem.message });
+            created++;
+        }
+        log(LOG_FULL, "%s markers: %d kept, %d deleted, %d created", type, existing.length - stale.size(), deleteStale ? stale.size() : 0, created);
+    }
+
+    private static String markerKey(String type, int severity, int line, String message) {
+        // BndContainerInitializer also creates classpath markers, without a line
+        if (BndContainerInitializer.MARKER_BND_CLASSPATH_PROBLEM.equals(type))
+            return severity + ":" + message;
+        return severity + ":" + line + ":" + message;
     }
 
     private IResource getBuildMarkerTargetResource() {
@@ -626,38 +905,16 @@ public class NewBuilder extends IncrementalProjectBuilder {
         return bndFile;
     }
 
-    private void addBuildMarker(String message, int severity) throws CoreException {
-        IResource resource = getBuildMarkerTargetResource();
-
-        IMarker marker = resource.createMarker(MARKER_BND_PROBLEM);
-        marker.setAttribute(IMarker.SEVERITY, severity);
-        marker.setAttribute(IMarker.MESSAGE, message);
-        // marker.setAttribute(IMarker.LINE_NUMBER, 1);
-    }
-
-    private void addClasspathMarker(String message, int severity) throws CoreException {
-        IResource resource = getBuildMarkerTargetResource();
-
-        IMarker marker = resource.createMarker(BndContainerInitializer.MARKER_BND_CLASSPATH_PROBLEM);
-        marker.setAttribute(IMarker.SEVERITY, severity);
-        marker.setAttribute(IMarker.MESSAGE, message);
-        // marker.setAttribute(IMarker.LINE_NUMBER, 1);
-    }
-
-    private void addClasspathMarker(IStatus status) throws CoreException {
-        int severity;
+    private static int toMarkerSeverity(IStatus status) {
         switch (status.getSeverity()) {
         case IStatus.CANCEL:
         case IStatus.ERROR:
-            severity = IMarker.SEVERITY_ERROR;
-            break;
+            return IMarker.SEVERITY_ERROR;
         case IStatus.WARNING:
-            severity = IMarker.SEVERITY_WARNING;
-            break;
+            return IMarker.SEVERITY_WARNING;
         default:
-            severity = IMarker.SEVERITY_INFO;
+            return IMarker.SEVERITY_INFO;
         }
-        addClasspathMarker(status.getMessage(), severity);
     }
 
     private void log(int level, String message, Object... args) {
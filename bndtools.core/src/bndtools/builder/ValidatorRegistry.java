@@ -0,0 +1,111 @@
+package bndtools.builder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IRegistryChangeEvent;
+import org.eclipse.core.runtime.IRegistryChangeListener;
+import org.eclipse.core.runtime.Platform;
+
+import bndtools.Plugin;
+import bndtools.api.IJarValidator;
+import bndtools.api.IValidator;
+
+/**
+ * Holds the validators contributed through the {@code validators} extension
+ * point. The validator instances are created once and reused by every build
+ * until the extension registry changes.
+ */
+public class ValidatorRegistry implements IRegistryChangeListener {
+
+    private static final String EXTENSION_POINT = "validators";
+
+    public static class ValidatorDescriptor {
+        private final String name;
+        private final IValidator validator;
+        private final IJarValidator jarValidator;
+
+        ValidatorDescriptor(String name, Object instance) {
+            this.name = name;
+            this.validator = instance instanceof IValidator ? (IValidator) instance : null;
+            this.jarValidator = instance instanceof IJarValidator ? (IJarValidator) instance : null;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The validator to run before packaging, or null.
+         */
+        public IValidator getValidator() {
+            return validator;
+        }
+
+        /**
+         * @return The validator to run on the built bundle, or null.
+         */
+        public IJarValidator getJarValidator() {
+            return jarValidator;
+        }
+    }
+
+    private static ValidatorRegistry instance = null;
+
+    private List<ValidatorDescriptor> validators = null;
+
+    public static synchronized void start() {
+        if (instance == null) {
+            instance = new ValidatorRegistry();
+            Platform.getExtensionRegistry().addRegistryChangeListener(instance, Plugin.PLUGIN_ID);
+        }
+    }
+
+    public static synchronized void stop() {
+        if (instance != null) {
+            Platform.getExtensionRegistry().removeRegistryChangeListener(instance);
+            instance = null;
+        }
+    }
+
+    private static synchronized ValidatorRegistry getInstance() {
+        if (instance == null)
+            throw new IllegalStateException("Validator registry is not started");
+        return instance;
+    }
+
+    /**
+     * Returns the registered validators. The same list is returned until the
+     * extension registry changes, so callers may compare it by identity to
+     * detect that cached validation results are stale.
+     */
+    public static List<ValidatorDescriptor> getValidators() {
+        return getInstance().loadValidators();
+    }
+
+    private synchronized List<ValidatorDescriptor> loadValidators() {
+        if (validators == null) {
+            IConfigurationElement[] validatorElems = Platform.getExtensionRegistry().getConfigurationElementsFor(Plugin.PLUGIN_ID, EXTENSION_POINT);
+            List<ValidatorDescriptor> result = new ArrayList<ValidatorDescriptor>(validatorElems.length);
+            for (IConfigurationElement elem : validatorElems) {
+                String name = elem.getAttribute("name");
+                if (name == null)
+                    name = elem.getAttribute("class");
+                try {
+                    result.add(new ValidatorDescriptor(name, elem.createExecutableExtension("class")));
+                } catch (Exception e) {
+                    Plugin.logError("Unable to instantiate validator: " + name, e);
+                }
+            }
+            validators = Collections.unmodifiableList(result);
+        }
+        return validators;
+    }
+
+    public synchronized void registryChanged(IRegistryChangeEvent event) {
+        if (event.getExtensionDeltas(Plugin.PLUGIN_ID, EXTENSION_POINT).length > 0)
+            validators = null;
+    }
+}
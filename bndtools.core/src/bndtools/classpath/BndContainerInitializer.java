@@ -178,6 +178,10 @@ public class BndContainerInitializer extends ClasspathContainerInitializer imple
             buildPath = model.getBuildpath();
             bootClasspath = model.getBootclasspath();
 
+            List<Container> declared = new ArrayList<Container>(buildPath);
+            declared.addAll(model.getTestpath());
+            UnresolvedPathIndex.update(model.getName(), declared);
+
             containers = new ArrayList<Container>(buildPath.size() + bootClasspath.size());
             containers.addAll(buildPath);
 
@@ -387,9 +391,7 @@ public class BndContainerInitializer extends ClasspathContainerInitializer imple
         if (path == null)
             path = Path.fromOSString(file.getAbsolutePath());
 
-        RefreshFileJob refreshJob = new RefreshFileJob(file, false);
-        if (refreshJob.needsToSchedule())
-            refreshJob.schedule(100);
+        RefreshFileJob.refresh(file);
 
         return path;
     }
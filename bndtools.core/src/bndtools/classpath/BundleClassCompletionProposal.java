@@ -0,0 +1,104 @@
+package bndtools.classpath;
+
+import java.text.MessageFormat;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.dom.rewrite.ImportRewrite;
+import org.eclipse.jdt.ui.text.java.IJavaCompletionProposal;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.contentassist.IContextInformation;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.TextEdit;
+
+import aQute.bnd.build.Project;
+import bndtools.BundleInfo;
+import bndtools.Plugin;
+import bndtools.quickfix.AddBuildPathProposal;
+
+/**
+ * Completes the name of a class that is not yet on the build path. Applying
+ * the proposal inserts the short class name, imports the class and adds the
+ * providing bundle to the project's {@code -buildpath}.
+ */
+class BundleClassCompletionProposal implements IJavaCompletionProposal {
+
+    private final Project project;
+    private final ICompilationUnit unit;
+    private final String className;
+    private final BundleInfo bundle;
+    private final int replacementOffset;
+    private final int replacementLength;
+    private final int relevance;
+
+    private int cursorPosition;
+
+    BundleClassCompletionProposal(Project project, ICompilationUnit unit, String className, BundleInfo bundle, int replacementOffset, int replacementLength, int relevance) {
+        this.project = project;
+        this.unit = unit;
+        this.className = className;
+        this.bundle = bundle;
+        this.replacementOffset = replacementOffset;
+        this.replacementLength = replacementLength;
+        this.relevance = relevance;
+    }
+
+    private String getShortName() {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    public void apply(IDocument document) {
+        String shortName = getShortName();
+        try {
+            // Compute the import edit before the document changes; it only touches the import
+            // section, which precedes the replacement.
+            TextEdit importEdit = null;
+            ImportRewrite rewrite = ImportRewrite.create(unit, true);
+            rewrite.addImport(className);
+            if (rewrite.hasRecordedChanges())
+                importEdit = rewrite.rewriteImports(null);
+
+            document.replace(replacementOffset, replacementLength, shortName);
+            int lengthBefore = document.getLength();
+            if (importEdit != null)
+                importEdit.apply(document);
+            cursorPosition = replacementOffset + shortName.length() + (document.getLength() - lengthBefore);
+        } catch (CoreException e) {
+            Plugin.logError("Error adding import for " + className, e);
+        } catch (MalformedTreeException e) {
+            Plugin.logError("Error adding import for " + className, e);
+        } catch (BadLocationException e) {
+            Plugin.logError("Error adding import for " + className, e);
+        }
+
+        AddBuildPathProposal.addToBuildPath(project, bundle);
+    }
+
+    public Point getSelection(IDocument document) {
+        return new Point(cursorPosition, 0);
+    }
+
+    public String getAdditionalProposalInfo() {
+        return MessageFormat.format("Adds bundle <b>{0}</b> version {1} from repository {2} to the build path.", bundle.getBsn(), bundle.getVersion(), bundle.getRepository());
+    }
+
+    public String getDisplayString() {
+        String pkg = className.substring(0, Math.max(0, className.lastIndexOf('.')));
+        return MessageFormat.format("{0} - {1} ({2} {3})", getShortName(), pkg, bundle.getBsn(), bundle.getVersion());
+    }
+
+    public Image getImage() {
+        return AddBuildPathProposal.getBundleImage();
+    }
+
+    public IContextInformation getContextInformation() {
+        return null;
+    }
+
+    public int getRelevance() {
+        return relevance;
+    }
+}
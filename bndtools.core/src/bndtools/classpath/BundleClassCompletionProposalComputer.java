@@ -3,54 +3,98 @@ package bndtools.classpath;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.ui.text.java.ContentAssistInvocationContext;
 import org.eclipse.jdt.ui.text.java.IJavaCompletionProposalComputer;
 import org.eclipse.jdt.ui.text.java.JavaContentAssistInvocationContext;
 import org.eclipse.jface.text.BadLocationException;
-import org.eclipse.jface.text.contentassist.CompletionProposal;
-import org.eclipse.jface.text.contentassist.ContextInformation;
 import org.eclipse.jface.text.contentassist.ICompletionProposal;
 import org.eclipse.jface.text.contentassist.IContextInformation;
 
+import aQute.bnd.build.Project;
+import aQute.lib.osgi.Constants;
+import aQute.libg.header.OSGiHeader;
+import bndtools.BundleInfo;
+import bndtools.Plugin;
+import bndtools.RepositoryModel;
+import bndtools.types.Pair;
+
+/**
+ * Proposes classes from repository bundles that are not yet on the project's
+ * build path. Candidates come from the in-memory {@link RepositoryModel}
+ * index, so no repository or JAR is touched while computing proposals.
+ */
 public class BundleClassCompletionProposalComputer implements IJavaCompletionProposalComputer {
 
-	public List<ICompletionProposal> computeCompletionProposals(ContentAssistInvocationContext context, IProgressMonitor monitor) {
-		List<ICompletionProposal> result = new LinkedList<ICompletionProposal>();
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MAX_PROPOSALS = 50;
+    private static final int MAX_RELEVANCE = 20;
+
+    public List<ICompletionProposal> computeCompletionProposals(ContentAssistInvocationContext context, IProgressMonitor monitor) {
+        if (!(context instanceof JavaContentAssistInvocationContext)) {
+            return Collections.emptyList();
+        }
+        RepositoryModel model = Plugin.getDefault().getRepositoryModel();
+        if (model == null) {
+            return Collections.emptyList();
+        }
 
-		if(!(context instanceof JavaContentAssistInvocationContext)) {
-		    return Collections.emptyList();
-		}
+        List<ICompletionProposal> result = new LinkedList<ICompletionProposal>();
+        try {
+            int offset = context.getInvocationOffset();
+            String prefix = context.computeIdentifierPrefix().toString();
+            if (prefix.length() < MIN_PREFIX_LENGTH || !Character.isUpperCase(prefix.charAt(0))) {
+                return Collections.emptyList();
+            }
 
-		try {
-			int offset = context.getInvocationOffset();
-			CharSequence prefix = context.computeIdentifierPrefix();
+            ICompilationUnit unit = ((JavaContentAssistInvocationContext) context).getCompilationUnit();
+            Project project = findProject(unit);
+            if (project == null) {
+                return Collections.emptyList();
+            }
+            Set<String> buildPath = OSGiHeader.parseHeader(project.getProperty(Constants.BUILDPATH)).keySet();
 
-			result.add(new CompletionProposal("foobar", offset - prefix.length(), prefix.length(), offset - prefix.length() + 6));
-			result.add(new CompletionProposal("fizzbuzz", offset - prefix.length(), prefix.length(), offset - prefix.length() + 8));
-		} catch (BadLocationException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+            int relevance = MAX_RELEVANCE;
+            for (Pair<String, BundleInfo> provider : model.findProvidersByPrefix(prefix, RepositoryModel.getRepositoryOrder(), buildPath, MAX_PROPOSALS)) {
+                BundleInfo bundle = provider.getSecond();
+                result.add(new BundleClassCompletionProposal(project, unit, provider.getFirst(), bundle, offset - prefix.length(), prefix.length(), relevance));
+                if (relevance > 1)
+                    relevance--;
+            }
+        } catch (BadLocationException e) {
+            Plugin.logError("Error computing class completion proposals.", e);
+        } catch (CoreException e) {
+            Plugin.logError("Error computing class completion proposals.", e);
+        }
 
-		return result;
-	}
+        return result;
+    }
 
-	public List<IContextInformation> computeContextInformation(ContentAssistInvocationContext context, IProgressMonitor monitor) {
-		List<IContextInformation> result = new LinkedList<IContextInformation>();
+    private Project findProject(ICompilationUnit unit) throws CoreException {
+        if (unit == null)
+            return null;
+        IJavaProject javaProject = unit.getJavaProject();
+        if (!javaProject.getProject().hasNature(Plugin.BNDTOOLS_NATURE))
+            return null;
+        return Plugin.getDefault().getCentral().getModel(javaProject);
+    }
 
-		result.add(new ContextInformation("contextDisplayString", "informationDisplayString"));
+    public List<IContextInformation> computeContextInformation(ContentAssistInvocationContext context, IProgressMonitor monitor) {
+        return Collections.emptyList();
+    }
 
-		return result;
-	}
+    public String getErrorMessage() {
+        return null;
+    }
 
-	public String getErrorMessage() {
-		return null;
-	}
+    public void sessionStarted() {
+    }
 
-	public void sessionStarted() {
-	}
-	public void sessionEnded() {
-	}
+    public void sessionEnded() {
+    }
 }
@@ -0,0 +1,81 @@
+package bndtools.classpath;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import aQute.bnd.build.Container;
+import aQute.bnd.build.Container.TYPE;
+
+/**
+ * Reverse index from the {@code -buildpath} and {@code -testpath} entries that
+ * could not be resolved to the names of the bnd projects declaring them. The
+ * index is updated whenever {@link BndContainerInitializer} calculates a
+ * project classpath, so that a newly added project only causes the classpaths
+ * of the projects waiting for it to be recalculated.
+ */
+public class UnresolvedPathIndex {
+
+    /** Unresolved entry name to the names of projects referencing it. */
+    private static final Map<String, Set<String>> referencingProjects = new HashMap<String, Set<String>>();
+    /** Project name to its unresolved entry names. */
+    private static final Map<String, Set<String>> unresolvedNames = new HashMap<String, Set<String>>();
+
+    /**
+     * Replaces the unresolved entries recorded for the project with those of
+     * the given containers that have errors.
+     */
+    static synchronized void update(String projectName, Collection<Container> containers) {
+        remove(projectName);
+
+        Set<String> names = new HashSet<String>();
+        for (Container container : containers) {
+            if ((container.getType() == TYPE.ERROR || container.getError() != null) && container.getBundleSymbolicName() != null)
+                names.add(container.getBundleSymbolicName());
+        }
+        if (names.isEmpty())
+            return;
+
+        unresolvedNames.put(projectName, names);
+        for (String name : names) {
+            Set<String> projects = referencingProjects.get(name);
+            if (projects == null) {
+                projects = new HashSet<String>(4);
+                referencingProjects.put(name, projects);
+            }
+            projects.add(projectName);
+        }
+    }
+
+    public static synchronized void remove(String projectName) {
+        Set<String> names = unresolvedNames.remove(projectName);
+        if (names == null)
+            return;
+        for (String name : names) {
+            Set<String> projects = referencingProjects.get(name);
+            if (projects != null) {
+                projects.remove(projectName);
+                if (projects.isEmpty())
+                    referencingProjects.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Returns the names of the projects with unresolved entries that the
+     * specified project could satisfy, either directly by its name or by the
+     * name of one of its sub-bundles.
+     */
+    public static synchronized Set<String> findReferencingProjects(String projectName) {
+        Set<String> result = new HashSet<String>();
+        String subBundlePrefix = projectName + ".";
+        for (Map.Entry<String, Set<String>> entry : referencingProjects.entrySet()) {
+            String name = entry.getKey();
+            if (name.equals(projectName) || name.startsWith(subBundlePrefix))
+                result.addAll(entry.getValue());
+        }
+        return result;
+    }
+}
@@ -15,6 +15,7 @@ import java.beans.PropertyChangeListener;
 import java.io.IOException;
 
 import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.text.IDocument;
@@ -95,6 +96,14 @@ public class BndSourceEditorPage extends TextEditor implements IFormPage {
 		control = children[children.length - 1];
 	}
 
+	@Override
+	protected void doSetInput(IEditorInput input) throws CoreException {
+		super.doSetInput(input);
+		IDocument document = getDocumentProvider().getDocument(input);
+		if (document != null)
+			BndSourceViewerConfiguration.setupDocument(document);
+	}
+
 	public Control getPartControl() {
 		return control;
 	}
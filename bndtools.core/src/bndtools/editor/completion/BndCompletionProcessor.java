@@ -1,58 +1,92 @@
 package bndtools.editor.completion;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.eclipse.jface.text.*;
 import org.eclipse.jface.text.contentassist.*;
 
 public class BndCompletionProcessor implements IContentAssistProcessor {
 
-    private static final Pattern PREFIX_PATTERN = Pattern.compile("^(?:.*\\s)*(.*)$");
-    
+    /** The known headers sorted by name, so that a prefix selects a contiguous range. */
+    private static final Syntax[] HEADERS;
+
+    static {
+        HEADERS = Syntax.HELP.values().toArray(new Syntax[Syntax.HELP.size()]);
+        Arrays.sort(HEADERS, new Comparator<Syntax>() {
+            public int compare(Syntax s1, Syntax s2) {
+                return s1.getHeader().compareTo(s2.getHeader());
+            }
+        });
+    }
+
     public ICompletionProposal[] computeCompletionProposals(ITextViewer viewer,
             int offset) {
         try {
-            String pre = viewer.getDocument().get(0, offset);
-            Matcher matcher = PREFIX_PATTERN.matcher(pre);
-            if (matcher.matches()) {
-                String prefix = matcher.group(1);
-                ICompletionProposal[] found = proposals(prefix, offset);
-                if (found.length == 1) {
-                    found[0].apply(viewer.getDocument());
-                    viewer.setSelectedRange(offset + (found[0].getDisplayString().length() - prefix.length() + 2), 0);
-                    return new ICompletionProposal[0];
-                }
-                else {
-                    return found;
-                }
+            String prefix = findPrefix(viewer.getDocument(), offset);
+            ICompletionProposal[] found = proposals(prefix, offset);
+            if (found.length == 1) {
+                found[0].apply(viewer.getDocument());
+                viewer.setSelectedRange(offset + (found[0].getDisplayString().length() - prefix.length() + 2), 0);
+                return new ICompletionProposal[0];
             }
             else {
-                return proposals(null, offset);
+                return found;
             }
         } catch (BadLocationException e) {
             return proposals(null, offset);
         }
     }
 
+    /**
+     * Returns the text between the last whitespace before the offset and the
+     * offset. Only the line containing the offset is examined.
+     */
+    static String findPrefix(IDocument document, int offset) throws BadLocationException {
+        IRegion line = document.getLineInformationOfOffset(offset);
+        int start = offset;
+        while (start > line.getOffset() && !Character.isWhitespace(document.getChar(start - 1)))
+            start--;
+        return document.get(start, offset - start);
+    }
+
     private ICompletionProposal[] proposals(String prefix, int offset) {
-        ArrayList<ICompletionProposal> results = new ArrayList<ICompletionProposal>(Syntax.HELP.size());
-        for (Syntax s : Syntax.HELP.values()) {
-            if (prefix == null || s.getHeader().startsWith(prefix)) {
-                IContextInformation info = new ContextInformation(s.getHeader(), s.getHeader());
-                String text = prefix == null ? s.getHeader() : s.getHeader().substring(prefix.length());
-                results.add(new CompletionProposal(text + ": ", offset, 0, text.length() + 2, null, s.getHeader(), info, s.getLead())); //$NON-NLS-1$                
-            }
+        int from;
+        int to;
+        if (prefix == null) {
+            from = 0;
+            to = HEADERS.length;
+        } else {
+            from = lowerBound(prefix);
+            to = from;
+            while (to < HEADERS.length && HEADERS[to].getHeader().startsWith(prefix))
+                to++;
         }
-        Collections.sort(results, new Comparator<ICompletionProposal>() {
-            public int compare(ICompletionProposal p1, ICompletionProposal p2) {
-                return p1.getDisplayString().compareTo(p2.getDisplayString());
-            }            
-        });
-        return results.toArray(new ICompletionProposal[results.size()]);
+
+        ICompletionProposal[] results = new ICompletionProposal[to - from];
+        for (int i = from; i < to; i++) {
+            Syntax s = HEADERS[i];
+            IContextInformation info = new ContextInformation(s.getHeader(), s.getHeader());
+            String text = prefix == null ? s.getHeader() : s.getHeader().substring(prefix.length());
+            results[i - from] = new CompletionProposal(text + ": ", offset, 0, text.length() + 2, null, s.getHeader(), info, s.getLead()); //$NON-NLS-1$
+        }
+        return results;
+    }
+
+    /**
+     * Returns the index of the first header not less than the given string.
+     */
+    private static int lowerBound(String s) {
+        int low = 0;
+        int high = HEADERS.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (HEADERS[mid].getHeader().compareTo(s) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
     }
 
     public IContextInformation[] computeContextInformation(ITextViewer viewer,
@@ -19,7 +19,11 @@ public class BndHover implements ITextHover {
         }
 
         public CharSequence subSequence(int start, int end) {
-            return doc.get().subSequence(start, end);
+            try {
+                return doc.get(start, end - start);
+            } catch (BadLocationException e) {
+                throw new IndexOutOfBoundsException();
+            }
         }
 
     };
@@ -58,18 +62,19 @@ public class BndHover implements ITextHover {
     public IRegion getHoverRegion(ITextViewer textViewer, int offset) {
         IDocument doc = textViewer.getDocument();
         try {
+            // Words never span lines, so only scan the line containing the offset
+            IRegion line = doc.getLineInformationOfOffset(offset);
+            int lineEnd = line.getOffset() + line.getLength();
+
             int start = offset;
             int end = offset;
-            while (start >= 0 && isWordChar(doc.getChar(start)))
+            while (start > line.getOffset() && isWordChar(doc.getChar(start - 1)))
                 start--;
 
-            while (end < doc.getLength() && isWordChar(doc.getChar(end)))
+            while (end < lineEnd && isWordChar(doc.getChar(end)))
                 end++;
 
-            start++;
-            int length = Math.min(doc.getLength(), end - start);
-            start = Math.max(0,start);
-            return new Region(start, length);
+            return new Region(start, end - start);
         } catch (BadLocationException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
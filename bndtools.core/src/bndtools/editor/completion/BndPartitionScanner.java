@@ -0,0 +1,113 @@
+package bndtools.editor.completion;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.rules.IPartitionTokenScanner;
+import org.eclipse.jface.text.rules.IToken;
+import org.eclipse.jface.text.rules.Token;
+
+/**
+ * Partitions a bnd file into logical lines: each comment line, and each header
+ * together with the lines continued from it by a trailing backslash, forms its
+ * own partition. Edits therefore only damage the logical line they occur in.
+ */
+class BndPartitionScanner implements IPartitionTokenScanner {
+
+    private final IToken commentToken = new Token(BndSourceViewerConfiguration.SINGLELINE_COMMENT_TYPE);
+    private final IToken headerToken = new Token(BndSourceViewerConfiguration.HEADER_TYPE);
+
+    private IDocument document;
+    private int end;
+    private int pos;
+    private int tokenOffset;
+
+    public void setRange(IDocument document, int offset, int length) {
+        this.document = document;
+        this.pos = offset;
+        this.end = offset + length;
+        this.tokenOffset = offset;
+    }
+
+    public void setPartialRange(IDocument document, int offset, int length, String contentType, int partitionOffset) {
+        int start = offset;
+        if (contentType != null && partitionOffset >= 0 && partitionOffset < offset)
+            start = partitionOffset;
+        try {
+            start = findLogicalLineStart(document, start);
+        } catch (BadLocationException e) {
+            // scan from the requested offset
+        }
+        setRange(document, start, offset + length - start);
+    }
+
+    /**
+     * Returns the start of the logical line containing the offset, following
+     * continuations back to the first physical line.
+     */
+    private static int findLogicalLineStart(IDocument document, int offset) throws BadLocationException {
+        int line = document.getLineOfOffset(offset);
+        while (line > 0 && endsWithContinuation(document, line - 1))
+            line--;
+        return document.getLineOffset(line);
+    }
+
+    private static boolean endsWithContinuation(IDocument document, int line) throws BadLocationException {
+        int lineOffset = document.getLineOffset(line);
+        int pos = lineOffset + document.getLineLength(line);
+        String delimiter = document.getLineDelimiter(line);
+        if (delimiter != null)
+            pos -= delimiter.length();
+
+        int backslashes = 0;
+        while (pos > lineOffset && document.getChar(pos - 1) == '\\') {
+            backslashes++;
+            pos--;
+        }
+        return backslashes % 2 == 1;
+    }
+
+    public IToken nextToken() {
+        tokenOffset = pos;
+        if (pos >= end)
+            return Token.EOF;
+
+        try {
+            int first = pos;
+            while (first < end && isBlank(document.getChar(first)))
+                first++;
+            boolean comment = first < end && (document.getChar(first) == '#' || document.getChar(first) == '!');
+
+            boolean escaped = false;
+            while (pos < end) {
+                char c = document.getChar(pos++);
+                if (c == '\n' || c == '\r') {
+                    if (c == '\r' && pos < end && document.getChar(pos) == '\n')
+                        pos++;
+                    if (comment || !escaped)
+                        break;
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = !escaped;
+                } else {
+                    escaped = false;
+                }
+            }
+            return comment ? commentToken : headerToken;
+        } catch (BadLocationException e) {
+            pos = end;
+            return Token.EOF;
+        }
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+
+    public int getTokenOffset() {
+        return tokenOffset;
+    }
+
+    public int getTokenLength() {
+        return pos - tokenOffset;
+    }
+}
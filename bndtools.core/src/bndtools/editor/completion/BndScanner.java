@@ -1,76 +1,128 @@
 package bndtools.editor.completion;
 
-import java.util.*;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.rules.ITokenScanner;
+import org.eclipse.jface.text.rules.IToken;
+import org.eclipse.jface.text.rules.Token;
 
-import org.eclipse.jface.text.rules.*;
+import aQute.lib.osgi.Analyzer;
 
-import aQute.lib.osgi.*;
-
-public class BndScanner extends RuleBasedScanner {
+/**
+ * Token scanner for the text of bnd files. The range to be scanned is copied
+ * from the document once; the tokens are then found without further
+ * allocation, with keywords matched through a {@link KeywordTrie}.
+ */
+public class BndScanner implements ITokenScanner {
     BndSourceViewerConfiguration bsvc;
-    
+
+    private final KeywordTrie keyWords = new KeywordTrie();
+    private final MacroRule macroRule;
+
+    private String text = "";
+    private int base = 0;
+    private int end = 0;
+    private int pos = 0;
+    private int tokenStart = 0;
 
     public BndScanner(BndSourceViewerConfiguration manager) {
         bsvc = manager;
-        IRule[] rules = new IRule[] {
-                new WhitespaceRule(new IWhitespaceDetector() {
-                    public boolean isWhitespace(char c) {
-                        return (c == ' ' || c == '\t' || c == '\n' || c == '\r');
-                    }
-                }), new BndWordRule(), new MacroRule(bsvc.T_MACRO),
-                new EndOfLineRule("#", bsvc.T_COMMENT),
-                new EndOfLineRule("\\ ", bsvc.T_ERROR),
-                new EndOfLineRule("\\\t", bsvc.T_ERROR), };
-
-        setRules(rules);
-        setDefaultReturnToken(bsvc.T_DEFAULT);
-    }
-    
-    class BndWordRule implements IRule {
+        macroRule = new MacroRule(bsvc.T_MACRO);
 
-        Map<String, IToken> keyWords = new HashMap<String, IToken>();
+        keyWords.addAll(Analyzer.headers, bsvc.T_INSTRUCTION);
+        keyWords.addAll(Analyzer.options, bsvc.T_OPTION);
+        keyWords.addAll(Analyzer.directives, bsvc.T_DIRECTIVE);
+        // TODO need to move these constants to Constants to avoid the dependency on aQute.bnd.make.component which drags in half the universe
+        //keyWords.addAll(ServiceComponent.componentDirectives, bsvc.T_COMPONENT);
+    }
 
-        public BndWordRule() {
-            addWords(Analyzer.headers, bsvc.T_INSTRUCTION);
-            addWords(Analyzer.options, bsvc.T_OPTION);
-            addWords(Analyzer.directives, bsvc.T_DIRECTIVE);
-            // TODO need to move these constants to Constants to avoid the dependency on aQute.bnd.make.component which drags in half the universe
-            //addWords(ServiceComponent.componentDirectives, bsvc.T_COMPONENT);
+    public void setRange(IDocument document, int offset, int length) {
+        try {
+            text = document.get(offset, length);
+        } catch (BadLocationException e) {
+            text = "";
         }
+        base = offset;
+        end = text.length();
+        pos = 0;
+        tokenStart = 0;
+    }
 
-        private boolean isWordStart(char c) {
-            return Character.isJavaIdentifierStart(c);
-        }
+    public int getTokenOffset() {
+        return base + tokenStart;
+    }
 
-        private boolean isWordPart(char c) {
-            return Character.isJavaIdentifierPart(c) || c == '-';
-        }
+    public int getTokenLength() {
+        return pos - tokenStart;
+    }
 
-        public IToken evaluate(ICharacterScanner scanner) {
-            StringBuffer sb = new StringBuffer();
-
-            int c = scanner.read();
-            if (isWordStart((char) c) || c == '-') {
-                do {
-                    sb.append((char) c);
-                    c = scanner.read();
-                } while (c != ICharacterScanner.EOF && isWordPart((char) c));
-                scanner.unread();
-
-                IToken token = (IToken) keyWords.get(sb.toString());
-                if (token != null)
-                    return token;
-                return bsvc.T_DEFAULT;
-            }
-            scanner.unread();
-            return Token.UNDEFINED;
+    public IToken nextToken() {
+        tokenStart = pos;
+        if (pos >= end)
+            return Token.EOF;
 
+        char c = text.charAt(pos);
+        if (isWhitespace(c)) {
+            do {
+                pos++;
+            } while (pos < end && isWhitespace(text.charAt(pos)));
+            return Token.WHITESPACE;
         }
-
-        private void addWords(String[] words, IToken token) {
-            for (int i = 0; i < words.length; ++i) {
-                keyWords.put(words[i], token);
+        if (c == '#') {
+            skipToEndOfLine();
+            return bsvc.T_COMMENT;
+        }
+        if (c == '\\' && pos + 1 < end && (text.charAt(pos + 1) == ' ' || text.charAt(pos + 1) == '\t')) {
+            // Whitespace after a line continuation breaks the continuation
+            skipToEndOfLine();
+            return bsvc.T_ERROR;
+        }
+        if (c == '$') {
+            int macroEnd = macroRule.scan(text, pos, end);
+            if (macroEnd > 0) {
+                pos = macroEnd;
+                return macroRule.getToken();
             }
         }
+        if (isWordStart(c))
+            return scanWord();
+
+        do {
+            pos++;
+        } while (pos < end && !isTokenStart(text.charAt(pos)));
+        return bsvc.T_DEFAULT;
+    }
+
+    private IToken scanWord() {
+        KeywordTrie.Node node = keyWords.getRoot();
+        do {
+            if (node != null)
+                node = node.next(text.charAt(pos));
+            pos++;
+        } while (pos < end && isWordPart(text.charAt(pos)));
+
+        IToken token = node != null ? node.getToken() : null;
+        return token != null ? token : bsvc.T_DEFAULT;
+    }
+
+    private void skipToEndOfLine() {
+        while (pos < end && text.charAt(pos) != '\n' && text.charAt(pos) != '\r')
+            pos++;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean isWordStart(char c) {
+        return Character.isJavaIdentifierStart(c) || c == '-';
+    }
+
+    private static boolean isWordPart(char c) {
+        return Character.isJavaIdentifierPart(c) || c == '-';
+    }
+
+    private static boolean isTokenStart(char c) {
+        return isWhitespace(c) || isWordStart(c) || c == '#' || c == '\\' || c == '$';
     }
 }
@@ -23,15 +23,23 @@ public class BndSourceViewerConfiguration extends SourceViewerConfiguration {
     Token T_COMPONENT;
     
     static final String SINGLELINE_COMMENT_TYPE = "___slc";
+    static final String HEADER_TYPE             = "___hdr";
+    static final String BND_PARTITIONING        = "___bnd_partitioning";
+    static final String[] PARTITION_TYPES       = new String[] { SINGLELINE_COMMENT_TYPE, HEADER_TYPE };
     static Properties   syntax                  = null;
 
-    class BndPartitionScanner extends RuleBasedPartitionScanner {
-        public BndPartitionScanner() {
-            IToken singleLineComment = new Token(SINGLELINE_COMMENT_TYPE);
-
-            IPredicateRule[] rules = new IPredicateRule[] { new EndOfLineRule(
-                    "#", singleLineComment), };
-            setPredicateRules(rules);
+    /**
+     * Connects a partitioner that splits the document into bnd logical lines,
+     * unless the document already has one.
+     */
+    public static void setupDocument(IDocument document) {
+        if (document instanceof IDocumentExtension3) {
+            IDocumentExtension3 extension = (IDocumentExtension3) document;
+            if (extension.getDocumentPartitioner(BND_PARTITIONING) == null) {
+                IDocumentPartitioner partitioner = new FastPartitioner(new BndPartitionScanner(), PARTITION_TYPES);
+                extension.setDocumentPartitioner(BND_PARTITIONING, partitioner);
+                partitioner.connect(document);
+            }
         }
     }
 
@@ -61,12 +69,25 @@ public class BndSourceViewerConfiguration extends SourceViewerConfiguration {
                 60, 255)), null, SWT.BOLD));
     }
 
+    @Override
+    public String[] getConfiguredContentTypes(ISourceViewer sourceViewer) {
+        return new String[] { IDocument.DEFAULT_CONTENT_TYPE,
+                SINGLELINE_COMMENT_TYPE, HEADER_TYPE };
+    }
+
+    @Override
+    public String getConfiguredDocumentPartitioning(ISourceViewer sourceViewer) {
+        return BND_PARTITIONING;
+    }
+
     @Override
     public IPresentationReconciler getPresentationReconciler(
             ISourceViewer sourceViewer) {
         PresentationReconciler reconciler = new PresentationReconciler();
+        reconciler.setDocumentPartitioning(BND_PARTITIONING);
         configureReconciler(reconciler, IDocument.DEFAULT_CONTENT_TYPE,
                 getBndScanner());
+        configureReconciler(reconciler, HEADER_TYPE, getBndScanner());
         configureReconciler(reconciler, SINGLELINE_COMMENT_TYPE,
                 getMultiLineCommentScanner());
         return reconciler;
@@ -106,7 +127,8 @@ public class BndSourceViewerConfiguration extends SourceViewerConfiguration {
     public String[] getDefaultPrefixes(ISourceViewer sourceViewer,
             String contentType) {
         if (IDocument.DEFAULT_CONTENT_TYPE == contentType
-                || SINGLELINE_COMMENT_TYPE == contentType) {
+                || SINGLELINE_COMMENT_TYPE == contentType
+                || HEADER_TYPE == contentType) {
             return new String[] { "#", "//" };
         }
         return null;
@@ -121,10 +143,13 @@ public class BndSourceViewerConfiguration extends SourceViewerConfiguration {
     @Override
     public IContentAssistant getContentAssistant(ISourceViewer viewer) {
         ContentAssistant assistant = new ContentAssistant();
+        assistant.setDocumentPartitioning(BND_PARTITIONING);
         assistant.setContentAssistProcessor(new BndCompletionProcessor(),
                 IDocument.DEFAULT_CONTENT_TYPE);
         assistant.setContentAssistProcessor(new BndCompletionProcessor(),
                 SINGLELINE_COMMENT_TYPE);
+        assistant.setContentAssistProcessor(new BndCompletionProcessor(),
+                HEADER_TYPE);
         assistant.enableAutoActivation(true);
         return assistant;
     }
@@ -0,0 +1,66 @@
+package bndtools.editor.completion;
+
+import org.eclipse.jface.text.rules.IToken;
+
+/**
+ * Character trie mapping keywords to tokens, so that a scanner can match a
+ * keyword while it reads the characters of a word, without building a string.
+ */
+class KeywordTrie {
+
+    static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private IToken token = null;
+
+        /**
+         * Returns the node reached by the given character, or {@code null} if
+         * no keyword continues with it.
+         */
+        Node next(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c)
+                    return children[i];
+            }
+            return null;
+        }
+
+        IToken getToken() {
+            return token;
+        }
+
+        private Node add(char c) {
+            Node child = next(c);
+            if (child == null) {
+                child = new Node();
+                char[] newKeys = new char[keys.length + 1];
+                System.arraycopy(keys, 0, newKeys, 0, keys.length);
+                newKeys[keys.length] = c;
+                Node[] newChildren = new Node[children.length + 1];
+                System.arraycopy(children, 0, newChildren, 0, children.length);
+                newChildren[children.length] = child;
+                keys = newKeys;
+                children = newChildren;
+            }
+            return child;
+        }
+    }
+
+    private final Node root = new Node();
+
+    Node getRoot() {
+        return root;
+    }
+
+    void add(String keyword, IToken token) {
+        Node node = root;
+        for (int i = 0; i < keyword.length(); i++)
+            node = node.add(keyword.charAt(i));
+        node.token = token;
+    }
+
+    void addAll(String[] keywords, IToken token) {
+        for (String keyword : keywords)
+            add(keyword, token);
+    }
+}
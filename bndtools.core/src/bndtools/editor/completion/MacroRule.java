@@ -1,58 +1,67 @@
 package bndtools.editor.completion;
 
-import org.eclipse.jface.text.rules.*;
+import org.eclipse.jface.text.rules.IToken;
 
 import aQute.lib.osgi.*;
 
-public class MacroRule implements IRule {
+/**
+ * Matches bnd macros such as <code>${name;arg}</code>, including nested
+ * macros, for {@link BndScanner}. Nesting is tracked with an explicit stack of
+ * terminators rather than by recursion, and an unterminated macro is not
+ * matched.
+ */
+public class MacroRule {
 
-    private StringBuffer buffer = new StringBuffer();
-    private IToken       token;
+    private int[]  terminators = new int[8];
+    private IToken token;
 
     public MacroRule(IToken token) {
         this.token = token;
     }
 
-    public IToken evaluate(ICharacterScanner scanner) {
-        int c = scanner.read();
-        if (c == '$') {
-            buffer.setLength(0);
-            buffer.append('$');
-            if ( scan(scanner, buffer) )
-                return token;
-        }
-        scanner.unread();
-        return Token.UNDEFINED;
-
+    public IToken getToken() {
+        return token;
     }
 
-    boolean scan( ICharacterScanner scanner, StringBuffer buffer ) {
-        int c = scanner.read();
-        if (c == ICharacterScanner.EOF)
-            return false;
-        int terminator = Macro.getTerminator((char) c);
-        
+    /**
+     * Returns the end offset of the macro starting with the <code>$</code>
+     * at the given offset in the text, or -1 if there is no complete macro
+     * there before the end offset.
+     */
+    int scan(CharSequence text, int start, int end) {
+        int pos = start + 1;
+        if (pos >= end)
+            return -1;
+        char terminator = Macro.getTerminator(text.charAt(pos++));
         if (terminator == 0)
-            return false;
-
-
-        while(true) {
-            c = scanner.read();
-            buffer.append((char)c);
-            if ( c == terminator )
-                return true;
-            else
-            if ( c == '$') {
-                if ( !scan(scanner, buffer) )
-                    return false;
-            }
-            else         
-            if ( c == '\\') {
-                c = scanner.read();
-                if ( c == ICharacterScanner.EOF)
-                    return false;
-                buffer.append((char)c);
+            return -1;
+
+        int depth = 0;
+        push(depth++, terminator);
+        while (pos < end) {
+            char c = text.charAt(pos++);
+            if (c == terminators[depth - 1]) {
+                if (--depth == 0)
+                    return pos;
+            } else if (c == '$') {
+                terminator = pos < end ? Macro.getTerminator(text.charAt(pos)) : 0;
+                if (terminator != 0) {
+                    push(depth++, terminator);
+                    pos++;
+                }
+            } else if (c == '\\') {
+                pos++;
             }
         }
-   }
+        return -1;
+    }
+
+    private void push(int depth, char terminator) {
+        if (depth == terminators.length) {
+            int[] grown = new int[terminators.length * 2];
+            System.arraycopy(terminators, 0, grown, 0, terminators.length);
+            terminators = grown;
+        }
+        terminators[depth] = terminator;
+    }
 }
@@ -15,20 +15,20 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
-import org.eclipse.core.runtime.SubMonitor;
-import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.jdt.core.IMethod;
-import org.eclipse.jdt.core.IType;
-import org.eclipse.jdt.core.ITypeHierarchy;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jface.fieldassist.IContentProposal;
 import org.eclipse.jface.operation.IRunnableContext;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 
+import bndtools.Plugin;
 import bndtools.javamodel.IJavaMethodSearchContext;
+import bndtools.javamodel.JavaProjectIndex;
+import bndtools.javamodel.JavaProjectIndexes;
 import bndtools.utils.CachingContentProposalProvider;
 
 public class MethodProposalProvider extends CachingContentProposalProvider {
@@ -41,36 +41,17 @@ public class MethodProposalProvider extends CachingContentProposalProvider {
 
 	@Override
     public List<IContentProposal> doGenerateProposals(String contents, int position) {
-		final String prefix = contents.substring(0, position);
+		final String prefix = contents.substring(0, position).toLowerCase();
 		final List<IContentProposal> result = new ArrayList<IContentProposal>();
 		
 		try {
+			final JavaProjectIndex index = JavaProjectIndexes.getIndex(searchContext.getJavaProject());
+			final String targetTypeName = searchContext.getTargetTypeName();
+			final IMethod[][] methods = new IMethod[1][];
 			IRunnableWithProgress runnable = new IRunnableWithProgress() {
 				public void run(IProgressMonitor monitor) throws InvocationTargetException {
-					SubMonitor progress = SubMonitor.convert(monitor, 10);
-					
 					try {
-						IJavaProject project = searchContext.getJavaProject();
-						String targetTypeName = searchContext.getTargetTypeName();
-						IType targetType = project.findType(targetTypeName, progress.newChild(1));
-						
-						if(targetType == null)
-							return;
-						
-						ITypeHierarchy hierarchy = targetType.newSupertypeHierarchy(progress.newChild(5));
-						IType[] classes = hierarchy.getAllClasses();
-						progress.setWorkRemaining(classes.length);
-						for (IType clazz : classes) {
-							IMethod[] methods = clazz.getMethods();
-							for (IMethod method : methods) {
-								if(method.getElementName().toLowerCase().startsWith(prefix)) {
-									// String[] parameterTypes = method.getParameterTypes();
-									// TODO check parameter type
-									result.add(new MethodContentProposal(method));
-								}
-							}
-							progress.worked(1);
-						}
+						methods[0] = index.getHierarchyMethods(targetTypeName, monitor);
 					} catch (JavaModelException e) {
 						throw new InvocationTargetException(e);
 					}
@@ -78,17 +59,23 @@ public class MethodProposalProvider extends CachingContentProposalProvider {
 			};
 			IRunnableContext runContext = searchContext.getRunContext();
 			if(runContext != null) {
-				runContext.run(false, false, runnable);
+				runContext.run(true, true, runnable);
 			} else {
 				runnable.run(new NullProgressMonitor());
 			}
+
+			for (IMethod method : methods[0]) {
+				if(method.getElementName().toLowerCase().startsWith(prefix)) {
+					// String[] parameterTypes = method.getParameterTypes();
+					// TODO check parameter type
+					result.add(new MethodContentProposal(method));
+				}
+			}
 			return result;
 		} catch (InvocationTargetException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Plugin.log(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error searching for methods.", e.getTargetException()));
 		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Thread.currentThread().interrupt();
 		}
 		return Collections.emptyList();
 	}
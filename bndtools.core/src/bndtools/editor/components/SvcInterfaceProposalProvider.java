@@ -15,25 +15,17 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.jdt.core.Flags;
-import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.core.search.IJavaSearchConstants;
-import org.eclipse.jdt.core.search.IJavaSearchScope;
-import org.eclipse.jdt.core.search.SearchEngine;
-import org.eclipse.jdt.core.search.SearchPattern;
-import org.eclipse.jdt.core.search.TypeNameRequestor;
 import org.eclipse.jface.fieldassist.IContentProposal;
 import org.eclipse.jface.operation.IRunnableContext;
-import org.eclipse.jface.operation.IRunnableWithProgress;
 
 import bndtools.Plugin;
 import bndtools.javamodel.IJavaSearchContext;
+import bndtools.javamodel.JavaProjectIndex;
+import bndtools.javamodel.JavaProjectIndex.TypeEntry;
 import bndtools.utils.CachingContentProposalProvider;
 import bndtools.utils.JavaContentProposal;
 
@@ -65,31 +57,15 @@ public class SvcInterfaceProposalProvider extends CachingContentProposalProvider
 	@Override
 	protected List<IContentProposal> doGenerateProposals(String contents, int position) {
 		final String prefix = contents.substring(0, position);
-		final IJavaSearchScope scope = SearchEngine.createJavaSearchScope(new IJavaElement[] { searchContext.getJavaProject() });
 		final ArrayList<IContentProposal> result = new ArrayList<IContentProposal>(100);
-		final TypeNameRequestor typeNameRequestor = new TypeNameRequestor() {
-			@Override
-			public void acceptType(int modifiers, char[] packageName, char[] simpleTypeName, char[][] enclosingTypeNames, String path) {
-				boolean isInterface = Flags.isInterface(modifiers);
-				result.add(new JavaContentProposal(new String(packageName), new String(simpleTypeName), isInterface));
-			}
-		};
-		IRunnableWithProgress runnable = new IRunnableWithProgress() {
-			public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
-				try {
-					new SearchEngine().searchAllTypeNames(null, 0, prefix.toCharArray(), SearchPattern.R_PREFIX_MATCH, IJavaSearchConstants.CLASS_AND_INTERFACE, scope, typeNameRequestor, IJavaSearchConstants.CANCEL_IF_NOT_READY_TO_SEARCH, monitor);
-				} catch (JavaModelException e) {
-					throw new InvocationTargetException(e);
-				}
-			}
-		};
-
 		try {
-			if(searchContext.getRunContext() == null) {
-				runnable.run(new NullProgressMonitor());
-			} else {
-				searchContext.getRunContext().run(false, false, runnable);
+			JavaProjectIndex index = JavaProjectIndex.getBuiltIndex(searchContext.getJavaProject(), searchContext.getRunContext());
+			for (TypeEntry type : index.findTypes(prefix)) {
+				result.add(new JavaContentProposal(type.getPackageName(), type.getTypeName(), type.isInterface()));
 			}
+		} catch (JavaModelException e) {
+			Plugin.log(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error searching for Java types.", e));
+			return Collections.emptyList();
 		} catch (InvocationTargetException e) {
 			Plugin.log(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error searching for Java types.", e.getTargetException()));
 			return Collections.emptyList();
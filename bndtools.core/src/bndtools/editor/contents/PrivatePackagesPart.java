@@ -21,11 +21,8 @@ import java.util.List;
 import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
-import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
-import org.eclipse.jdt.core.search.IJavaSearchScope;
-import org.eclipse.jdt.core.search.SearchEngine;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.util.LocalSelectionTransfer;
 import org.eclipse.jface.viewers.ArrayContentProvider;
@@ -194,8 +191,7 @@ public class PrivatePackagesPart extends SectionPart implements PropertyChangeLi
 			MessageDialog.openError(getSection().getShell(), "Error", "Cannot add packages: unable to find a Java project associated with the editor input.");
 			return;
 		}
-		IJavaSearchScope searchScope = SearchEngine.createJavaSearchScope(new IJavaElement[] { javaProject });
-		JavaSearchScopePackageLister packageLister = new JavaSearchScopePackageLister(searchScope, window);
+		JavaSearchScopePackageLister packageLister = new JavaSearchScopePackageLister(javaProject, window);
 
 		// Create and open the dialog
 		PackageSelectionDialog dialog =  new PackageSelectionDialog(getSection().getShell(), packageLister, filter, "Select new packages to include in the bundle.");
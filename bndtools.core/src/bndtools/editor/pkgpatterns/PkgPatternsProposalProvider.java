@@ -16,26 +16,15 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.TreeSet;
 
-import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IPackageFragment;
-import org.eclipse.jdt.core.search.IJavaSearchConstants;
-import org.eclipse.jdt.core.search.IJavaSearchScope;
-import org.eclipse.jdt.core.search.SearchEngine;
-import org.eclipse.jdt.core.search.SearchMatch;
-import org.eclipse.jdt.core.search.SearchParticipant;
-import org.eclipse.jdt.core.search.SearchPattern;
-import org.eclipse.jdt.core.search.SearchRequestor;
+import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jface.fieldassist.IContentProposal;
-import org.eclipse.jface.operation.IRunnableContext;
-import org.eclipse.jface.operation.IRunnableWithProgress;
 
 import bndtools.Plugin;
 import bndtools.javamodel.IJavaSearchContext;
+import bndtools.javamodel.JavaProjectIndex;
 import bndtools.utils.CachingContentProposalProvider;
 
 public class PkgPatternsProposalProvider extends CachingContentProposalProvider {
@@ -69,38 +58,20 @@ public class PkgPatternsProposalProvider extends CachingContentProposalProvider
 		};
 		final TreeSet<PkgPatternProposal> result = new TreeSet<PkgPatternProposal>(comparator);
 
-		final IJavaSearchScope scope = SearchEngine.createJavaSearchScope(new IJavaElement[] { searchContext.getJavaProject() });
-		final SearchPattern pattern = SearchPattern.createPattern("*" + prefix + "*", IJavaSearchConstants.PACKAGE, IJavaSearchConstants.DECLARATIONS, SearchPattern.R_PATTERN_MATCH);
-		final SearchRequestor requestor = new SearchRequestor() {
-			@Override
-			public void acceptSearchMatch(SearchMatch match) throws CoreException {
-				IPackageFragment pkg = (IPackageFragment) match.getElement();
-				// Reject the default package and any package starting with "java." since these cannot be imported
-				if(pkg.isDefaultPackage() || pkg.getElementName().startsWith("java."))
-					return;
+		try {
+			JavaProjectIndex index = JavaProjectIndex.getBuiltIndex(searchContext.getJavaProject(), searchContext.getRunContext());
+			for (IPackageFragment pkg : index.findPackages(prefix)) {
+				// Reject any package starting with "java." since these cannot be imported
+				if(pkg.getElementName().startsWith("java."))
+					continue;
 
 				result.add(new PkgPatternProposal(pkg, false, replaceFromPos));
 				result.add(new PkgPatternProposal(pkg, true, replaceFromPos));
 			}
-		};
-		IRunnableWithProgress runnable = new IRunnableWithProgress() {
-			public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
-				try {
-					new SearchEngine().search(pattern, new SearchParticipant[] { SearchEngine.getDefaultSearchParticipant() }, scope, requestor, monitor);
-				} catch (CoreException e) {
-					throw new InvocationTargetException(e);
-				}
-			}
-		};
-
-		try {
-			IRunnableContext runContext = searchContext.getRunContext();
-			if(runContext != null) {
-				runContext.run(false, false, runnable);
-			} else {
-				runnable.run(new NullProgressMonitor());
-			}
 			return result;
+		} catch (JavaModelException e) {
+			Plugin.log(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error searching for packages.", e));
+			return Collections.emptyList();
 		} catch (InvocationTargetException e) {
 			Plugin.log(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error searching for packages.", e));
 			return Collections.emptyList();
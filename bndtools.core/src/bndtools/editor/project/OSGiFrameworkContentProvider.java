@@ -1,34 +1,132 @@
 package bndtools.editor.project;
 
-import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.viewers.IStructuredContentProvider;
 import org.eclipse.jface.viewers.Viewer;
 import org.osgi.framework.Bundle;
 
 import aQute.bnd.build.Workspace;
 import aQute.bnd.service.RepositoryPlugin;
-import aQute.bnd.service.RepositoryPlugin.Strategy;
 import aQute.libg.version.Version;
 import bndtools.Plugin;
 import bndtools.utils.BundleUtils;
+import bndtools.utils.SWTConcurrencyUtil;
 
+/**
+ * Lists the versions of the known OSGi frameworks that are available in the
+ * workspace repositories. The repositories are searched in a background job,
+ * reading only their BSN and version listings; a placeholder element is shown
+ * until the search completes. Results are cached for as long as the workspace
+ * keeps the same repository plugin instances.
+ */
 public class OSGiFrameworkContentProvider implements IStructuredContentProvider {
 
-    List<OSGiFramework> frameworks = new ArrayList<OSGiFramework>();
+    static final Object LOADING = new Object() {
+        @Override
+        public String toString() {
+            return "Loading...";
+        }
+    };
+
+    private static List<RepositoryPlugin> cachedRepositories = null;
+    private static List<OSGiFramework> cachedFrameworks = null;
+
+    private List<OSGiFramework> frameworks = null;
+    private Viewer viewer;
+    private Job job = null;
+    private Runnable refresher = null;
 
-    public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
-        frameworks.clear();
+    /**
+     * Sets the operation run in the UI thread to refresh the viewer once a
+     * background search completes. By default the viewer is simply refreshed.
+     */
+    public void setRefresher(Runnable refresher) {
+        this.refresher = refresher;
+    }
+
+    public synchronized void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+        this.viewer = viewer;
+        cancelJob();
 
         Workspace workspace = (Workspace) newInput;
+        final List<RepositoryPlugin> repositories = (workspace != null)
+                ? workspace.getRepositories()
+                : Collections.<RepositoryPlugin>emptyList();
+
+        frameworks = getCached(repositories);
+        if (frameworks != null)
+            return;
+
+        job = new Job("Searching repositories for OSGi frameworks") {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                List<OSGiFramework> found = findFrameworks(repositories, monitor);
+                if (found == null)
+                    return Status.CANCEL_STATUS;
+                putCached(repositories, found);
+                loaded(this, found);
+                return Status.OK_STATUS;
+            }
+        };
+        job.setSystem(true);
+        job.schedule();
+    }
+
+    private synchronized void loaded(Job finished, List<OSGiFramework> found) {
+        if (finished != job)
+            return;
+        job = null;
+        frameworks = found;
+
+        final Viewer v = viewer;
+        if (v != null) {
+            SWTConcurrencyUtil.execForControl(v.getControl(), true, new Runnable() {
+                public void run() {
+                    if (refresher != null)
+                        refresher.run();
+                    else
+                        v.refresh();
+                }
+            });
+        }
+    }
+
+    private void cancelJob() {
+        if (job != null) {
+            job.cancel();
+            job = null;
+        }
+    }
+
+    private static synchronized List<OSGiFramework> getCached(List<RepositoryPlugin> repositories) {
+        return repositories.equals(cachedRepositories) ? cachedFrameworks : null;
+    }
+
+    private static synchronized void putCached(List<RepositoryPlugin> repositories, List<OSGiFramework> frameworks) {
+        cachedRepositories = repositories;
+        cachedFrameworks = frameworks;
+    }
+
+    /**
+     * Returns the frameworks available in the repositories, or {@code null} if
+     * the search was cancelled.
+     */
+    static List<OSGiFramework> findFrameworks(List<RepositoryPlugin> repositories, IProgressMonitor monitor) {
         IConfigurationElement[] configElements = Platform.getExtensionRegistry().getConfigurationElementsFor(Plugin.PLUGIN_ID, "osgiFrameworks");
+        SubMonitor progress = SubMonitor.convert(monitor, configElements.length * repositories.size());
 
+        List<OSGiFramework> result = new ArrayList<OSGiFramework>();
         for (IConfigurationElement element : configElements) {
             String frameworkName = element.getAttribute("name");
             String bsn = element.getAttribute("bsn");
@@ -41,33 +139,33 @@ public class OSGiFrameworkContentProvider implements IStructuredContentProvider
                     iconUrl = contributorBundle.getEntry(iconPath);
             }
 
-            List<RepositoryPlugin> repositories = (workspace != null)
-                    ? workspace.getRepositories()
-                    : Collections.<RepositoryPlugin>emptyList();
             for (RepositoryPlugin repo : repositories) {
+                if (progress.isCanceled())
+                    return null;
                 try {
                     List<Version> versions = repo.versions(bsn);
                     if (versions != null) for (Version version : versions) {
-                        try {
-                            File framework = repo.get(bsn, version.toString(), Strategy.HIGHEST, null);
-                            if (framework != null)
-                                frameworks.add(new OSGiFramework(frameworkName, bsn, version, iconUrl));
-                        } catch (Exception e) {
-                            Plugin.logError(String.format("Error finding repository entry for OSGi framework %s, version %s.", bsn, version.toString()), e);
-                        }
+                        OSGiFramework framework = new OSGiFramework(frameworkName, bsn, version, iconUrl);
+                        if (!result.contains(framework))
+                            result.add(framework);
                     }
                 } catch (Exception e) {
                     Plugin.logError(String.format("Error searching repository for OSGi framework %s.", bsn), e);
                 }
+                progress.worked(1);
             }
         }
+        return result;
     }
 
-
-    public void dispose() {
+    public synchronized void dispose() {
+        cancelJob();
+        viewer = null;
     }
 
-    public Object[] getElements(Object inputElement) {
+    public synchronized Object[] getElements(Object inputElement) {
+        if (frameworks == null)
+            return new Object[] { LOADING };
         return frameworks.toArray();
     }
 
@@ -73,6 +73,18 @@ public class RunFrameworkPart extends SectionPart implements PropertyChangeListe
         frameworkViewer = new ComboViewer(cmbFramework);
         frameworkViewer.setUseHashlookup(true);
         frameworkViewer.setContentProvider(fwkContentProvider);
+        fwkContentProvider.setRefresher(new Runnable() {
+            public void run() {
+                // Replacing the combo items clears any text that is not one of them
+                lock.modifyOperation(new Runnable() {
+                    public void run() {
+                        frameworkViewer.refresh();
+                        if (selectedFramework != null)
+                            cmbFramework.setText(selectedFramework);
+                    }
+                });
+            }
+        });
         try {
             frameworkViewer.setInput(Central.getWorkspace());
         } catch (Exception e) {
@@ -112,8 +124,10 @@ public class RunFrameworkPart extends SectionPart implements PropertyChangeListe
             public void selectionChanged(SelectionChangedEvent event) {
                 lock.ifNotModifying(new Runnable() {
                     public void run() {
-                        markDirty();
                         Object element = ((IStructuredSelection) frameworkViewer.getSelection()).getFirstElement();
+                        if (element == OSGiFrameworkContentProvider.LOADING)
+                            return;
+                        markDirty();
                         if (element == null)
                             selectedFramework = null;
                         else
@@ -11,6 +11,7 @@
 package bndtools.internal.pkgselection;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -20,6 +21,7 @@ import java.util.Set;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.search.IJavaSearchConstants;
@@ -31,17 +33,34 @@ import org.eclipse.jdt.core.search.SearchRequestor;
 import org.eclipse.jface.operation.IRunnableContext;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 
+import bndtools.javamodel.JavaProjectIndex;
+
 public class JavaSearchScopePackageLister implements IPackageLister {
 	
 	private final IJavaSearchScope scope;
+	private final IJavaProject javaProject;
 	private final IRunnableContext runContext;
 
 	public JavaSearchScopePackageLister(IJavaSearchScope scope, IRunnableContext runContext) {
 		this.scope = scope;
+		this.javaProject = null;
+		this.runContext = runContext;
+	}
+
+	/**
+	 * Lists the packages visible to a Java project from its
+	 * {@link JavaProjectIndex} rather than with a search.
+	 */
+	public JavaSearchScopePackageLister(IJavaProject javaProject, IRunnableContext runContext) {
+		this.scope = null;
+		this.javaProject = javaProject;
 		this.runContext = runContext;
 	}
 
 	public String[] getPackages(boolean includeNonSource, IPackageFilter filter) throws PackageListException {
+		if (javaProject != null)
+			return getIndexedPackages(includeNonSource, filter);
+
 		final List<IJavaElement> packageList = new LinkedList<IJavaElement>();
 		final SearchRequestor requestor = new SearchRequestor() {
 			@Override
@@ -110,4 +129,24 @@ public class JavaSearchScopePackageLister implements IPackageLister {
 		return packageNames.toArray(new String[packageNames.size()]);
 	}
 
+	private String[] getIndexedPackages(boolean includeNonSource, IPackageFilter filter) throws PackageListException {
+		List<String> names;
+		try {
+			names = JavaProjectIndex.getBuiltIndex(javaProject, runContext).getPackageNames(includeNonSource);
+		} catch (JavaModelException e) {
+			throw new PackageListException(e);
+		} catch (InvocationTargetException e) {
+			throw new PackageListException(e.getCause());
+		} catch (InterruptedException e) {
+			throw new PackageListException("Operation interrupted");
+		}
+
+		List<String> result = new ArrayList<String>(names.size());
+		for (String name : names) {
+			if (filter == null || filter.select(name))
+				result.add(name);
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
 }
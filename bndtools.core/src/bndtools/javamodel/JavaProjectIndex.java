@@ -0,0 +1,380 @@
+package bndtools.javamodel;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.Flags;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.search.IJavaSearchConstants;
+import org.eclipse.jdt.core.search.IJavaSearchScope;
+import org.eclipse.jdt.core.search.SearchEngine;
+import org.eclipse.jdt.core.search.TypeNameRequestor;
+import org.eclipse.jface.operation.IRunnableContext;
+import org.eclipse.jface.operation.IRunnableWithProgress;
+
+/**
+ * In-memory index of the package and type names visible to a Java project,
+ * including its libraries and required projects. The index is filled once,
+ * normally by a background job scheduled by {@link JavaProjectIndexes}, and
+ * afterwards kept up to date from Java element deltas: changed packages and
+ * compilation units are only recorded and re-read at the next query. Queries
+ * never wait for the index to be filled; until it is, they find nothing.
+ */
+public class JavaProjectIndex {
+
+    public static class TypeEntry {
+        private final String packageName;
+        private final String typeName;
+        private final boolean isInterface;
+        private final String path;
+
+        TypeEntry(String packageName, String typeName, boolean isInterface, String path) {
+            this.packageName = packageName;
+            this.typeName = typeName;
+            this.isInterface = isInterface;
+            this.path = path;
+        }
+
+        public String getPackageName() {
+            return packageName;
+        }
+
+        public String getTypeName() {
+            return typeName;
+        }
+
+        public boolean isInterface() {
+            return isInterface;
+        }
+    }
+
+    private static class PackageEntry {
+        final IPackageFragment fragment;
+        final boolean hasSource;
+
+        PackageEntry(IPackageFragment fragment, boolean hasSource) {
+            this.fragment = fragment;
+            this.hasSource = hasSource;
+        }
+    }
+
+    /**
+     * The indexed names. A snapshot is filled by {@link #build} without
+     * holding the index lock and then published; afterwards it is only
+     * changed by {@link #update()} while holding the index lock.
+     */
+    private static class Snapshot {
+        final Set<IPackageFragmentRoot> roots = new HashSet<IPackageFragmentRoot>();
+        final SortedMap<String, PackageEntry> packages = new TreeMap<String, PackageEntry>();
+        /** Lower-cased simple type name to the types with that name. */
+        final SortedMap<String, List<TypeEntry>> types = new TreeMap<String, List<TypeEntry>>();
+        /** Source types by the path of their compilation unit. */
+        final Map<String, List<TypeEntry>> sourceTypes = new HashMap<String, List<TypeEntry>>();
+
+        void addPackage(IPackageFragment fragment) throws JavaModelException {
+            String name = fragment.getElementName();
+            boolean hasSource = fragment.getKind() == IPackageFragmentRoot.K_SOURCE && fragment.getCompilationUnits().length > 0;
+            PackageEntry existing = packages.get(name);
+            if (existing == null || (hasSource && !existing.hasSource))
+                packages.put(name, new PackageEntry(fragment, hasSource));
+        }
+
+        void addType(TypeEntry entry) {
+            String key = entry.typeName.toLowerCase();
+            List<TypeEntry> list = types.get(key);
+            if (list == null) {
+                list = new ArrayList<TypeEntry>(1);
+                types.put(key, list);
+            }
+            list.add(entry);
+
+            if (entry.path != null && entry.path.endsWith(".java")) {
+                List<TypeEntry> byPath = sourceTypes.get(entry.path);
+                if (byPath == null) {
+                    byPath = new LinkedList<TypeEntry>();
+                    sourceTypes.put(entry.path, byPath);
+                }
+                byPath.add(entry);
+            }
+        }
+
+        void removeTypes(String path) {
+            List<TypeEntry> removed = sourceTypes.remove(path);
+            if (removed == null)
+                return;
+            for (TypeEntry entry : removed) {
+                String key = entry.typeName.toLowerCase();
+                List<TypeEntry> list = types.get(key);
+                if (list != null) {
+                    list.remove(entry);
+                    if (list.isEmpty())
+                        types.remove(key);
+                }
+            }
+        }
+    }
+
+    private final IJavaProject project;
+
+    /** Serialises builds; never taken by queries. */
+    private final Object buildLock = new Object();
+
+    /** The published names, or null if the index has not been filled. */
+    private volatile Snapshot snapshot = null;
+    /** Incremented whenever the index is invalidated, to discard builds that were running at the time. Guarded by this. */
+    private int generation = 0;
+
+    /** Methods of the class hierarchy of a type, by fully qualified type name. Guarded by this. */
+    private final Map<String, IMethod[]> hierarchyMethods = new HashMap<String, IMethod[]>();
+
+    /** Changes not yet applied to the snapshot. Guarded by this. */
+    private final Set<String> dirtyPackages = new HashSet<String>();
+    private final Set<ICompilationUnit> dirtyUnits = new HashSet<ICompilationUnit>();
+
+    JavaProjectIndex(IJavaProject project) {
+        this.project = project;
+    }
+
+    public IJavaProject getJavaProject() {
+        return project;
+    }
+
+    public boolean isBuilt() {
+        return snapshot != null;
+    }
+
+    /**
+     * Fills the index if it has not been filled yet. The names are collected
+     * into a new snapshot, which is only published once complete, so queries
+     * are not blocked while the index is being filled.
+     */
+    public void build(IProgressMonitor monitor) throws JavaModelException {
+        synchronized (buildLock) {
+            if (snapshot != null)
+                return;
+            int startGeneration;
+            synchronized (this) {
+                startGeneration = generation;
+            }
+            SubMonitor progress = SubMonitor.convert(monitor, "Indexing Java names...", 2);
+
+            final Snapshot result = new Snapshot();
+            IPackageFragmentRoot[] allRoots = project.getAllPackageFragmentRoots();
+            SubMonitor rootProgress = progress.newChild(1).setWorkRemaining(allRoots.length);
+            for (IPackageFragmentRoot root : allRoots) {
+                if (rootProgress.isCanceled())
+                    throw new OperationCanceledException();
+                result.roots.add(root);
+                for (IJavaElement child : root.getChildren()) {
+                    if (child instanceof IPackageFragment)
+                        result.addPackage((IPackageFragment) child);
+                }
+                rootProgress.worked(1);
+            }
+
+            IJavaSearchScope scope = SearchEngine.createJavaSearchScope(new IJavaElement[] { project });
+            TypeNameRequestor requestor = new TypeNameRequestor() {
+                @Override
+                public void acceptType(int modifiers, char[] packageName, char[] simpleTypeName, char[][] enclosingTypeNames, String path) {
+                    result.addType(new TypeEntry(new String(packageName), new String(simpleTypeName), Flags.isInterface(modifiers), path));
+                }
+            };
+            new SearchEngine().searchAllTypeNames(null, 0, null, 0, IJavaSearchConstants.CLASS_AND_INTERFACE, scope, requestor, IJavaSearchConstants.WAIT_UNTIL_READY_TO_SEARCH, progress.newChild(1));
+
+            synchronized (this) {
+                // Changes recorded while building are applied again at the next query, which is harmless
+                if (generation == startGeneration)
+                    snapshot = result;
+            }
+        }
+    }
+
+    synchronized void invalidate() {
+        generation++;
+        snapshot = null;
+        hierarchyMethods.clear();
+        dirtyPackages.clear();
+        dirtyUnits.clear();
+    }
+
+    boolean containsRoot(IPackageFragmentRoot root) {
+        Snapshot current = snapshot;
+        return current != null && current.roots.contains(root);
+    }
+
+    synchronized void packageChanged(String packageName) {
+        dirtyPackages.add(packageName);
+        hierarchyMethods.clear();
+    }
+
+    synchronized void compilationUnitChanged(ICompilationUnit unit) {
+        dirtyUnits.add(unit);
+        hierarchyMethods.clear();
+    }
+
+    /**
+     * Applies the changes recorded since the last query, and returns the
+     * current snapshot or null if the index has not been filled. Must be
+     * called while holding the index lock.
+     */
+    private Snapshot update() throws JavaModelException {
+        Snapshot current = snapshot;
+        if (current == null)
+            return null;
+
+        for (ICompilationUnit unit : dirtyUnits) {
+            current.removeTypes(unit.getPath().toString());
+            if (unit.exists()) {
+                String pkg = unit.getParent().getElementName();
+                for (IType type : unit.getAllTypes()) {
+                    if (type.isClass() || type.isInterface())
+                        current.addType(new TypeEntry(pkg, type.getElementName(), type.isInterface(), unit.getPath().toString()));
+                }
+            }
+            dirtyPackages.add(unit.getParent().getElementName());
+        }
+        dirtyUnits.clear();
+
+        for (String name : dirtyPackages) {
+            current.packages.remove(name);
+            for (IPackageFragmentRoot root : current.roots) {
+                IPackageFragment fragment = root.getPackageFragment(name);
+                if (fragment.exists())
+                    current.addPackage(fragment);
+            }
+        }
+        dirtyPackages.clear();
+        return current;
+    }
+
+    /**
+     * Returns the non-default packages whose name contains the given string,
+     * ignoring case.
+     */
+    public synchronized List<IPackageFragment> findPackages(String substring) throws JavaModelException {
+        List<IPackageFragment> result = new LinkedList<IPackageFragment>();
+        Snapshot current = update();
+        if (current == null)
+            return result;
+        String lower = substring.toLowerCase();
+        for (Map.Entry<String, PackageEntry> entry : current.packages.entrySet()) {
+            String name = entry.getKey();
+            if (name.length() > 0 && name.toLowerCase().indexOf(lower) > -1)
+                result.add(entry.getValue().fragment);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the names of all non-default packages, optionally restricted to
+     * those containing compilation units.
+     */
+    public synchronized List<String> getPackageNames(boolean includeNonSource) throws JavaModelException {
+        Snapshot current = update();
+        if (current == null)
+            return new ArrayList<String>(0);
+        List<String> result = new ArrayList<String>(current.packages.size());
+        for (Map.Entry<String, PackageEntry> entry : current.packages.entrySet()) {
+            if (entry.getKey().length() > 0 && (includeNonSource || entry.getValue().hasSource))
+                result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the classes and interfaces whose simple name starts with the
+     * given prefix, ignoring case.
+     */
+    public synchronized List<TypeEntry> findTypes(String prefix) throws JavaModelException {
+        List<TypeEntry> result = new ArrayList<TypeEntry>();
+        Snapshot current = update();
+        if (current == null)
+            return result;
+        String lower = prefix.toLowerCase();
+        SortedMap<String, List<TypeEntry>> map = lower.length() == 0 ? current.types : current.types.subMap(lower, lower + Character.MAX_VALUE);
+        for (List<TypeEntry> list : map.values())
+            result.addAll(list);
+        return result;
+    }
+
+    /**
+     * Returns the methods declared by the specified type and its
+     * superclasses. The result is cached until a Java element in the project
+     * changes.
+     */
+    public IMethod[] getHierarchyMethods(String typeName, IProgressMonitor monitor) throws JavaModelException {
+        synchronized (this) {
+            IMethod[] methods = hierarchyMethods.get(typeName);
+            if (methods != null)
+                return methods;
+        }
+
+        SubMonitor progress = SubMonitor.convert(monitor, 10);
+        IType targetType = project.findType(typeName, progress.newChild(1));
+        if (targetType == null)
+            return new IMethod[0];
+
+        ITypeHierarchy hierarchy = targetType.newSupertypeHierarchy(progress.newChild(5));
+        IType[] classes = hierarchy.getAllClasses();
+        progress.setWorkRemaining(classes.length);
+        List<IMethod> result = new ArrayList<IMethod>();
+        for (IType clazz : classes) {
+            Collections.addAll(result, clazz.getMethods());
+            progress.worked(1);
+        }
+        IMethod[] methods = result.toArray(new IMethod[result.size()]);
+
+        synchronized (this) {
+            hierarchyMethods.put(typeName, methods);
+        }
+        return methods;
+    }
+
+    /**
+     * Returns the index for the project, filling it first if necessary. If it
+     * has to be filled, this is done in the given runnable context where
+     * available, so that the UI remains responsive.
+     */
+    public static JavaProjectIndex getBuiltIndex(IJavaProject project, IRunnableContext runContext) throws InvocationTargetException, InterruptedException {
+        final JavaProjectIndex index = JavaProjectIndexes.getIndex(project);
+        if (index.isBuilt())
+            return index;
+
+        IRunnableWithProgress runnable = new IRunnableWithProgress() {
+            public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+                try {
+                    index.build(monitor);
+                } catch (JavaModelException e) {
+                    throw new InvocationTargetException(e);
+                } catch (OperationCanceledException e) {
+                    throw new InterruptedException();
+                }
+            }
+        };
+        if (runContext != null)
+            runContext.run(true, true, runnable);
+        else
+            runnable.run(null);
+        return index;
+    }
+}
@@ -0,0 +1,207 @@
+package bndtools.javamodel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import bndtools.Plugin;
+
+/**
+ * Holds the {@link JavaProjectIndex} of each Java project that has been
+ * queried, and keeps them up to date from Java element deltas. A changed
+ * classpath discards the whole index of a project and of the projects that
+ * require it; other changes are passed on to the indexes as dirty packages and
+ * compilation units.
+ */
+public class JavaProjectIndexes implements IElementChangedListener {
+
+    private static final int CLASSPATH_FLAGS = IJavaElementDelta.F_CLASSPATH_CHANGED | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED | IJavaElementDelta.F_CLOSED | IJavaElementDelta.F_OPENED;
+    private static final int ROOT_FLAGS = IJavaElementDelta.F_ADDED_TO_CLASSPATH | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH | IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED;
+    private static final int UNIT_FLAGS = IJavaElementDelta.F_CONTENT | IJavaElementDelta.F_PRIMARY_RESOURCE;
+
+    private static JavaProjectIndexes instance = null;
+
+    private final Map<IJavaProject, JavaProjectIndex> indexes = new HashMap<IJavaProject, JavaProjectIndex>();
+
+    public static synchronized void start() {
+        if (instance == null) {
+            instance = new JavaProjectIndexes();
+            JavaCore.addElementChangedListener(instance, ElementChangedEvent.POST_CHANGE);
+        }
+    }
+
+    public static synchronized void stop() {
+        if (instance != null) {
+            JavaCore.removeElementChangedListener(instance);
+            instance = null;
+        }
+    }
+
+    private static synchronized JavaProjectIndexes getInstance() {
+        if (instance == null)
+            throw new IllegalStateException("Java project indexes are not available: bundle has been stopped.");
+        return instance;
+    }
+
+    /**
+     * Returns the index for the project, scheduling a background job to fill
+     * it if it has not been filled yet.
+     */
+    public static JavaProjectIndex getIndex(IJavaProject project) {
+        JavaProjectIndex index;
+        JavaProjectIndexes indexes = getInstance();
+        synchronized (indexes) {
+            index = indexes.indexes.get(project);
+            if (index == null) {
+                index = new JavaProjectIndex(project);
+                indexes.indexes.put(project, index);
+            }
+        }
+        if (!index.isBuilt())
+            scheduleBuild(index);
+        return index;
+    }
+
+    private static void scheduleBuild(final JavaProjectIndex index) {
+        Job job = new Job("Indexing Java names of " + index.getJavaProject().getElementName()) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    index.build(monitor);
+                    return Status.OK_STATUS;
+                } catch (OperationCanceledException e) {
+                    return Status.CANCEL_STATUS;
+                } catch (JavaModelException e) {
+                    return new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, "Error indexing Java names.", e);
+                }
+            }
+        };
+        job.setSystem(true);
+        job.setPriority(Job.DECORATE);
+        job.schedule();
+    }
+
+    private synchronized List<JavaProjectIndex> getIndexes() {
+        return new ArrayList<JavaProjectIndex>(indexes.values());
+    }
+
+    public void elementChanged(ElementChangedEvent event) {
+        List<JavaProjectIndex> current = getIndexes();
+        if (!current.isEmpty())
+            processDelta(event.getDelta(), current);
+    }
+
+    private void processDelta(IJavaElementDelta delta, List<JavaProjectIndex> current) {
+        IJavaElement element = delta.getElement();
+        int kind = delta.getKind();
+        int flags = delta.getFlags();
+
+        switch (element.getElementType()) {
+        case IJavaElement.JAVA_PROJECT:
+            if (kind == IJavaElementDelta.REMOVED) {
+                synchronized (this) {
+                    indexes.remove(element);
+                }
+            }
+            if (kind != IJavaElementDelta.CHANGED || (flags & CLASSPATH_FLAGS) != 0) {
+                invalidateProject((IJavaProject) element, current);
+                return;
+            }
+            break;
+        case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+            if (kind != IJavaElementDelta.CHANGED || (flags & ROOT_FLAGS) != 0) {
+                IPackageFragmentRoot root = (IPackageFragmentRoot) element;
+                for (JavaProjectIndex index : current) {
+                    if (index.containsRoot(root) || root.getJavaProject().equals(index.getJavaProject()))
+                        index.invalidate();
+                }
+                return;
+            }
+            break;
+        case IJavaElement.PACKAGE_FRAGMENT:
+            if (kind != IJavaElementDelta.CHANGED) {
+                IPackageFragmentRoot root = (IPackageFragmentRoot) element.getParent();
+                for (JavaProjectIndex index : current) {
+                    if (index.containsRoot(root))
+                        index.packageChanged(element.getElementName());
+                }
+            }
+            break;
+        case IJavaElement.COMPILATION_UNIT:
+            if (kind != IJavaElementDelta.CHANGED || (flags & UNIT_FLAGS) != 0) {
+                ICompilationUnit unit = (ICompilationUnit) element;
+                IPackageFragmentRoot root = (IPackageFragmentRoot) unit.getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+                for (JavaProjectIndex index : current) {
+                    if (index.containsRoot(root))
+                        index.compilationUnitChanged(unit.getPrimary());
+                }
+            }
+            return;
+        default:
+            break;
+        }
+
+        for (IJavaElementDelta child : delta.getAffectedChildren())
+            processDelta(child, current);
+    }
+
+    /**
+     * Discards the index of the project and of the projects that see its
+     * packages, i.e. that require it directly or through other required
+     * projects.
+     */
+    private static void invalidateProject(IJavaProject project, List<JavaProjectIndex> current) {
+        Set<String> affected = new HashSet<String>();
+        affected.add(project.getElementName());
+
+        List<JavaProjectIndex> remaining = new LinkedList<JavaProjectIndex>(current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Iterator<JavaProjectIndex> iter = remaining.iterator(); iter.hasNext();) {
+                JavaProjectIndex index = iter.next();
+                if (isAffected(index.getJavaProject(), affected)) {
+                    index.invalidate();
+                    affected.add(index.getJavaProject().getElementName());
+                    iter.remove();
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private static boolean isAffected(IJavaProject project, Set<String> affected) {
+        if (affected.contains(project.getElementName()))
+            return true;
+        try {
+            for (String required : project.getRequiredProjectNames()) {
+                if (affected.contains(required))
+                    return true;
+            }
+            return false;
+        } catch (JavaModelException e) {
+            // Can't tell, so assume the worst
+            return true;
+        }
+    }
+}
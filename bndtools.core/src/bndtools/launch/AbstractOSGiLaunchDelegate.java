@@ -13,6 +13,7 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.ILaunch;
 import org.eclipse.debug.core.ILaunchConfiguration;
 import org.eclipse.debug.core.IStatusHandler;
 import org.eclipse.jdt.launching.JavaLaunchDelegate;
@@ -39,6 +40,7 @@ public abstract class AbstractOSGiLaunchDelegate extends JavaLaunchDelegate {
         try {
             initialiseBndLauncher(configuration, model);
         } catch (Exception e) {
+            LaunchUtils.releaseBndProject(model);
             throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error initialising bnd launcher", e));
         }
 
@@ -52,9 +54,30 @@ public abstract class AbstractOSGiLaunchDelegate extends JavaLaunchDelegate {
         IStatusHandler prompter = DebugPlugin.getDefault().getStatusHandler(launchStatus);
 
         boolean continueLaunch = (Boolean) prompter.handleStatus(launchStatus, model);
+        if (!continueLaunch)
+            LaunchUtils.releaseBndProject(model);
         return continueLaunch;
     }
 
+    @Override
+    public void launch(ILaunchConfiguration configuration, String mode, ILaunch launch, IProgressMonitor monitor) throws CoreException {
+        final Project project = model;
+        try {
+            super.launch(configuration, mode, launch, monitor);
+        } catch (CoreException e) {
+            LaunchUtils.releaseBndProject(project);
+            throw e;
+        }
+
+        // Hand the project back once all the launched processes have terminated
+        Runnable onTerminate = new Runnable() {
+            public void run() {
+                LaunchUtils.releaseBndProject(project);
+            }
+        };
+        DebugPlugin.getDefault().addDebugEventListener(new TerminationListener(launch, onTerminate));
+    }
+
     @Override
     public String[] getClasspath(ILaunchConfiguration configuration) throws CoreException {
         Collection<String> paths = getProjectLauncher().getClasspath();
@@ -73,6 +73,8 @@ public class BndDependencySourceContainer extends CompositeSourceContainer {
                 }
             } catch (Exception e) {
                 Plugin.logError("Error querying Bnd Dependency source containers.", e);
+            } finally {
+                LaunchUtils.releaseBndProject(project);
             }
         }
 
@@ -3,11 +3,13 @@ package bndtools.launch;
 import java.io.File;
 import java.text.MessageFormat;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.debug.core.ILaunchConfiguration;
 
@@ -46,16 +48,9 @@ final class LaunchUtils {
                 throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Bnd launch target file \"{0}\" is not a .bndrun file.", targetResource.getFullPath().toString()), null));
 
             // Get the synthetic "run" project (based on a .bndrun file)
-            File runFile = targetResource.getLocation().toFile();
-            File bndbnd = new File(runFile.getParentFile(), Project.BNDFILE);
+            IFile bndbnd = targetResource.getParent().getFile(new Path(Project.BNDFILE));
             try {
-                if (bndbnd.isFile()) {
-                    Project parent = new Project(Central.getWorkspace(), projectDir, bndbnd);
-                    result = new Project(Central.getWorkspace(), projectDir, runFile);
-                    result.setParent(parent);
-                } else {
-                    result = new Project(Central.getWorkspace(), projectDir, runFile);
-                }
+                result = RunProjectCache.getRunProject(Central.getWorkspace(), projectDir, targetResource, bndbnd.getLocation().toFile().isFile() ? bndbnd : null);
             } catch (Exception e) {
                 throw new CoreException(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to create synthetic project for run file {0} in project {1}.", targetResource.getProjectRelativePath().toString(), project.getName()), e));
             }
@@ -74,4 +69,13 @@ final class LaunchUtils {
 
         return result;
     }
+
+    /**
+     * Hands back a project obtained from
+     * {@link #getBndProject(ILaunchConfiguration)} once the caller has finished
+     * with it.
+     */
+    static void releaseBndProject(Project project) {
+        RunProjectCache.release(project);
+    }
 }
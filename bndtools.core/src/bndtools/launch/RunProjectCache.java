@@ -0,0 +1,207 @@
+package bndtools.launch;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
+import bndtools.Plugin;
+
+/**
+ * Cache of the synthetic run projects created for {@code .bndrun} files, so
+ * that relaunching the same run descriptor reuses the run path and run bundles
+ * already resolved by the project. Entries are keyed by the workspace path of
+ * the {@code .bndrun} file and the parent {@code bnd.bnd} file, and discarded
+ * when either file or anything in the {@code cnf} project changes.
+ * <p>
+ * A cached project is leased to one launch at a time: a launch that finds the
+ * project already leased gets its own, uncached instance. The lease is given
+ * back with {@link #release(Project)}, which drops the project from the cache
+ * if the launch left errors on it.
+ */
+public class RunProjectCache implements IResourceChangeListener {
+
+    private static final String CNF_PROJECT = "cnf";
+
+    private static class Key {
+        final IPath runFile;
+        final IPath parentFile;
+
+        Key(IPath runFile, IPath parentFile) {
+            this.runFile = runFile;
+            this.parentFile = parentFile;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * runFile.hashCode() + (parentFile == null ? 0 : parentFile.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return runFile.equals(other.runFile) && (parentFile == null ? other.parentFile == null : parentFile.equals(other.parentFile));
+        }
+    }
+
+    private static class Entry {
+        final Workspace workspace;
+        final Project project;
+        boolean leased = true;
+
+        Entry(Workspace workspace, Project project) {
+            this.workspace = workspace;
+            this.project = project;
+        }
+    }
+
+    private static RunProjectCache instance = null;
+
+    private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+
+    public static synchronized void start() {
+        if (instance == null) {
+            instance = new RunProjectCache();
+            ResourcesPlugin.getWorkspace().addResourceChangeListener(instance, IResourceChangeEvent.POST_CHANGE);
+        }
+    }
+
+    public static synchronized void stop() {
+        if (instance != null) {
+            ResourcesPlugin.getWorkspace().removeResourceChangeListener(instance);
+            instance = null;
+        }
+    }
+
+    private static synchronized RunProjectCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the run project for the {@code .bndrun} file, creating it if
+     * there is no valid cached project that is free to lease. The parent
+     * {@code bnd.bnd} file may be {@code null}. The caller must hand the project
+     * back with {@link #release(Project)} once the launch is finished with it.
+     */
+    static Project getRunProject(Workspace workspace, File projectDir, IResource runResource, IResource parentResource) throws Exception {
+        RunProjectCache cache = getInstance();
+        if (cache == null)
+            return createRunProject(workspace, projectDir, runResource, parentResource);
+
+        Key key = new Key(runResource.getFullPath(), parentResource != null ? parentResource.getFullPath() : null);
+        Project reused = null;
+        synchronized (cache) {
+            Entry entry = cache.entries.get(key);
+            if (entry != null && entry.workspace == workspace) {
+                // Another launch still holds the cached project
+                if (entry.leased)
+                    return createRunProject(workspace, projectDir, runResource, parentResource);
+                entry.leased = true;
+                reused = entry.project;
+            }
+        }
+        if (reused != null) {
+            // Drop the errors and warnings of the previous launch, and catch
+            // changes to files included from outside the workspace
+            reused.clear();
+            reused.refresh();
+            return reused;
+        }
+
+        Project project = createRunProject(workspace, projectDir, runResource, parentResource);
+        synchronized (cache) {
+            if (!cache.entries.containsKey(key))
+                cache.entries.put(key, new Entry(workspace, project));
+        }
+        return project;
+    }
+
+    /**
+     * Gives back a project obtained from
+     * {@link #getRunProject(Workspace, File, IResource, IResource)}. A cached
+     * project that has errors is removed from the cache rather than reused.
+     */
+    static void release(Project project) {
+        RunProjectCache cache = getInstance();
+        if (cache == null || project == null)
+            return;
+
+        synchronized (cache) {
+            for (Iterator<Entry> iter = cache.entries.values().iterator(); iter.hasNext();) {
+                Entry entry = iter.next();
+                if (entry.project == project) {
+                    if (project.isOk())
+                        entry.leased = false;
+                    else
+                        iter.remove();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static Project createRunProject(Workspace workspace, File projectDir, IResource runResource, IResource parentResource) throws Exception {
+        Project result = new Project(workspace, projectDir, runResource.getLocation().toFile());
+        if (parentResource != null) {
+            Project parent = new Project(workspace, projectDir, parentResource.getLocation().toFile());
+            result.setParent(parent);
+        }
+        return result;
+    }
+
+    public void resourceChanged(IResourceChangeEvent event) {
+        IResourceDelta delta = event.getDelta();
+        if (delta == null)
+            return;
+
+        synchronized (this) {
+            if (entries.isEmpty())
+                return;
+            try {
+                delta.accept(new IResourceDeltaVisitor() {
+                    public boolean visit(IResourceDelta delta) throws CoreException {
+                        if (delta.getFlags() == IResourceDelta.MARKERS)
+                            return false;
+
+                        IResource resource = delta.getResource();
+                        if (resource.getType() == IResource.PROJECT && CNF_PROJECT.equals(resource.getName())) {
+                            entries.clear();
+                            return false;
+                        }
+                        if (resource.getType() == IResource.FILE) {
+                            invalidate(resource.getFullPath());
+                            return false;
+                        }
+                        return true;
+                    }
+                });
+            } catch (CoreException e) {
+                Plugin.logError("Error processing resource changes for cached run projects.", e);
+                entries.clear();
+            }
+        }
+    }
+
+    private void invalidate(IPath path) {
+        for (Iterator<Key> iter = entries.keySet().iterator(); iter.hasNext();) {
+            Key key = iter.next();
+            if (path.equals(key.runFile) || path.equals(key.parentFile))
+                iter.remove();
+        }
+    }
+}
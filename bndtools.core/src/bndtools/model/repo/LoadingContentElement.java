@@ -0,0 +1,23 @@
+package bndtools.model.repo;
+
+/**
+ * Placeholder shown under a tree node while its children are being loaded in
+ * the background.
+ */
+public class LoadingContentElement {
+
+    private final Object parent;
+
+    LoadingContentElement(Object parent) {
+        this.parent = parent;
+    }
+
+    public Object getParent() {
+        return parent;
+    }
+
+    @Override
+    public String toString() {
+        return "Loading...";
+    }
+}
@@ -6,11 +6,20 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.AbstractTreeViewer;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.Viewer;
 
@@ -22,6 +31,7 @@ import aQute.bnd.service.RepositoryPlugin;
 import aQute.lib.osgi.Builder;
 import aQute.libg.version.Version;
 import bndtools.Plugin;
+import bndtools.utils.SWTConcurrencyUtil;
 
 public class RepositoryTreeContentProvider implements ITreeContentProvider {
 
@@ -29,6 +39,23 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
 
     private final EnumSet<OBRResolutionMode> modes;
 
+    private final Map<RepositoryPlugin, RepositoryBundle[]> bundleCache = new ConcurrentHashMap<RepositoryPlugin, RepositoryBundle[]>();
+    private final ConcurrentMap<RepositoryPlugin, Map<String, RepositoryBundleVersion[]>> versionCache = new ConcurrentHashMap<RepositoryPlugin, Map<String, RepositoryBundleVersion[]>>();
+    private final Set<Object> loading = new HashSet<Object>();
+    // Bumped on invalidation so that loads already running discard their results; guarded by loading
+    private final Map<RepositoryPlugin, Integer> generations = new HashMap<RepositoryPlugin, Integer>();
+
+    private boolean deferred = false;
+    private Viewer viewer;
+
+    /**
+     * Loads the children of a repository or bundle and caches them, unless the
+     * repository was invalidated since the specified generation.
+     */
+    private interface Loader {
+        void load(int generation);
+    }
+
     public RepositoryTreeContentProvider() {
         this.modes = EnumSet.allOf(OBRResolutionMode.class);
     }
@@ -60,21 +87,94 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
         return result.toArray(new Object[result.size()]);
     }
 
+    /**
+     * In deferred mode, repository listings that have not been loaded yet are
+     * fetched in a background job. A {@link LoadingContentElement} is shown in
+     * the meantime and the parent is refreshed once the listing is available.
+     */
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    /**
+     * Discards the cached listings of the specified repository, e.g. when it
+     * signals that its contents have changed.
+     */
+    public void invalidate(RepositoryPlugin repo) {
+        synchronized (loading) {
+            Integer generation = generations.get(repo);
+            if (generation != null)
+                generations.put(repo, generation + 1);
+            bundleCache.remove(repo);
+            versionCache.remove(repo);
+            for (Iterator<Object> iter = loading.iterator(); iter.hasNext();) {
+                Object parent = iter.next();
+                if (parent == repo || (parent instanceof RepositoryBundle && ((RepositoryBundle) parent).getRepo() == repo))
+                    iter.remove();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (loading) {
+            for (Map.Entry<RepositoryPlugin, Integer> entry : generations.entrySet()) {
+                entry.setValue(entry.getValue() + 1);
+            }
+            bundleCache.clear();
+            versionCache.clear();
+            loading.clear();
+        }
+    }
+
+    /**
+     * Returns the bundles of the specified repository if they have already
+     * been loaded, otherwise {@code null}. Never queries the repository.
+     */
+    public RepositoryBundle[] getCachedBundles(RepositoryPlugin repo) {
+        return bundleCache.get(repo);
+    }
+
     public void dispose() {
+        invalidateAll();
     }
 
     public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+        this.viewer = viewer;
+        invalidateAll();
     }
 
     public Object[] getChildren(Object parentElement) {
         Object[] result = null;
 
         if (parentElement instanceof RepositoryPlugin) {
-            RepositoryPlugin repo = (RepositoryPlugin) parentElement;
-            result = getRepositoryBundles(repo);
+            final RepositoryPlugin repo = (RepositoryPlugin) parentElement;
+            result = bundleCache.get(repo);
+            if (result == null) {
+                if (deferred) {
+                    result = loadDeferred(repo, repo, "Loading repository " + repo.getName(), new Loader() {
+                        public void load(int generation) {
+                            getRepositoryBundles(repo, generation);
+                        }
+                    });
+                } else {
+                    result = getRepositoryBundles(repo, currentGeneration(repo));
+                }
+            }
         } else if (parentElement instanceof RepositoryBundle) {
-            RepositoryBundle bundle = (RepositoryBundle) parentElement;
-            result = getRepositoryBundleVersions(bundle);
+            final RepositoryBundle bundle = (RepositoryBundle) parentElement;
+            Map<String, RepositoryBundleVersion[]> repoVersions = versionCache.get(bundle.getRepo());
+            result = repoVersions != null ? repoVersions.get(bundle.getBsn()) : null;
+            if (result == null) {
+                if (deferred) {
+                    result = loadDeferred(bundle, bundle.getRepo(), "Loading versions of " + bundle.getBsn(), new Loader() {
+                        public void load(int generation) {
+                            getRepositoryBundleVersions(bundle, generation);
+                        }
+                    });
+                } else {
+                    result = getRepositoryBundleVersions(bundle, currentGeneration(bundle.getRepo()));
+                }
+            }
         } else if (parentElement instanceof Project) {
             Project project = (Project) parentElement;
             result = getProjectBundles(project);
@@ -83,7 +183,68 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
         return result;
     }
 
+    Object[] loadDeferred(final Object parent, final RepositoryPlugin repo, String jobName, final Loader loader) {
+        final int generation;
+        synchronized (loading) {
+            if (!loading.add(parent))
+                return new Object[] { new LoadingContentElement(parent) };
+            generation = getGeneration(repo);
+        }
+
+        Job job = new Job(jobName) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    loader.load(generation);
+                } finally {
+                    synchronized (loading) {
+                        // After an invalidation the entry may belong to a newer load
+                        if (generation == getGeneration(repo))
+                            loading.remove(parent);
+                    }
+                }
+                if (generation != currentGeneration(repo))
+                    return Status.OK_STATUS;
+
+                final Viewer v = viewer;
+                if (v != null) {
+                    SWTConcurrencyUtil.execForControl(v.getControl(), true, new Runnable() {
+                        public void run() {
+                            if (v instanceof AbstractTreeViewer)
+                                ((AbstractTreeViewer) v).refresh(parent);
+                            else
+                                v.refresh();
+                        }
+                    });
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        job.schedule();
+
+        return new Object[] { new LoadingContentElement(parent) };
+    }
+
+    private int currentGeneration(RepositoryPlugin repo) {
+        synchronized (loading) {
+            return getGeneration(repo);
+        }
+    }
+
+    // Must hold the lock on loading
+    private int getGeneration(RepositoryPlugin repo) {
+        Integer generation = generations.get(repo);
+        if (generation == null) {
+            generation = 0;
+            generations.put(repo, generation);
+        }
+        return generation;
+    }
+
     public Object getParent(Object element) {
+        if (element instanceof LoadingContentElement) {
+            return ((LoadingContentElement) element).getParent();
+        }
         if (element instanceof RepositoryBundle) {
             return ((RepositoryBundle) element).getRepo();
         }
@@ -148,8 +309,14 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
         return result;
     }
 
-    RepositoryBundleVersion[] getRepositoryBundleVersions(RepositoryBundle bundle) {
-        RepositoryBundleVersion[] result = null;
+    /**
+     * Lists the versions of a bundle and caches them, unless the repository
+     * was invalidated since the specified generation. A failed listing is
+     * cached as empty, so that a broken or offline repository is not queried
+     * again until the cache is invalidated.
+     */
+    RepositoryBundleVersion[] getRepositoryBundleVersions(RepositoryBundle bundle, int generation) {
+        RepositoryBundleVersion[] result = new RepositoryBundleVersion[0];
 
         List<Version> versions = null;
         try {
@@ -164,11 +331,29 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
                 result[i++] = new RepositoryBundleVersion(bundle, version);
             }
         }
+
+        synchronized (loading) {
+            if (generation == getGeneration(bundle.getRepo())) {
+                Map<String, RepositoryBundleVersion[]> repoVersions = versionCache.get(bundle.getRepo());
+                if (repoVersions == null) {
+                    Map<String, RepositoryBundleVersion[]> newVersions = new ConcurrentHashMap<String, RepositoryBundleVersion[]>();
+                    repoVersions = versionCache.putIfAbsent(bundle.getRepo(), newVersions);
+                    if (repoVersions == null)
+                        repoVersions = newVersions;
+                }
+                repoVersions.put(bundle.getBsn(), result);
+            }
+        }
         return result;
     }
 
-    RepositoryBundle[] getRepositoryBundles(RepositoryPlugin repo) {
-        RepositoryBundle[] result = null;
+    /**
+     * Lists the bundles of a repository and caches them, unless the repository
+     * was invalidated since the specified generation. As for versions, a
+     * failed listing is cached as empty.
+     */
+    RepositoryBundle[] getRepositoryBundles(RepositoryPlugin repo, int generation) {
+        RepositoryBundle[] result = new RepositoryBundle[0];
 
         List<String> bsns = null;
         try {
@@ -184,6 +369,10 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
                 result[i++] = new RepositoryBundle(repo, bsn);
             }
         }
+        synchronized (loading) {
+            if (generation == getGeneration(repo))
+                bundleCache.put(repo, result);
+        }
         return result;
     }
 }
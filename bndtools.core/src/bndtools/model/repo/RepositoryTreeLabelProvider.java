@@ -70,6 +70,12 @@ public class RepositoryTreeLabelProvider extends StyledCellLabelProvider impleme
                 cell.setText(styledString.getString());
                 cell.setStyleRanges(styledString.getStyleRanges());
             }
+        } else if (element instanceof LoadingContentElement) {
+            if (index == 0) {
+                StyledString styledString = new StyledString(element.toString(), StyledString.QUALIFIER_STYLER);
+                cell.setText(styledString.getString());
+                cell.setStyleRanges(styledString.getStyleRanges());
+            }
         }
     }
 
@@ -116,6 +122,8 @@ public class RepositoryTreeLabelProvider extends StyledCellLabelProvider impleme
         } else if (element instanceof RepositoryBundleVersion) {
             RepositoryBundleVersion bundleVersion = (RepositoryBundleVersion) element;
             return bundleVersion.getVersion().toString();
+        } else if (element instanceof LoadingContentElement) {
+            return element.toString();
         }
         return null;
     }
@@ -0,0 +1,166 @@
+package bndtools.quickfix;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.rewrite.ImportRewrite;
+import org.eclipse.jdt.ui.text.java.IJavaCompletionProposal;
+import org.eclipse.jface.resource.ImageRegistry;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.contentassist.IContextInformation;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.ui.part.FileEditorInput;
+import org.eclipse.ui.plugin.AbstractUIPlugin;
+import org.eclipse.ui.texteditor.DocumentProviderRegistry;
+import org.eclipse.ui.texteditor.IDocumentProvider;
+
+import aQute.bnd.build.Project;
+import aQute.lib.osgi.Constants;
+import bndtools.BundleInfo;
+import bndtools.Plugin;
+import bndtools.editor.model.BndEditModel;
+import bndtools.model.clauses.VersionedClause;
+
+/**
+ * Adds a repository bundle providing a missing class to the project's
+ * {@code -buildpath} and, if an AST is available, imports the class.
+ */
+public class AddBuildPathProposal implements IJavaCompletionProposal {
+
+    private static final String IMG_BRICK_ADD = "/icons/brick_add.png";
+
+    private final Project project;
+    private final String className;
+    private final BundleInfo bundle;
+    private final CompilationUnit astRoot;
+    private final int relevance;
+
+    public AddBuildPathProposal(Project project, String className, BundleInfo bundle, CompilationUnit astRoot, int relevance) {
+        this.project = project;
+        this.className = className;
+        this.bundle = bundle;
+        this.astRoot = astRoot;
+        this.relevance = relevance;
+    }
+
+    public int getRelevance() {
+        return relevance;
+    }
+
+    public void apply(IDocument document) {
+        addToBuildPath(project, bundle);
+        if (astRoot != null)
+            addImport(astRoot, document, className);
+    }
+
+    /**
+     * Adds a clause for the specified bundle to the {@code -buildpath} of the
+     * project's bnd file, unless the bundle is already listed.
+     */
+    public static void addToBuildPath(Project project, BundleInfo bundle) {
+        IJavaProject javaProject = Plugin.getDefault().getCentral().getJavaProject(project);
+        if (javaProject == null) {
+            Plugin.logError(MessageFormat.format("Cannot add bundle {0} to the build path: no Java project for {1}.", bundle.getBsn(), project.getName()), null);
+            return;
+        }
+        IFile buildFile = javaProject.getProject().getFile(Project.BNDFILE);
+
+        FileEditorInput input = new FileEditorInput(buildFile);
+        IDocumentProvider docProvider = DocumentProviderRegistry.getDefault().getDocumentProvider(input);
+        try {
+            docProvider.connect(input);
+            IDocument document = docProvider.getDocument(input);
+            BndEditModel model = new BndEditModel();
+            model.loadFrom(document);
+
+            List<VersionedClause> buildPath = model.getBuildPath();
+            if (buildPath == null) {
+                buildPath = new ArrayList<VersionedClause>(1);
+            }
+            for (VersionedClause clause : buildPath) {
+                if (clause.getName().equals(bundle.getBsn()))
+                    return;
+            }
+
+            Map<String, String> attribs = new HashMap<String, String>();
+            if (bundle.getVersion() != null)
+                attribs.put(Constants.VERSION_ATTRIBUTE, bundle.getVersion());
+            buildPath.add(new VersionedClause(bundle.getBsn(), attribs));
+            model.setBuildPath(buildPath);
+
+            model.saveChangesTo(document);
+            docProvider.saveDocument(null, input, document, true);
+        } catch (IOException e) {
+            Plugin.logError("Error adding bundle to build path.", e);
+        } catch (CoreException e) {
+            Plugin.logError("Error adding bundle to build path.", e);
+        } finally {
+            docProvider.disconnect(input);
+        }
+    }
+
+    /**
+     * Adds an import for the specified class to the compilation unit shown in
+     * the given document.
+     */
+    public static void addImport(CompilationUnit astRoot, IDocument document, String className) {
+        try {
+            ImportRewrite rewrite = ImportRewrite.create(astRoot, true);
+            rewrite.addImport(className);
+            if (rewrite.hasRecordedChanges())
+                rewrite.rewriteImports(null).apply(document);
+        } catch (CoreException e) {
+            Plugin.logError("Error adding import for " + className, e);
+        } catch (MalformedTreeException e) {
+            Plugin.logError("Error adding import for " + className, e);
+        } catch (BadLocationException e) {
+            Plugin.logError("Error adding import for " + className, e);
+        }
+    }
+
+    public String getAdditionalProposalInfo() {
+        return MessageFormat.format("Bundle <b>{0}</b> version {1} from repository {2} provides class <b>{3}</b>.",
+                bundle.getBsn(), bundle.getVersion(), bundle.getRepository(), className);
+    }
+
+    public IContextInformation getContextInformation() {
+        return null;
+    }
+
+    public String getDisplayString() {
+        return MessageFormat.format("Add bundle {0} {1} to -buildpath (import {2})", bundle.getBsn(), bundle.getVersion(), className);
+    }
+
+    public Image getImage() {
+        return getBundleImage();
+    }
+
+    /**
+     * Returns the shared image for bundle proposals, which is disposed with
+     * the plugin's image registry.
+     */
+    public static Image getBundleImage() {
+        ImageRegistry registry = Plugin.getDefault().getImageRegistry();
+        Image image = registry.get(IMG_BRICK_ADD);
+        if (image == null) {
+            registry.put(IMG_BRICK_ADD, AbstractUIPlugin.imageDescriptorFromPlugin(Plugin.PLUGIN_ID, IMG_BRICK_ADD));
+            image = registry.get(IMG_BRICK_ADD);
+        }
+        return image;
+    }
+
+    public Point getSelection(IDocument document) {
+        return null;
+    }
+}
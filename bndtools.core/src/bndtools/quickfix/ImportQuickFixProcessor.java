@@ -2,15 +2,24 @@ package bndtools.quickfix;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.compiler.IProblem;
 import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ArrayType;
 import org.eclipse.jdt.core.dom.ClassInstanceCreation;
 import org.eclipse.jdt.core.dom.ImportDeclaration;
 import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.QualifiedType;
+import org.eclipse.jdt.core.dom.SimpleType;
+import org.eclipse.jdt.core.dom.Type;
 import org.eclipse.jdt.ui.text.java.IInvocationContext;
 import org.eclipse.jdt.ui.text.java.IJavaCompletionProposal;
 import org.eclipse.jdt.ui.text.java.IProblemLocation;
@@ -19,18 +28,23 @@ import org.eclipse.jdt.ui.text.java.IQuickFixProcessor;
 import aQute.bnd.build.Project;
 import aQute.lib.osgi.Constants;
 import aQute.libg.header.OSGiHeader;
+import bndtools.BundleInfo;
 import bndtools.Plugin;
+import bndtools.RepositoryModel;
+import bndtools.types.Pair;
 
 public class ImportQuickFixProcessor implements IQuickFixProcessor {
 
+    private static final int MAX_SEARCH_RELEVANCE = 90;
+    private static final int MAX_SEARCH_RESULTS = 10;
+
     public boolean hasCorrections(ICompilationUnit unit, int problemId) {
         switch (problemId) {
         case IProblem.ForbiddenReference:
         case IProblem.ImportNotFound:
         case IProblem.IsClassPathCorrect:
-            // TODO depends on addSearchResults
-            // case IProblem.UndefinedType:
-            // case IProblem.UndefinedName:
+        case IProblem.UndefinedType:
+        case IProblem.UndefinedName:
             return true;
         default:
             return false;
@@ -44,26 +58,24 @@ public class ImportQuickFixProcessor implements IQuickFixProcessor {
             Project project = findProject(context);
 
             if (project != null) {
+                Map<String, Integer> repositoryOrder = RepositoryModel.getRepositoryOrder();
                 for (int i = 0; i < locations.length; i++) {
                     switch (locations[i].getProblemId()) {
                     case IProblem.ForbiddenReference:
-                        handleImportNotFound(project, context, locations[i], results);
+                        handleImportNotFound(project, context, locations[i], repositoryOrder, results);
                         break;
                     case IProblem.ImportNotFound:
-                        handleImportNotFound(project, context, locations[i], results);
+                        handleImportNotFound(project, context, locations[i], repositoryOrder, results);
                         break;
                     case IProblem.IsClassPathCorrect:
                         handleIsClassPathCorrect(project, context, locations[i], results);
                         break;
-                    // TODO depends on addSearchResults
-                    // case IProblem.UndefinedType:
-                    // handleUndefinedType(project, context, locations[i],
-                    // results);
-                    // break;
-                    // case IProblem.UndefinedName:
-                    // handleUndefinedName(project, context, locations[i],
-                    // results);
-                    // break;
+                    case IProblem.UndefinedType:
+                        handleUndefinedType(project, context, locations[i], repositoryOrder, results);
+                        break;
+                    case IProblem.UndefinedName:
+                        handleUndefinedName(project, context, locations[i], repositoryOrder, results);
+                        break;
                     }
                 }
             }
@@ -83,7 +95,7 @@ public class ImportQuickFixProcessor implements IQuickFixProcessor {
         }
     }
 
-    private void handleImportNotFound(Project project, final IInvocationContext context, IProblemLocation location,
+    private void handleImportNotFound(Project project, final IInvocationContext context, IProblemLocation location, Map<String, Integer> repositoryOrder,
             final HashMap<Object, IJavaCompletionProposal> results) throws CoreException {
         ASTNode selectedNode = location.getCoveringNode(context.getASTRoot());
         if (selectedNode == null)
@@ -93,16 +105,17 @@ public class ImportQuickFixProcessor implements IQuickFixProcessor {
             // check QualifiedName for search results as well -
             // happens if import package is already added but exported package has
             // been removed
-
-            // TODO depends on addSearchResults
-            // ClassInstanceCreation c = (ClassInstanceCreation) selectedNode;
-            // Type t = c.getType();
-            // Name node = findName(t);
-            // if (node != null)
-            // {
-            // addSearchResults(node, project, results);
-            // }
+            ClassInstanceCreation c = (ClassInstanceCreation) selectedNode;
+            Name node = findName(c.getType());
+            if (node != null) {
+                addSearchResults(node, project, context, repositoryOrder, results);
+            }
         } else {
+            ImportDeclaration id = (ImportDeclaration) getParent(selectedNode, ASTNode.IMPORT_DECLARATION);
+            if (id != null && !id.isOnDemand() && !id.isStatic()) {
+                addSearchResults(id.getName(), project, context, repositoryOrder, results);
+            }
+
             for (final String iPackage : readPackage(selectedNode, location)) {
                 if (!results.containsKey(iPackage)) {
                     addPackageProposal(project, results, iPackage, iPackage);
@@ -179,67 +192,98 @@ public class ImportQuickFixProcessor implements IQuickFixProcessor {
     }
 
 
-    // The following code is useful for searching for classes that are not yet exported or finding packages via a name but no package
-    // i.e. HttpServlet - which one? Well javax.http.servlet.HttpServlet of course but we don't have a package with which to do a search
-    // so we need to find all resources that contain this class then propose their packages as quick fixes
-//    private void handleUndefinedName(Project project, IInvocationContext context, IProblemLocation problem, HashMap<Object, IJavaCompletionProposal> results) {
-//        Name node = findNode(context, problem);
-//
-//        if (node == null) {
-//            return;
-//        }
-//        addSearchResults(node, project, results);
-//    }
-//
-//    private void handleUndefinedType(Project project, IInvocationContext context, IProblemLocation problem, HashMap<Object, IJavaCompletionProposal> results)
-//            throws CoreException {
-//        Name node = findNode(context, problem);
-//
-//        if (node == null) {
-//            return;
-//        }
-//        addSearchResults(node, project, results);
-//    }
-//
-//    private void addSearchResults(Name node, Project project, HashMap<Object, IJavaCompletionProposal> results) {
-//        for (SearchResult result : Search.findProviders(node.getFullyQualifiedName(), project, null)) {
-//            if (!isBuildPackage(project, result.getPackageName())) {
-//                String type = result.getPackageName() + "." + node.getFullyQualifiedName();
-//                results.put(type, new ImportSearchResultProposal(result, node, project));
-//            }
-//        }
-//    }
-//
-//    private Name findName(Type t) {
-//        if (t.isSimpleType()) {
-//            SimpleType st = (SimpleType) t;
-//            return st.getName();
-//        } else if (t.isArrayType()) {
-//            ArrayType at = (ArrayType) t;
-//            return findName(at.getElementType());
-//        } else {
-//            return null;
-//        }
-//    }
-//
-//    private Name findNode(IInvocationContext context, IProblemLocation problem) {
-//        ASTNode selectedNode = problem.getCoveringNode(context.getASTRoot());
-//        if (selectedNode == null) {
-//            return null;
-//        }
-//
-//        while (selectedNode.getLocationInParent() == QualifiedName.NAME_PROPERTY) {
-//            selectedNode = selectedNode.getParent();
-//        }
-//
-//        Name node = null;
-//
-//        if (selectedNode instanceof Type) {
-//            node = findName((Type) selectedNode);
-//        } else if (selectedNode instanceof Name) {
-//            node = (Name) selectedNode;
-//        }
-//
-//        return node;
-//    }
+    private void handleUndefinedName(Project project, IInvocationContext context, IProblemLocation problem, Map<String, Integer> repositoryOrder, HashMap<Object, IJavaCompletionProposal> results) {
+        Name node = findNode(context, problem);
+
+        if (node == null) {
+            return;
+        }
+        addSearchResults(node, project, context, repositoryOrder, results);
+    }
+
+    private void handleUndefinedType(Project project, IInvocationContext context, IProblemLocation problem, Map<String, Integer> repositoryOrder, HashMap<Object, IJavaCompletionProposal> results) {
+        Name node = findNode(context, problem);
+
+        if (node == null) {
+            return;
+        }
+        addSearchResults(node, project, context, repositoryOrder, results);
+    }
+
+    /**
+     * Proposes adding the repository bundles that provide the named class to
+     * the build path. Simple names are imported as well; qualified names must
+     * match the fully qualified class name.
+     */
+    private void addSearchResults(Name node, Project project, IInvocationContext context, Map<String, Integer> repositoryOrder, HashMap<Object, IJavaCompletionProposal> results) {
+        RepositoryModel model = Plugin.getDefault().getRepositoryModel();
+        if (model == null)
+            return;
+
+        String name = node.getFullyQualifiedName();
+        boolean qualified = node.isQualifiedName();
+        String shortName = qualified ? ((QualifiedName) node).getName().getIdentifier() : name;
+
+        Set<String> buildPath = getBuildPathBsns(project);
+        int relevance = MAX_SEARCH_RELEVANCE;
+        int count = 0;
+        for (Pair<String, BundleInfo> provider : model.findProviders(shortName, repositoryOrder)) {
+            String className = provider.getFirst();
+            BundleInfo bundle = provider.getSecond();
+            if (bundle.getBsn() == null || buildPath.contains(bundle.getBsn()))
+                continue;
+            if (qualified && !className.equals(name))
+                continue;
+
+            String key = className + "@" + bundle.getBsn();
+            if (!results.containsKey(key)) {
+                results.put(key, new AddBuildPathProposal(project, className, bundle, qualified ? null : context.getASTRoot(), relevance--));
+                if (++count >= MAX_SEARCH_RESULTS)
+                    break;
+            }
+        }
+    }
+
+    private Set<String> getBuildPathBsns(Project project) {
+        return OSGiHeader.parseHeader(project.getProperty(Constants.BUILDPATH)).keySet();
+    }
+
+    private Name findName(Type t) {
+        if (t.isSimpleType()) {
+            SimpleType st = (SimpleType) t;
+            return st.getName();
+        } else if (t.isQualifiedType()) {
+            QualifiedType qt = (QualifiedType) t;
+            return qt.getName();
+        } else if (t.isArrayType()) {
+            ArrayType at = (ArrayType) t;
+            return findName(at.getElementType());
+        } else if (t.isParameterizedType()) {
+            ParameterizedType pt = (ParameterizedType) t;
+            return findName(pt.getType());
+        } else {
+            return null;
+        }
+    }
+
+    private Name findNode(IInvocationContext context, IProblemLocation problem) {
+        ASTNode selectedNode = problem.getCoveringNode(context.getASTRoot());
+        if (selectedNode == null) {
+            return null;
+        }
+
+        while (selectedNode.getLocationInParent() == QualifiedName.NAME_PROPERTY) {
+            selectedNode = selectedNode.getParent();
+        }
+
+        Name node = null;
+
+        if (selectedNode instanceof Type) {
+            node = findName((Type) selectedNode);
+        } else if (selectedNode instanceof Name) {
+            node = (Name) selectedNode;
+        }
+
+        return node;
+    }
 }
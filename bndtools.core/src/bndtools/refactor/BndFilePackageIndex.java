@@ -0,0 +1,278 @@
+package bndtools.refactor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+
+import bndtools.Plugin;
+import bndtools.utils.FileUtils;
+
+/**
+ * Workspace-wide inverted index from the package names mentioned in bnd files
+ * to the offsets at which they occur. A package name is indexed wherever it
+ * appears as a whole token, or as the start of a token followed by
+ * {@code .*} or a line continuation, so the index answers the same queries as
+ * the pattern previously used by {@link PkgRenameParticipant}.
+ * <p>
+ * The index is built on the first query. Afterwards, resource deltas only
+ * mark the affected bnd files as stale; they are re-read at the next query.
+ */
+public class BndFilePackageIndex implements IResourceChangeListener {
+
+    private static final String BND_EXTENSION = ".bnd";
+
+    /** Package name to the files that mention it. */
+    private final Map<String, Set<IFile>> index = new HashMap<String, Set<IFile>>();
+    /** Per file: package name to the offsets of its occurrences. */
+    private final Map<IFile, Map<String, int[]>> files = new HashMap<IFile, Map<String, int[]>>();
+    /** Files changed, added or removed since they were last indexed. */
+    private final Set<IFile> stale = new HashSet<IFile>();
+
+    private boolean initialised = false;
+
+    /**
+     * Returns the bnd files in the specified projects that mention the
+     * package, together with the offsets of each occurrence in ascending
+     * order.
+     */
+    public synchronized Map<IFile, int[]> find(String packageName, Collection<IProject> projects) throws CoreException {
+        update();
+
+        Set<IFile> candidates = index.get(packageName);
+        if (candidates == null)
+            return Collections.emptyMap();
+
+        Map<IFile, int[]> result = new LinkedHashMap<IFile, int[]>();
+        for (IFile file : candidates) {
+            if (projects.contains(file.getProject()))
+                result.put(file, files.get(file).get(packageName));
+        }
+        return result;
+    }
+
+    private void update() throws CoreException {
+        if (!initialised) {
+            index.clear();
+            files.clear();
+            stale.clear();
+            scan(ResourcesPlugin.getWorkspace().getRoot());
+            initialised = true;
+        }
+
+        for (Iterator<IFile> iter = stale.iterator(); iter.hasNext();) {
+            IFile file = iter.next();
+            iter.remove();
+            removeFile(file);
+            if (file.exists())
+                indexFile(file);
+        }
+    }
+
+    private void scan(IContainer container) throws CoreException {
+        container.accept(new IResourceProxyVisitor() {
+            public boolean visit(IResourceProxy proxy) throws CoreException {
+                if (proxy.getType() == IResource.FILE) {
+                    if (isBndFile(proxy.getName()))
+                        indexFile((IFile) proxy.requestResource());
+                    return false;
+                }
+                return proxy.getType() != IResource.PROJECT || ((IProject) proxy.requestResource()).isOpen();
+            }
+        }, IContainer.NONE);
+    }
+
+    private static boolean isBndFile(String name) {
+        return name.toLowerCase().endsWith(BND_EXTENSION);
+    }
+
+    private void indexFile(IFile file) throws CoreException {
+        String text;
+        try {
+            text = FileUtils.readFully(file).get();
+        } catch (CoreException e) {
+            throw e;
+        } catch (Exception e) {
+            Plugin.logError("Could not read file " + file.getFullPath(), e);
+            return;
+        }
+
+        Map<String, int[]> occurrences = tokenize(text);
+        if (occurrences.isEmpty())
+            return;
+
+        files.put(file, occurrences);
+        for (String packageName : occurrences.keySet()) {
+            Set<IFile> set = index.get(packageName);
+            if (set == null) {
+                set = new HashSet<IFile>(4);
+                index.put(packageName, set);
+            }
+            set.add(file);
+        }
+    }
+
+    private void removeFile(IFile file) {
+        Map<String, int[]> occurrences = files.remove(file);
+        if (occurrences == null)
+            return;
+        for (String packageName : occurrences.keySet()) {
+            Set<IFile> set = index.get(packageName);
+            if (set != null) {
+                set.remove(file);
+                if (set.isEmpty())
+                    index.remove(packageName);
+            }
+        }
+    }
+
+    /**
+     * Splits the text into tokens separated by whitespace, commas, quotes and
+     * semicolons, and records every prefix of a token that could be replaced
+     * by a package rename: the whole token, and the part before any
+     * {@code .*} or backslash.
+     */
+    static Map<String, int[]> tokenize(String text) {
+        Map<String, int[]> result = new HashMap<String, int[]>();
+        int length = text.length();
+        int pos = 0;
+        while (pos < length) {
+            while (pos < length && isSeparator(text.charAt(pos)))
+                pos++;
+            int start = pos;
+            while (pos < length && !isSeparator(text.charAt(pos)))
+                pos++;
+            if (start == pos)
+                continue;
+
+            boolean plausible = true;
+            for (int i = start; i < pos && plausible; i++) {
+                char c = text.charAt(i);
+                if (c == '\\' || (c == '.' && i + 1 < pos && text.charAt(i + 1) == '*')) {
+                    addOccurrence(result, text, start, i);
+                    // anything after a wildcard or continuation is not part of the package name
+                    plausible = false;
+                } else if (c != '.' && !Character.isJavaIdentifierPart(c)) {
+                    plausible = false;
+                }
+            }
+            if (plausible)
+                addOccurrence(result, text, start, pos);
+        }
+
+        for (Entry<String, int[]> entry : result.entrySet()) {
+            int[] offsets = entry.getValue();
+            int count = offsets[0];
+            int[] trimmed = new int[count];
+            System.arraycopy(offsets, 1, trimmed, 0, count);
+            entry.setValue(trimmed);
+        }
+        return result;
+    }
+
+    /**
+     * Appends an offset to the growable array for the name; element zero of
+     * the array holds the count until the arrays are trimmed.
+     */
+    private static void addOccurrence(Map<String, int[]> result, String text, int start, int end) {
+        if (start == end)
+            return;
+        String name = text.substring(start, end);
+        int[] offsets = result.get(name);
+        if (offsets == null) {
+            offsets = new int[] { 0, 0, 0 };
+        } else if (offsets[0] + 1 == offsets.length) {
+            int[] grown = new int[offsets.length * 2];
+            System.arraycopy(offsets, 0, grown, 0, offsets.length);
+            offsets = grown;
+        }
+        offsets[++offsets[0]] = start;
+        result.put(name, offsets);
+    }
+
+    private static boolean isSeparator(char c) {
+        switch (c) {
+        case ' ':
+        case '\t':
+        case '\n':
+        case '\u000B':
+        case '\f':
+        case '\r':
+        case ',':
+        case '"':
+        case '\'':
+        case ';':
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    public void resourceChanged(IResourceChangeEvent event) {
+        IResourceDelta delta = event.getDelta();
+        if (delta == null)
+            return;
+
+        synchronized (this) {
+            if (!initialised)
+                return;
+            try {
+                delta.accept(new IResourceDeltaVisitor() {
+                    public boolean visit(IResourceDelta delta) throws CoreException {
+                        IResource resource = delta.getResource();
+                        if (resource.getType() == IResource.FILE) {
+                            if (isBndFile(resource.getName()) && (delta.getKind() != IResourceDelta.CHANGED || (delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0))
+                                stale.add((IFile) resource);
+                            return false;
+                        }
+                        if (resource.getType() == IResource.PROJECT && (delta.getKind() == IResourceDelta.REMOVED || (delta.getFlags() & IResourceDelta.OPEN) != 0)) {
+                            markProjectStale((IProject) resource);
+                            return false;
+                        }
+                        return true;
+                    }
+                });
+            } catch (CoreException e) {
+                Plugin.logError("Error updating bnd file package index", e);
+                initialised = false;
+            }
+        }
+    }
+
+    private void markProjectStale(IProject project) throws CoreException {
+        for (IFile file : files.keySet()) {
+            if (project.equals(file.getProject()))
+                stale.add(file);
+        }
+        if (project.isOpen()) {
+            project.accept(new IResourceProxyVisitor() {
+                public boolean visit(IResourceProxy proxy) {
+                    if (proxy.getType() == IResource.FILE) {
+                        if (isBndFile(proxy.getName()))
+                            stale.add((IFile) proxy.requestResource());
+                        return false;
+                    }
+                    return true;
+                }
+            }, IContainer.NONE);
+        }
+    }
+}
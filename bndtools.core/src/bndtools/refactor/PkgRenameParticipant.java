@@ -4,15 +4,9 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IResourceProxy;
-import org.eclipse.core.resources.IResourceProxyVisitor;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
@@ -33,7 +27,6 @@ import org.eclipse.text.edits.ReplaceEdit;
 import org.eclipse.text.edits.TextEdit;
 
 import bndtools.Plugin;
-import bndtools.utils.FileUtils;
 
 public class PkgRenameParticipant extends RenameParticipant implements ISharableParticipant {
     private Map<IPackageFragment, RenameArguments> pkgFragments = new HashMap<IPackageFragment, RenameArguments>();
@@ -73,103 +66,56 @@ public class PkgRenameParticipant extends RenameParticipant implements ISharable
         return new RefactoringStatus();
     }
 
-    private static final String grammarSeparator = "[\\s,\"';]";
-
     @Override
     public Change createChange(IProgressMonitor pm) throws CoreException, OperationCanceledException {
         final Map<IFile, TextChange> fileChanges = new HashMap<IFile, TextChange>();
+        BndFilePackageIndex index = Plugin.getDefault().getBndFilePackageIndex();
 
-        IResourceProxyVisitor visitor = new IResourceProxyVisitor() {
-            public boolean visit(IResourceProxy proxy) throws CoreException {
-                if ((proxy.getType() == IResource.FOLDER) || (proxy.getType() == IResource.PROJECT)) {
-                    return true;
-                }
-
-                if (!((proxy.getType() == IResource.FILE) && proxy.getName().toLowerCase().endsWith(".bnd"))) {
-                    return false;
-                }
+        /* determine which projects have to be visited */
+        Set<IProject> projectsToVisit = new HashSet<IProject>();
+        for (IPackageFragment pkgFragment : pkgFragments.keySet()) {
+            projectsToVisit.add(pkgFragment.getResource().getProject());
+            for (IProject projectToVisit : pkgFragment.getResource().getProject().getReferencingProjects()) {
+                projectsToVisit.add(projectToVisit);
+            }
+            for (IProject projectToVisit : pkgFragment.getResource().getProject().getReferencedProjects()) {
+                projectsToVisit.add(projectToVisit);
+            }
+        }
 
-                /* we're dealing with a *.bnd file */
+        /* look up the bnd files mentioning each renamed package */
+        Set<String> renamedPackages = new HashSet<String>();
+        for (Map.Entry<IPackageFragment, RenameArguments> entry : pkgFragments.entrySet()) {
+            final String oldName = entry.getKey().getElementName();
+            final String newName = entry.getValue().getNewName();
 
-                /* get the proxied file */
-                IFile resource = (IFile) proxy.requestResource();
+            /* the same package may exist in several source folders */
+            if (!renamedPackages.add(oldName)) {
+                continue;
+            }
 
-                /* read the file as a single string */
-                String bndFileText = null;
-                try {
-                    bndFileText = FileUtils.readFully(resource).get();
-                } catch (Exception e) {
-                    String str = "Could not read file " + proxy.getName();
-                    Plugin.logError(str, e);
-                    throw new OperationCanceledException(str);
-                }
+            for (Map.Entry<IFile, int[]> match : index.find(oldName, projectsToVisit).entrySet()) {
+                IFile resource = match.getKey();
 
                 /*
                  * get the previous change for this file if it exists, or
-                 * otherwise create a new change for it, but do not store it
-                 * yet: wait until we know if there are actually changes in the
-                 * file
+                 * otherwise create a new change for it
                  */
                 TextChange fileChange = getTextChange(resource);
-                final boolean fileChangeIsNew = (fileChange == null);
                 if (fileChange == null) {
-                    fileChange = new TextFileChange(proxy.getName(), resource);
-                    fileChange.setEdit(new MultiTextEdit());
-                }
-                TextEdit rootEdit = fileChange.getEdit();
-
-                /* loop over all renames to perform */
-                for (Map.Entry<IPackageFragment, RenameArguments> entry : pkgFragments.entrySet()) {
-                    IPackageFragment pkgFragment = entry.getKey();
-                    RenameArguments arguments = entry.getValue();
-
-                    final String oldName = pkgFragment.getElementName();
-                    final String newName = arguments.getNewName();
-                    final Pattern pattern = Pattern.compile(
-                    /* match start boundary */"(^|" + grammarSeparator + ")" +
-                    /* match itself / package name */"(" + Pattern.quote(oldName) + ")" +
-                    /* match end boundary */"(" + grammarSeparator + "|" + Pattern.quote(".*") + "|" + Pattern.quote("\\") + "|$)");
-
-                    /* see if there are matches, if not: return */
-                    Matcher matcher = pattern.matcher(bndFileText);
-                    if (!matcher.find()) {
-                        continue;
-                    }
-
-                    /* find all matches to replace and add them to the root edit */
-                    matcher.reset();
-                    while (matcher.find()) {
-                        rootEdit.addChild(new ReplaceEdit(matcher.start(2), matcher.group(2).length(), newName));
+                    fileChange = fileChanges.get(resource);
+                    if (fileChange == null) {
+                        fileChange = new TextFileChange(resource.getName(), resource);
+                        fileChange.setEdit(new MultiTextEdit());
+                        fileChanges.put(resource, fileChange);
                     }
                 }
+                TextEdit rootEdit = fileChange.getEdit();
 
-                /*
-                 * only store the changes when no changes were stored before for
-                 * this file and when there are actually changes.
-                 */
-                if (fileChangeIsNew && rootEdit.hasChildren()) {
-                    fileChanges.put(resource, fileChange);
+                for (int offset : match.getValue()) {
+                    rootEdit.addChild(new ReplaceEdit(offset, oldName.length(), newName));
                 }
-
-                return false;
             }
-        };
-
-        /* determine which projects have to be visited */
-        Set<IProject> projectsToVisit = new HashSet<IProject>();
-        for (IPackageFragment pkgFragment : pkgFragments.keySet()) {
-            projectsToVisit.add(pkgFragment.getResource().getProject());
-            for (IProject projectToVisit : pkgFragment.getResource().getProject().getReferencingProjects()) {
-                projectsToVisit.add(projectToVisit);
-            }
-            for (IProject projectToVisit : pkgFragment.getResource().getProject().getReferencedProjects()) {
-                projectsToVisit.add(projectToVisit);
-            }
-        }
-
-        /* visit the projects */
-        for (IProject projectToVisit : projectsToVisit) {
-            projectToVisit.accept(visitor, IContainer.NONE);
         }
 
         if (fileChanges.isEmpty()) {
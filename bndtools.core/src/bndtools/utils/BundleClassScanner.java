@@ -0,0 +1,277 @@
+package bndtools.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import aQute.lib.osgi.Constants;
+import aQute.lib.osgi.Processor;
+
+/**
+ * Lists the public, top-level classes of a bundle by reading only the header
+ * and constant pool of each class file, which is far cheaper than a full bnd
+ * analysis. If the bundle declares an {@code Export-Package} header, only
+ * classes in exported packages are returned.
+ */
+public class BundleClassScanner {
+
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_SYNTHETIC = 0x1000;
+    private static final int ACC_MODULE = 0x8000;
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    public static class Result {
+        private final String bsn;
+        private final String version;
+        private final List<String> classNames;
+
+        Result(String bsn, String version, List<String> classNames) {
+            this.bsn = bsn;
+            this.version = version;
+            this.classNames = classNames;
+        }
+
+        public String getBsn() {
+            return bsn;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Fully qualified, dot-separated names of the public classes found.
+         */
+        public List<String> getClassNames() {
+            return classNames;
+        }
+    }
+
+    public static Result scan(File file) throws IOException {
+        if (file.isDirectory())
+            return scanDirectory(file);
+
+        JarFile jar = new JarFile(file, false);
+        try {
+            Manifest manifest = jar.getManifest();
+            Set<String> exports = getExports(manifest);
+
+            List<String> classNames = new ArrayList<String>();
+            byte[] buffer = new byte[8192];
+            for (Enumeration<? extends ZipEntry> entries = jar.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                String path = entry.getName();
+                if (entry.isDirectory() || !isCandidate(path, exports))
+                    continue;
+
+                InputStream in = jar.getInputStream(entry);
+                try {
+                    buffer = readFully(in, buffer, (int) entry.getSize());
+                } finally {
+                    in.close();
+                }
+                String className = readPublicClassName(buffer);
+                if (className != null)
+                    classNames.add(className);
+            }
+            return new Result(getHeader(manifest, Constants.BUNDLE_SYMBOLICNAME), getHeader(manifest, Constants.BUNDLE_VERSION), classNames);
+        } finally {
+            jar.close();
+        }
+    }
+
+    static Result scanDirectory(File dir) throws IOException {
+        Manifest manifest = null;
+        File manifestFile = new File(dir, JarFile.MANIFEST_NAME);
+        if (manifestFile.isFile()) {
+            InputStream in = new FileInputStream(manifestFile);
+            try {
+                manifest = new Manifest(in);
+            } finally {
+                in.close();
+            }
+        }
+        Set<String> exports = getExports(manifest);
+
+        List<String> classNames = new ArrayList<String>();
+        scanDirectory(dir, "", exports, classNames, new byte[8192]);
+        return new Result(getHeader(manifest, Constants.BUNDLE_SYMBOLICNAME), getHeader(manifest, Constants.BUNDLE_VERSION), classNames);
+    }
+
+    private static byte[] scanDirectory(File dir, String prefix, Set<String> exports, List<String> classNames, byte[] buffer) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return buffer;
+        for (File child : children) {
+            String path = prefix + child.getName();
+            if (child.isDirectory()) {
+                buffer = scanDirectory(child, path + "/", exports, classNames, buffer);
+            } else if (isCandidate(path, exports)) {
+                InputStream in = new FileInputStream(child);
+                try {
+                    buffer = readFully(in, buffer, (int) child.length());
+                } finally {
+                    in.close();
+                }
+                String className = readPublicClassName(buffer);
+                if (className != null)
+                    classNames.add(className);
+            }
+        }
+        return buffer;
+    }
+
+    private static boolean isCandidate(String path, Set<String> exports) {
+        if (!path.endsWith(CLASS_SUFFIX) || path.indexOf('$') >= 0 || path.endsWith("package-info.class") || path.startsWith("META-INF/"))
+            return false;
+        if (exports == null)
+            return true;
+
+        int slash = path.lastIndexOf('/');
+        String pkg = slash < 0 ? "" : path.substring(0, slash).replace('/', '.');
+        return exports.contains(pkg);
+    }
+
+    private static Set<String> getExports(Manifest manifest) {
+        String exportHeader = getHeader(manifest, Constants.EXPORT_PACKAGE);
+        if (exportHeader == null)
+            return null;
+
+        Map<String, Map<String, String>> clauses = Processor.parseHeader(exportHeader, null);
+        Set<String> exports = new HashSet<String>();
+        for (String pkg : clauses.keySet())
+            exports.add(Processor.removeDuplicateMarker(pkg));
+        return exports;
+    }
+
+    private static String getHeader(Manifest manifest, String name) {
+        if (manifest == null)
+            return null;
+        Attributes attribs = manifest.getMainAttributes();
+        String value = attribs.getValue(name);
+        if (value != null && Constants.BUNDLE_SYMBOLICNAME.equals(name)) {
+            int semicolon = value.indexOf(';');
+            if (semicolon > -1)
+                value = value.substring(0, semicolon);
+            value = value.trim();
+        }
+        return value;
+    }
+
+    /**
+     * Reads the stream into the buffer, growing it if necessary. The returned
+     * array holds the content from offset zero; any bytes beyond the content
+     * are left over from previous use.
+     */
+    private static byte[] readFully(InputStream in, byte[] buffer, int sizeHint) throws IOException {
+        if (sizeHint > buffer.length)
+            buffer = new byte[sizeHint];
+
+        int total = 0;
+        while (true) {
+            if (total == buffer.length) {
+                byte[] grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, total);
+                buffer = grown;
+            }
+            int read = in.read(buffer, total, buffer.length - total);
+            if (read < 0)
+                break;
+            total += read;
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the dot-separated name of the class defined in the class file,
+     * or {@code null} if the class is not public or the data is not a valid
+     * class file. Only the constant pool offsets are computed; the only string
+     * decoded is the class name itself.
+     */
+    static String readPublicClassName(byte[] data) {
+        try {
+            if (readInt(data, 0) != CLASS_MAGIC)
+                return null;
+
+            int count = readUnsignedShort(data, 8);
+            int[] offsets = new int[count];
+            int pos = 10;
+            for (int i = 1; i < count; i++) {
+                offsets[i] = pos;
+                int tag = data[pos] & 0xff;
+                switch (tag) {
+                case 1: // Utf8
+                    pos += 3 + readUnsignedShort(data, pos + 1);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    pos += 5;
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    pos += 9;
+                    i++;
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    pos += 3;
+                    break;
+                case 15: // MethodHandle
+                    pos += 4;
+                    break;
+                default:
+                    return null;
+                }
+            }
+
+            int access = readUnsignedShort(data, pos);
+            if ((access & ACC_PUBLIC) == 0 || (access & (ACC_SYNTHETIC | ACC_MODULE)) != 0)
+                return null;
+
+            int thisClass = readUnsignedShort(data, pos + 2);
+            int nameIndex = readUnsignedShort(data, offsets[thisClass] + 1);
+            int nameOffset = offsets[nameIndex];
+            int nameLength = readUnsignedShort(data, nameOffset + 1);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, nameOffset + 1, nameLength + 2));
+            return in.readUTF().replace('/', '.');
+        } catch (IOException e) {
+            return null;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static int readUnsignedShort(byte[] data, int pos) {
+        return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+    }
+
+    private static int readInt(byte[] data, int pos) {
+        return (readUnsignedShort(data, pos) << 16) | readUnsignedShort(data, pos + 2);
+    }
+}
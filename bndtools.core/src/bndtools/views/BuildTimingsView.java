@@ -0,0 +1,195 @@
+package bndtools.views;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.dialogs.ErrorDialog;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.custom.SashForm;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.part.ViewPart;
+import org.eclipse.ui.plugin.AbstractUIPlugin;
+
+import bndtools.Plugin;
+import bndtools.builder.BuildTimings;
+import bndtools.builder.BuildTimings.Summary;
+
+/**
+ * Shows the projects and build phases that took the most time over the
+ * recently recorded bnd builds.
+ */
+public class BuildTimingsView extends ViewPart implements BuildTimings.Listener {
+
+    private Display display = null;
+    private TableViewer projectsViewer;
+    private TableViewer phasesViewer;
+
+    private boolean refreshPending = false;
+
+    private static class SummaryLabelProvider extends LabelProvider implements ITableLabelProvider {
+        public Image getColumnImage(Object element, int columnIndex) {
+            return null;
+        }
+
+        public String getColumnText(Object element, int columnIndex) {
+            Summary summary = (Summary) element;
+            switch (columnIndex) {
+            case 0:
+                return summary.getName();
+            case 1:
+                return Integer.toString(summary.getCount());
+            case 2:
+                return Long.toString(TimeUnit.NANOSECONDS.toMillis(summary.getTotalNanos()));
+            case 3:
+                return Long.toString(TimeUnit.NANOSECONDS.toMillis(summary.getMeanNanos()));
+            case 4:
+                return Long.toString(TimeUnit.NANOSECONDS.toMillis(summary.getMaxNanos()));
+            default:
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void createPartControl(Composite parent) {
+        this.display = parent.getDisplay();
+
+        SashForm sash = new SashForm(parent, SWT.VERTICAL);
+        projectsViewer = createViewer(sash, "Project");
+        phasesViewer = createViewer(sash, "Phase");
+
+        fillActionBars();
+
+        BuildTimings.addListener(this);
+        updateInput();
+    }
+
+    private static TableViewer createViewer(Composite parent, String nameColumn) {
+        Table table = new Table(parent, SWT.FULL_SELECTION | SWT.SINGLE);
+        table.setHeaderVisible(true);
+        table.setLinesVisible(true);
+
+        String[] titles = new String[] { nameColumn, "Builds", "Total (ms)", "Mean (ms)", "Max (ms)" };
+        int[] widths = new int[] { 250, 60, 80, 80, 80 };
+        for (int i = 0; i < titles.length; i++) {
+            TableColumn col = new TableColumn(table, i == 0 ? SWT.NONE : SWT.RIGHT);
+            col.setText(titles[i]);
+            col.setWidth(widths[i]);
+        }
+
+        TableViewer viewer = new TableViewer(table);
+        viewer.setContentProvider(new ArrayContentProvider());
+        viewer.setLabelProvider(new SummaryLabelProvider());
+        return viewer;
+    }
+
+    void fillActionBars() {
+        IAction exportAction = new Action("Export CSV...") {
+            @Override
+            public void run() {
+                exportCsv();
+            }
+        };
+        exportAction.setImageDescriptor(PlatformUI.getWorkbench().getSharedImages().getImageDescriptor(ISharedImages.IMG_ETOOL_SAVE_EDIT));
+        exportAction.setToolTipText("Export the recorded build timings as CSV");
+
+        IAction clearAction = new Action("Clear") {
+            @Override
+            public void run() {
+                BuildTimings.clear();
+            }
+        };
+        clearAction.setImageDescriptor(AbstractUIPlugin.imageDescriptorFromPlugin(Plugin.PLUGIN_ID, "/icons/clear.gif"));
+        clearAction.setToolTipText("Clear the recorded build timings");
+
+        IToolBarManager toolBarManager = getViewSite().getActionBars().getToolBarManager();
+        toolBarManager.add(exportAction);
+        toolBarManager.add(clearAction);
+    }
+
+    private void exportCsv() {
+        FileDialog dialog = new FileDialog(getSite().getShell(), SWT.SAVE);
+        dialog.setFilterExtensions(new String[] { "*.csv" });
+        dialog.setFileName("build-timings.csv");
+        String path = dialog.open();
+        if (path == null)
+            return;
+
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(new File(path)), "UTF-8");
+            BuildTimings.writeCsv(writer);
+        } catch (IOException e) {
+            ErrorDialog.openError(getSite().getShell(), "Error", null, new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error exporting build timings to " + path, e));
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    public void timingsChanged() {
+        // Builds may finish in quick succession; update the view once for all of them
+        synchronized (this) {
+            if (refreshPending || display == null || display.isDisposed())
+                return;
+            try {
+                display.asyncExec(new Runnable() {
+                    public void run() {
+                        synchronized (BuildTimingsView.this) {
+                            refreshPending = false;
+                        }
+                        updateInput();
+                    }
+                });
+            } catch (SWTException e) {
+                // The display was disposed concurrently
+                return;
+            }
+            refreshPending = true;
+        }
+    }
+
+    private void updateInput() {
+        if (projectsViewer.getControl().isDisposed())
+            return;
+        projectsViewer.setInput(BuildTimings.summariseByProject());
+        phasesViewer.setInput(BuildTimings.summariseByPhase());
+    }
+
+    @Override
+    public void setFocus() {
+        projectsViewer.getControl().setFocus();
+    }
+
+    @Override
+    public void dispose() {
+        BuildTimings.removeListener(this);
+        super.dispose();
+    }
+}
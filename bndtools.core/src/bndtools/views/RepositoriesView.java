@@ -2,6 +2,7 @@ package bndtools.views;
 
 import java.io.File;
 
+import org.bndtools.core.obr.ObrResolutionJob;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IAdaptable;
@@ -56,6 +57,7 @@ public class RepositoriesView extends FilteredViewPart implements RepositoryList
     private static final String CACHE_REPO = "cache";
 
     private TreeViewer viewer;
+    private RepositoryTreeContentProvider contentProvider;
 
     private Action collapseAllAction;
     private Action refreshAction;
@@ -69,7 +71,9 @@ public class RepositoriesView extends FilteredViewPart implements RepositoryList
         Tree tree = new Tree(container, SWT.FULL_SELECTION | SWT.MULTI);
 
         viewer = new TreeViewer(tree);
-        viewer.setContentProvider(new RepositoryTreeContentProvider());
+        contentProvider = new RepositoryTreeContentProvider();
+        contentProvider.setDeferred(true);
+        viewer.setContentProvider(contentProvider);
         viewer.setLabelProvider(new RepositoryTreeLabelProvider());
         getViewSite().setSelectionProvider(viewer);
 
@@ -178,6 +182,7 @@ public class RepositoriesView extends FilteredViewPart implements RepositoryList
         AddFilesToRepositoryWizard wizard = new AddFilesToRepositoryWizard(repo, files);
         WizardDialog dialog = new WizardDialog(getViewSite().getShell(), wizard);
         dialog.open();
+        contentProvider.invalidate(repo);
         viewer.refresh(repo);
         return true;
     }
@@ -206,6 +211,7 @@ public class RepositoriesView extends FilteredViewPart implements RepositoryList
         refreshAction = new Action() {
             @Override
             public void run() {
+                ObrResolutionJob.clearCachedResults();
                 viewer.setInput(RepositoryUtils.listRepositories(true));
             };
         };
@@ -225,6 +231,7 @@ public class RepositoriesView extends FilteredViewPart implements RepositoryList
                         WizardDialog dialog = new WizardDialog(getViewSite().getShell(), wizard);
                         dialog.open();
 
+                        contentProvider.invalidate(repo);
                         viewer.refresh(repo);
                     }
                 }
@@ -257,8 +264,10 @@ public class RepositoriesView extends FilteredViewPart implements RepositoryList
     public void bundleAdded(final RepositoryPlugin repository, Jar jar, File file) {
         if (viewer != null) SWTConcurrencyUtil.execForControl(viewer.getControl(), true, new Runnable() {
             public void run() {
+                contentProvider.invalidate(repository);
                 viewer.refresh(repository);
             }
         });
+        ObrResolutionJob.clearCachedResults();
     }
 }
\ No newline at end of file
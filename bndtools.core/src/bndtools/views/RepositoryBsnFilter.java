@@ -1,18 +1,38 @@
 package bndtools.views;
 
+import org.eclipse.jface.viewers.IContentProvider;
+import org.eclipse.jface.viewers.StructuredViewer;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerFilter;
 
+import aQute.bnd.service.RepositoryPlugin;
 import bndtools.model.repo.ProjectBundle;
 import bndtools.model.repo.RepositoryBundle;
+import bndtools.model.repo.RepositoryTreeContentProvider;
 
 public class RepositoryBsnFilter extends ViewerFilter {
     private final String filterStr;
     public RepositoryBsnFilter(String filterStr) {
-        this.filterStr = filterStr;
+        this.filterStr = filterStr != null ? filterStr.toLowerCase() : null;
     }
     @Override
     public boolean select(Viewer viewer, Object parentElement, Object element) {
+        if (element instanceof RepositoryPlugin && viewer instanceof StructuredViewer) {
+            // Hide repositories with no matching bundles, but only if they have already been listed
+            IContentProvider contentProvider = ((StructuredViewer) viewer).getContentProvider();
+            if (contentProvider instanceof RepositoryTreeContentProvider) {
+                RepositoryBundle[] bundles = ((RepositoryTreeContentProvider) contentProvider).getCachedBundles((RepositoryPlugin) element);
+                if (bundles != null) {
+                    for (RepositoryBundle bundle : bundles) {
+                        if (matches(bundle.getBsn()))
+                            return true;
+                    }
+                    return false;
+                }
+            }
+            return true;
+        }
+
         String bsn = null;
         if(element instanceof RepositoryBundle) {
             bsn = ((RepositoryBundle) element).getBsn();
@@ -20,10 +40,11 @@ public class RepositoryBsnFilter extends ViewerFilter {
             bsn = ((ProjectBundle) element).getBsn();
         }
         if(bsn != null) {
-            if(filterStr != null && filterStr.length() > 0 && bsn.toLowerCase().indexOf(filterStr) == -1) {
-                return false;
-            }
+            return matches(bsn);
         }
         return true;
     }
+    private boolean matches(String bsn) {
+        return filterStr == null || filterStr.length() == 0 || bsn.toLowerCase().indexOf(filterStr) != -1;
+    }
 }
\ No newline at end of file
@@ -269,9 +269,13 @@ public class ObrResultsWizardPage extends WizardPage {
     }
 
     private void reresolve() {
+        reresolve(null);
+    }
+
+    private void reresolve(ObrResolutionResult previous) {
         checkedOptional.clear();
         try {
-            ResolveOperation resolver = new ResolveOperation(file, model);
+            ResolveOperation resolver = new ResolveOperation(file, model, previous);
             getContainer().run(false, true, resolver);
 
             setResult(resolver.getResult());
@@ -298,7 +302,8 @@ public class ObrResultsWizardPage extends WizardPage {
         }
 
         model.setRunRequire(newRequires);
-        reresolve();
+        // Only requirements were added, so the current result is a valid starting point
+        reresolve(result);
     }
 
     private Requirement resourceToRequirement(Resource resource) {
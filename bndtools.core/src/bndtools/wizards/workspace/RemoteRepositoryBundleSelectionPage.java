@@ -3,16 +3,18 @@ package bndtools.wizards.workspace;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.text.MessageFormat;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.felix.bundlerepository.Repository;
 import org.apache.felix.bundlerepository.RepositoryAdmin;
 import org.apache.felix.bundlerepository.Resource;
+import org.bndtools.core.obr.ResourceSearchIndex;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -56,6 +58,7 @@ public class RemoteRepositoryBundleSelectionPage extends WizardPage implements I
 
     private final RepositoryAdmin repoAdmin;
     private final List<Resource> selectedResources = new LinkedList<Resource>();
+    private final Map<Repository, ResourceSearchIndex> searchIndexes = new HashMap<Repository, ResourceSearchIndex>();
 
     private TableViewer availableViewer;
     private TableViewer selectedViewer;
@@ -219,6 +222,9 @@ public class RemoteRepositoryBundleSelectionPage extends WizardPage implements I
     public void changedRepositories(RepositoryAdmin repoAdmin) {
         if (this.repoAdmin == repoAdmin) {
             cancelSearch();
+            synchronized (searchIndexes) {
+                searchIndexes.clear();
+            }
             if (availableViewer != null && !availableViewer.getControl().isDisposed())
                 availableViewer.setInput(Collections.emptyList());
             selectedResources.clear();
@@ -233,20 +239,10 @@ public class RemoteRepositoryBundleSelectionPage extends WizardPage implements I
             @Override
             protected IStatus run(IProgressMonitor monitor) {
                 try {
-                    final String filter = "(symbolicname=*" + text + "*)";
-                    final Resource[] resources = repoAdmin.discoverResources(filter);
-
-                    Arrays.sort(resources, new Comparator<Resource>() {
-                        public int compare(Resource o1, Resource o2) {
-                            String bsn1 = o1.getSymbolicName();
-                            if(bsn1 == null) bsn1 = "no-symbolic-name";
-
-                            String bsn2 = o2.getSymbolicName();
-                            if(bsn2 == null) bsn2 = "no-symbolic-name";
-
-                            return bsn1.compareToIgnoreCase(bsn2);
-                        }
-                    });
+                    List<ResourceSearchIndex> indexes = ResourceSearchIndex.getIndexes(repoAdmin.listRepositories(), searchIndexes);
+                    if (monitor.isCanceled())
+                        return Status.CANCEL_STATUS;
+                    final Resource[] resources = ResourceSearchIndex.search(indexes, text);
 
                     Runnable displayOp = new Runnable() {
                         public void run() {
@@ -1,8 +1,10 @@
 package org.bndtools.core.jobs.newproject;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.bndtools.core.utils.workspace.WorkspaceUtils;
 import org.eclipse.core.resources.IProject;
@@ -17,49 +19,86 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 
 import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
 import bndtools.Central;
 import bndtools.Plugin;
 import bndtools.classpath.BndContainerInitializer;
+import bndtools.classpath.UnresolvedPathIndex;
 
+/**
+ * Recalculates the classpaths of the projects that have unresolved
+ * {@code -buildpath} or {@code -testpath} entries that newly added projects
+ * can satisfy. Projects added in a burst, e.g. by an import, are handled
+ * together in a single run of the job.
+ */
 public class AdjustClasspathsForNewProjectJob extends WorkspaceJob {
 
-    private final IProject addedProject;
+    private static final long COALESCE_DELAY = 500;
 
-    public AdjustClasspathsForNewProjectJob(IProject addedProject) {
-        super("Adjusting classpaths for new project: " + addedProject.getName());
-        this.addedProject = addedProject;
+    private static final AdjustClasspathsForNewProjectJob instance = new AdjustClasspathsForNewProjectJob();
+
+    private final Set<IProject> addedProjects = new LinkedHashSet<IProject>();
+
+    private AdjustClasspathsForNewProjectJob() {
+        super("Adjusting classpaths for new projects");
+    }
+
+    /**
+     * Schedules the classpath adjustment for an added project; adjustments
+     * requested within a short delay of each other are performed together.
+     */
+    public static void projectAdded(IProject project) {
+        synchronized (instance.addedProjects) {
+            instance.addedProjects.add(project);
+        }
+        instance.schedule(COALESCE_DELAY);
     }
 
     @Override
     public IStatus runInWorkspace(IProgressMonitor monitor) {
             MultiStatus status = new MultiStatus(Plugin.PLUGIN_ID, 0, "Errors occurred while adjusting classpaths for new project", null);
 
-            List<Project> projects;
-            SubMonitor progress;
+            List<IProject> added;
+            synchronized (addedProjects) {
+                added = new ArrayList<IProject>(addedProjects);
+                addedProjects.clear();
+            }
+
+            Set<String> affected = new LinkedHashSet<String>();
+            for (IProject project : added)
+                affected.addAll(UnresolvedPathIndex.findReferencingProjects(project.getName()));
+            for (IProject project : added)
+                affected.remove(project.getName());
+
+            Workspace workspace;
             try {
-                projects = new ArrayList<Project>(Central.getWorkspace().getAllProjects());
-                progress = SubMonitor.convert(monitor, projects.size());
+                workspace = Central.getWorkspace();
             } catch (Exception e) {
                 return new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error getting project list", e);
             }
+            SubMonitor progress = SubMonitor.convert(monitor, affected.size());
 
             IWorkspaceRoot wsroot = ResourcesPlugin.getWorkspace().getRoot();
-            while (!projects.isEmpty()) {
-                Project project = projects.remove(0);
-                IProject eclipseProject = WorkspaceUtils.findOpenProject(wsroot, project);
-                if (eclipseProject != null && !eclipseProject.equals(addedProject)) {
+            for (String projectName : affected) {
+                IProject eclipseProject = WorkspaceUtils.findOpenProject(wsroot, projectName);
+                if (eclipseProject != null) {
                     List<String> errors = new LinkedList<String>();
-                    if (eclipseProject != null) {
-                        try {
+                    try {
+                        Project project = workspace.getProject(projectName);
+                        if (project != null) {
                             project.propertiesChanged();
                             BndContainerInitializer.resetClasspaths(project, eclipseProject, errors);
                             BndContainerInitializer.replaceClasspathProblemMarkers(eclipseProject, errors);
-                        } catch (CoreException e) {
-                            status.add(e.getStatus());
                         }
+                    } catch (CoreException e) {
+                        status.add(e.getStatus());
+                    } catch (Exception e) {
+                        status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error getting project " + projectName, e));
                     }
-                    progress.worked(1);
+                } else {
+                    UnresolvedPathIndex.remove(projectName);
                 }
+                progress.worked(1);
                 if (progress.isCanceled())
                     return Status.CANCEL_STATUS;
             }
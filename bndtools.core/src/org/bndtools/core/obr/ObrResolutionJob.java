@@ -1,6 +1,20 @@
 package org.bndtools.core.obr;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -8,20 +22,89 @@ import org.eclipse.core.runtime.jobs.Job;
 
 import bndtools.Plugin;
 import bndtools.api.IBndModel;
+import bndtools.api.Requirement;
 
 public class ObrResolutionJob extends Job {
 
+    // The last successful resolution of each run file, with the inputs it was resolved from
+    private static final Map<IPath, CachedResult> lastResults = new HashMap<IPath, CachedResult>();
+
+    // Drops the results of run files that are deleted, or whose project is closed
+    private static final IResourceChangeListener runFileListener = new IResourceChangeListener() {
+        public void resourceChanged(IResourceChangeEvent event) {
+            IResourceDelta delta = event.getDelta();
+            if (delta == null)
+                return;
+            synchronized (lastResults) {
+                if (lastResults.isEmpty())
+                    return;
+                try {
+                    delta.accept(new IResourceDeltaVisitor() {
+                        public boolean visit(IResourceDelta delta) throws CoreException {
+                            if (delta.getKind() == IResourceDelta.REMOVED || (delta.getFlags() & IResourceDelta.OPEN) != 0) {
+                                evict(delta.getFullPath());
+                                return false;
+                            }
+                            return true;
+                        }
+                    });
+                } catch (CoreException e) {
+                    Plugin.logError("Error processing resource changes for cached OBR resolutions.", e);
+                    lastResults.clear();
+                }
+            }
+        }
+    };
+
     private final IFile runFile;
     private final IBndModel model;
 
     private ObrResolutionResult result;
 
+    private static class CachedResult {
+        final String fingerprint;
+        final List<Requirement> requirements;
+        final ObrResolutionResult result;
+
+        CachedResult(String fingerprint, List<Requirement> requirements, ObrResolutionResult result) {
+            this.fingerprint = fingerprint;
+            this.requirements = requirements;
+            this.result = result;
+        }
+    }
+
     public ObrResolutionJob(IFile runFile, IBndModel model) {
         super("OBR Resolution");
         this.runFile = runFile;
         this.model = model;
     }
 
+    public static void start() {
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(runFileListener, IResourceChangeEvent.POST_CHANGE);
+    }
+
+    public static void stop() {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(runFileListener);
+        clearCachedResults();
+    }
+
+    /**
+     * Discards the cached resolutions, e.g. because the repositories have
+     * been refreshed.
+     */
+    public static void clearCachedResults() {
+        synchronized (lastResults) {
+            lastResults.clear();
+        }
+    }
+
+    private static void evict(IPath path) {
+        for (Iterator<IPath> iter = lastResults.keySet().iterator(); iter.hasNext();) {
+            if (path.isPrefixOf(iter.next()))
+                iter.remove();
+        }
+    }
+
     public IStatus validateBeforeRun() {
         String runFramework = model.getRunFramework();
         if (runFramework == null)
@@ -33,9 +116,42 @@ public class ObrResolutionJob extends Job {
     @Override
     protected IStatus run(IProgressMonitor monitor) {
         ResolveOperation operation = new ResolveOperation(runFile, model);
+        IPath path = runFile.getFullPath();
+
+        // Skip the resolution if nothing that affects its result has changed
+        String fingerprint = null;
+        try {
+            fingerprint = operation.calculateFingerprint();
+        } catch (Exception e) {
+            Plugin.logError("Error calculating OBR resolution fingerprint for " + path, e);
+        }
+        List<Requirement> requirements = model.getRunRequire();
+        requirements = requirements != null ? new ArrayList<Requirement>(requirements) : Collections.<Requirement> emptyList();
+        if (fingerprint != null) {
+            synchronized (lastResults) {
+                CachedResult cached = lastResults.get(path);
+                if (cached != null && cached.fingerprint.equals(fingerprint)) {
+                    if (cached.requirements.equals(requirements)) {
+                        result = cached.result;
+                        return Status.OK_STATUS;
+                    }
+                    // Requirements were only added: re-resolve from the previous solution
+                    if (requirements.containsAll(cached.requirements))
+                        operation = new ResolveOperation(runFile, model, cached.result);
+                }
+            }
+        }
+
         operation.run(monitor);
         result = operation.getResult();
 
+        synchronized (lastResults) {
+            if (fingerprint != null && result.isResolved() && result.getStatus().isOK())
+                lastResults.put(path, new CachedResult(fingerprint, requirements, result));
+            else
+                lastResults.remove(path);
+        }
+
         return Status.OK_STATUS;
     }
 
@@ -4,7 +4,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -18,6 +21,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 
@@ -69,16 +73,37 @@ import bndtools.model.clauses.VersionedClause;
 
 public class ResolveOperation implements IRunnableWithProgress {
 
+    // Timeout in ms for checking whether a remote index has changed
+    private static final int FINGERPRINT_TIMEOUT = 5000;
+
     private final DataModelHelperImpl helper = new DataModelHelperImpl();
 
     private final IFile runFile;
     private final IBndModel model;
 
+    private final ObrResolutionResult previous;
+
     private ObrResolutionResult result = null;
 
     public ResolveOperation(IFile runFile, IBndModel model) {
+        this(runFile, model, null);
+    }
+
+    /**
+     * Creates an operation that re-resolves incrementally from the result of
+     * an earlier resolution of the same run file, when the requirements have
+     * only been added to since. The resources required by that result are
+     * seeded into the resolver, so that only the requirements they do not
+     * satisfy are searched for in the repositories. If the seed no longer fits
+     * the repositories or does not resolve, a full resolution is performed.
+     *
+     * @param previous
+     *            the earlier result, or null to always resolve in full.
+     */
+    public ResolveOperation(IFile runFile, IBndModel model, ObrResolutionResult previous) {
         this.runFile = runFile;
         this.model = model;
+        this.previous = previous;
     }
 
     public void run(IProgressMonitor monitor) {
@@ -143,10 +168,49 @@ public class ResolveOperation implements IRunnableWithProgress {
 
         repos.add(0, repoAdmin.getLocalRepository()); // BUG? Calling `resolver(Repository[])` excludes the local and system repos!
         repos.add(0, repoAdmin.getSystemRepository());
+
+        Resolver resolver;
+        try {
+            resolver = createResolver(repoAdmin, repos);
+        } catch (IOException e) {
+            status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error adding JRE package capabilities", e));
+            result = createErrorResult(status);
+            return;
+        }
+
+        // Try to resolve incrementally from the previous solution
+        List<Resource> seed = findSeed(repos);
+        if (seed != null) {
+            for (Resource resource : seed)
+                resolver.add(resource);
+            if (resolver.resolve()) {
+                List<Resource> required = new ArrayList<Resource>(seed);
+                required.addAll(filterGlobalResource(resolver.getRequiredResources()));
+                result = new ObrResolutionResult(true, Status.OK_STATUS, required, filterGlobalResource(resolver.getOptionalResources()), Arrays.asList(resolver.getUnsatisfiedRequirements()));
+                return;
+            }
+
+            // The seed is inconsistent with the new requirements: start again without it
+            try {
+                resolver = createResolver(repoAdmin, repos);
+            } catch (IOException e) {
+                status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error adding JRE package capabilities", e));
+                result = createErrorResult(status);
+                return;
+            }
+        }
+
+        boolean resolved = resolver.resolve();
+
+        result = new ObrResolutionResult(resolved, Status.OK_STATUS, filterGlobalResource(resolver.getRequiredResources()), filterGlobalResource(resolver.getOptionalResources()),
+                Arrays.asList(resolver.getUnsatisfiedRequirements()));
+    }
+
+    private Resolver createResolver(RepositoryAdminImpl repoAdmin, List<Repository> repos) throws IOException {
         Resolver resolver = repoAdmin.resolver(repos.toArray(new Repository[repos.size()]));
 
         // Add project builders
-        Set<Resource> projectBuildResources = addProjectBuildBundles(resolver);
+        addProjectBuildBundles(resolver);
 
         // Add EE capabilities
         EE ee = model.getEE();
@@ -158,13 +222,7 @@ public class ResolveOperation implements IRunnableWithProgress {
         }
 
         // Add JRE package capabilities
-        try {
-            addJREPackageCapabilities(resolver, ee);
-        } catch (IOException e) {
-            status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Error adding JRE package capabilities", e));
-            result = createErrorResult(status);
-            return;
-        }
+        addJREPackageCapabilities(resolver, ee);
 
         // HACK: add capabilities for usual framework services (not all frameworks declare these statically)
         String[] frameworkServices = new String[] { "org.osgi.service.packageadmin.PackageAdmin", "org.osgi.service.startlevel.StartLevel", "org.osgi.service.permissionadmin.PermissionAdmin" };
@@ -185,10 +243,121 @@ public class ResolveOperation implements IRunnableWithProgress {
             resolver.add(helper.requirement(req.getName(), req.getFilter()));
         }
 
-        boolean resolved = resolver.resolve();
+        return resolver;
+    }
 
-        result = new ObrResolutionResult(resolved, Status.OK_STATUS, filterGlobalResource(resolver.getRequiredResources()), filterGlobalResource(resolver.getOptionalResources()),
-                Arrays.asList(resolver.getUnsatisfiedRequirements()));
+    /**
+     * Finds the resources required by the previous result in the loaded
+     * repositories, or returns null if there is no previous result to seed
+     * from or any of its resources has gone from the repositories.
+     */
+    private List<Resource> findSeed(List<Repository> repos) {
+        if (previous == null || !previous.isResolved() || previous.getRequired().isEmpty())
+            return null;
+
+        Map<String, Resource> resourcesById = new HashMap<String, Resource>();
+        for (Repository repo : repos) {
+            Resource[] resources = repo.getResources();
+            if (resources != null) for (Resource resource : resources) {
+                if (resource.getId() != null)
+                    resourcesById.put(resource.getId(), resource);
+            }
+        }
+
+        List<Resource> seed = new ArrayList<Resource>(previous.getRequired().size());
+        for (Resource resource : previous.getRequired()) {
+            Resource current = resourcesById.get(resource.getId());
+            if (current == null)
+                return null;
+            seed.add(current);
+        }
+        return seed;
+    }
+
+    /**
+     * Calculates a digest of the inputs that determine the result of the
+     * resolution, other than the requirements: the run file, framework,
+     * execution environment and system packages, the OBR indexes in use, and
+     * the bundles built by the project. Local indexes contribute their
+     * timestamp and length, remote indexes the ETag and Last-Modified headers
+     * returned for a HEAD request. This is cheap compared with the resolution
+     * itself, as no index is loaded or parsed. Indexes referred to by other
+     * indexes are not examined.
+     *
+     * @return The digest, or null if a remote index cannot be checked for
+     *         changes, in which case the resolution must not be reused.
+     */
+    public String calculateFingerprint() throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+
+        updateDigest(md, runFile.getFullPath().toString());
+        updateDigest(md, model.getRunFramework());
+        updateDigest(md, String.valueOf(model.getEE()));
+
+        List<ExportedPackage> systemPackages = model.getSystemPackages();
+        if (systemPackages != null) for (ExportedPackage clause : systemPackages) {
+            updateDigest(md, clause.getName() + ":" + new TreeMap<String, String>(clause.getAttribs()));
+        }
+
+        for (OBRIndexProvider prov : loadIndexProviders()) {
+            for (URL indexUrl : prov.getOBRIndexes()) {
+                updateDigest(md, indexUrl.toExternalForm());
+                if ("file".equals(indexUrl.getProtocol())) {
+                    File file = new File(indexUrl.toURI());
+                    updateDigest(md, file.lastModified() + ":" + file.length());
+                } else {
+                    String validator = getRemoteValidator(indexUrl);
+                    if (validator == null)
+                        return null;
+                    updateDigest(md, validator);
+                }
+            }
+        }
+
+        if (Project.BNDFILE.equals(runFile.getName())) {
+            Project project = Workspace.getProject(runFile.getProject().getLocation().toFile());
+            for (Builder builder : project.getSubBuilders()) {
+                File file = new File(project.getTarget(), builder.getBsn() + ".jar");
+                updateDigest(md, file.getName() + ":" + file.lastModified() + ":" + file.length());
+            }
+        }
+
+        StringBuilder result = new StringBuilder();
+        for (byte b : md.digest())
+            result.append(String.format("%02x", b));
+        return result.toString();
+    }
+
+    /**
+     * Returns the ETag, Last-Modified and Content-Length headers of a remote
+     * index, or null if the index is unreachable or the server gives neither
+     * an ETag nor a Last-Modified header.
+     */
+    private static String getRemoteValidator(URL url) {
+        URLConnection connection = null;
+        try {
+            connection = url.openConnection();
+            connection.setConnectTimeout(FINGERPRINT_TIMEOUT);
+            connection.setReadTimeout(FINGERPRINT_TIMEOUT);
+            if (connection instanceof HttpURLConnection)
+                ((HttpURLConnection) connection).setRequestMethod("HEAD");
+
+            String etag = connection.getHeaderField("ETag");
+            long lastModified = connection.getLastModified();
+            if (etag == null && lastModified == 0)
+                return null;
+            return etag + ":" + lastModified + ":" + connection.getContentLength();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (connection instanceof HttpURLConnection)
+                ((HttpURLConnection) connection).disconnect();
+        }
+    }
+
+    private static void updateDigest(MessageDigest md, String s) throws Exception {
+        md.update(String.valueOf(s).getBytes("UTF-8"));
+        md.update((byte) 0);
     }
 
     private void addRepository(URL index, List<? super Repository> repos, File cacheDir) throws Exception {
@@ -0,0 +1,309 @@
+package org.bndtools.core.obr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.felix.bundlerepository.Capability;
+import org.apache.felix.bundlerepository.Repository;
+import org.apache.felix.bundlerepository.Resource;
+import org.osgi.framework.Version;
+
+/**
+ * In-memory full-text index over the resources of a single OBR repository.
+ * Symbolic names, presentation names, exported packages and categories are
+ * indexed as lower-cased terms; substring queries are answered from trigram
+ * postings over the distinct terms, and matches are ranked by the field and
+ * position in which the query was found.
+ * <p>
+ * Instances are immutable once constructed and may be queried from any
+ * thread.
+ */
+public class ResourceSearchIndex {
+
+    private static final int FIELD_BSN = 0;
+    private static final int FIELD_NAME = 1;
+    private static final int FIELD_PACKAGE = 2;
+    private static final int FIELD_CATEGORY = 3;
+    private static final int FIELD_BITS = 2;
+    private static final int FIELD_MASK = (1 << FIELD_BITS) - 1;
+
+    private static final int[] FIELD_SCORES = new int[] { 400, 300, 200, 100 };
+
+    private static final int SCORE_EXACT = 90;
+    private static final int SCORE_PREFIX = 60;
+    private static final int SCORE_SEGMENT_PREFIX = 40;
+    private static final int SCORE_SUBSTRING = 20;
+
+    private static final int GRAM = 3;
+
+    private static final String NO_BSN = "no-symbolic-name";
+
+    private final Repository repository;
+    private final Resource[] resources;
+    /** Per resource: the symbolic name used for ordering equally ranked results. */
+    private final String[] sortNames;
+
+    /** Distinct lower-cased terms. */
+    private final String[] terms;
+    /** Per term: the resources containing it, each encoded as (resource index << FIELD_BITS | field). */
+    private final int[][] termPostings;
+    /** Trigram to ascending ids of the terms that contain it. */
+    private final Map<String, int[]> grams;
+
+    public ResourceSearchIndex(Repository repository) {
+        this.repository = repository;
+
+        Resource[] repoResources = repository.getResources();
+        resources = repoResources != null ? repoResources : new Resource[0];
+        sortNames = new String[resources.length];
+
+        Map<String, Integer> termIds = new HashMap<String, Integer>();
+        List<String> termList = new ArrayList<String>();
+        List<IntList> postingList = new ArrayList<IntList>();
+
+        for (int i = 0; i < resources.length; i++) {
+            Resource resource = resources[i];
+            String bsn = resource.getSymbolicName();
+            sortNames[i] = (bsn != null ? bsn : NO_BSN).toLowerCase();
+
+            addTerm(resource.getSymbolicName(), i, FIELD_BSN, termIds, termList, postingList);
+            addTerm(resource.getPresentationName(), i, FIELD_NAME, termIds, termList, postingList);
+
+            Capability[] capabilities = resource.getCapabilities();
+            if (capabilities != null) {
+                for (Capability capability : capabilities) {
+                    if (Capability.PACKAGE.equals(capability.getName())) {
+                        Object pkg = capability.getPropertiesAsMap().get(Capability.PACKAGE);
+                        if (pkg != null)
+                            addTerm(pkg.toString(), i, FIELD_PACKAGE, termIds, termList, postingList);
+                    }
+                }
+            }
+
+            String[] categories = resource.getCategories();
+            if (categories != null) {
+                for (String category : categories)
+                    addTerm(category, i, FIELD_CATEGORY, termIds, termList, postingList);
+            }
+        }
+
+        terms = termList.toArray(new String[termList.size()]);
+        termPostings = new int[terms.length][];
+        for (int i = 0; i < terms.length; i++)
+            termPostings[i] = postingList.get(i).toArray();
+
+        Map<String, IntList> gramLists = new HashMap<String, IntList>();
+        for (int termId = 0; termId < terms.length; termId++) {
+            String term = terms[termId];
+            for (int j = 0; j + GRAM <= term.length(); j++) {
+                String gram = term.substring(j, j + GRAM);
+                IntList list = gramLists.get(gram);
+                if (list == null) {
+                    list = new IntList();
+                    gramLists.put(gram, list);
+                }
+                // Term ids are added in ascending order, so a duplicate can only be the last entry
+                if (list.size == 0 || list.get(list.size - 1) != termId)
+                    list.add(termId);
+            }
+        }
+        grams = new HashMap<String, int[]>(gramLists.size() * 4 / 3 + 1);
+        for (Entry<String, IntList> entry : gramLists.entrySet())
+            grams.put(entry.getKey(), entry.getValue().toArray());
+    }
+
+    private static void addTerm(String value, int resourceIndex, int field, Map<String, Integer> termIds, List<String> termList, List<IntList> postingList) {
+        if (value == null)
+            return;
+        String term = value.trim().toLowerCase();
+        if (term.length() == 0)
+            return;
+
+        Integer termId = termIds.get(term);
+        IntList postings;
+        if (termId == null) {
+            termIds.put(term, termList.size());
+            termList.add(term);
+            postings = new IntList();
+            postingList.add(postings);
+        } else {
+            postings = postingList.get(termId);
+        }
+        postings.add((resourceIndex << FIELD_BITS) | field);
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public int size() {
+        return resources.length;
+    }
+
+    /**
+     * Adds every resource matching the query to the supplied map, keeping the
+     * highest score seen for each resource. An empty query matches all
+     * resources with a score of zero.
+     */
+    void search(String query, Map<Resource, Hit> scores) {
+        String q = query != null ? query.trim().toLowerCase() : "";
+        if (q.length() == 0) {
+            for (int i = 0; i < resources.length; i++)
+                addScore(scores, i, 0);
+            return;
+        }
+
+        if (q.length() < GRAM) {
+            for (int termId = 0; termId < terms.length; termId++)
+                scoreTerm(termId, q, scores);
+            return;
+        }
+
+        // Use the rarest trigram of the query as the candidate set; candidates are then verified.
+        int[] candidates = null;
+        for (int j = 0; j + GRAM <= q.length(); j++) {
+            int[] postings = grams.get(q.substring(j, j + GRAM));
+            if (postings == null)
+                return;
+            if (candidates == null || postings.length < candidates.length)
+                candidates = postings;
+        }
+        for (int termId : candidates)
+            scoreTerm(termId, q, scores);
+    }
+
+    private void scoreTerm(int termId, String q, Map<Resource, Hit> scores) {
+        String term = terms[termId];
+        int pos = term.indexOf(q);
+        if (pos < 0)
+            return;
+
+        int matchScore;
+        if (pos == 0)
+            matchScore = term.length() == q.length() ? SCORE_EXACT : SCORE_PREFIX;
+        else if (isSegmentStart(term, pos))
+            matchScore = SCORE_SEGMENT_PREFIX;
+        else
+            matchScore = SCORE_SUBSTRING;
+
+        for (int posting : termPostings[termId])
+            addScore(scores, posting >>> FIELD_BITS, FIELD_SCORES[posting & FIELD_MASK] + matchScore);
+    }
+
+    private static boolean isSegmentStart(String term, int pos) {
+        if (pos == 0)
+            return true;
+        char c = term.charAt(pos - 1);
+        return c == '.' || c == '-' || c == '_' || Character.isWhitespace(c);
+    }
+
+    private void addScore(Map<Resource, Hit> scores, int resourceIndex, int score) {
+        Resource resource = resources[resourceIndex];
+        Hit hit = scores.get(resource);
+        if (hit == null)
+            scores.put(resource, new Hit(resource, score, sortNames[resourceIndex]));
+        else if (hit.score < score)
+            hit.score = score;
+    }
+
+    /**
+     * Queries several indexes and returns the matching resources, best matches
+     * first; equally ranked resources are ordered by symbolic name and then by
+     * descending version.
+     */
+    public static Resource[] search(Collection<ResourceSearchIndex> indexes, String query) {
+        Map<Resource, Hit> scores = new IdentityHashMap<Resource, Hit>();
+        for (ResourceSearchIndex index : indexes)
+            index.search(query, scores);
+
+        Hit[] hits = scores.values().toArray(new Hit[scores.size()]);
+        Arrays.sort(hits);
+
+        Resource[] result = new Resource[hits.length];
+        for (int i = 0; i < hits.length; i++)
+            result[i] = hits[i].resource;
+        return result;
+    }
+
+    /**
+     * Returns an index for each of the specified repositories, reusing the
+     * entries of {@code cache} where possible and adding newly built indexes
+     * to it. Indexes for repositories no longer present are discarded.
+     */
+    public static List<ResourceSearchIndex> getIndexes(Repository[] repositories, Map<Repository, ResourceSearchIndex> cache) {
+        if (repositories == null)
+            return Collections.emptyList();
+
+        List<ResourceSearchIndex> result = new ArrayList<ResourceSearchIndex>(repositories.length);
+        synchronized (cache) {
+            cache.keySet().retainAll(Arrays.asList(repositories));
+            for (Repository repository : repositories) {
+                ResourceSearchIndex index = cache.get(repository);
+                if (index == null) {
+                    index = new ResourceSearchIndex(repository);
+                    cache.put(repository, index);
+                }
+                result.add(index);
+            }
+        }
+        return result;
+    }
+
+    private static final class Hit implements Comparable<Hit> {
+        final Resource resource;
+        final String sortName;
+        int score;
+
+        Hit(Resource resource, int score, String sortName) {
+            this.resource = resource;
+            this.score = score;
+            this.sortName = sortName;
+        }
+
+        public int compareTo(Hit other) {
+            if (score != other.score)
+                return score > other.score ? -1 : 1;
+
+            int diff = sortName.compareTo(other.sortName);
+            if (diff != 0)
+                return diff;
+
+            Version v1 = resource.getVersion();
+            Version v2 = other.resource.getVersion();
+            if (v1 == null || v2 == null)
+                return 0;
+            return v2.compareTo(v1);
+        }
+    }
+
+    private static final class IntList {
+        int[] data = new int[4];
+        int size = 0;
+
+        void add(int value) {
+            if (size == data.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(data, 0, grown, 0, size);
+                data = grown;
+            }
+            data[size++] = value;
+        }
+
+        int get(int index) {
+            return data[index];
+        }
+
+        int[] toArray() {
+            int[] result = new int[size];
+            System.arraycopy(data, 0, result, 0, size);
+            return result;
+        }
+    }
+}
@@ -537,8 +537,13 @@ public class JarDiff {
 		return ret;
 	}
 
-	public static JarDiff createJarDiff(Project project, RepositoryPlugin baselineRepository, String bsn) {
-		try {
+	/**
+	 * Builds the named sub-bundle of the project and compares it against the
+	 * baseline repository.
+	 *
+	 * @return the diff, or null if the project has no such sub-bundle.
+	 */
+	public static JarDiff createJarDiff(Project project, RepositoryPlugin baselineRepository, String bsn) throws Exception {
 		List<Builder> builders = project.getBuilder(null).getSubBuilders();
 		Builder builder = null;
 		for (Builder b : builders) {
@@ -548,45 +553,49 @@ public class JarDiff {
 			}
 		}
 		if (builder != null) {
-			Jar jar = builder.build();
+			return createJarDiff(builder, builder.build(), baselineRepository);
+		}
+		return null;
+	}
 
-			String bundleVersion = builder.getProperty(Constants.BUNDLE_VERSION);
-			if (bundleVersion == null) {
-				builder.setProperty(Constants.BUNDLE_VERSION, "0.0.0");
-				bundleVersion = "0.0.0";
-			}
+	/**
+	 * Compares a bundle already built by the given builder against the
+	 * baseline repository.
+	 */
+	public static JarDiff createJarDiff(Builder builder, Jar jar, RepositoryPlugin baselineRepository) throws Exception {
+		String bundleVersion = builder.getProperty(Constants.BUNDLE_VERSION);
+		if (bundleVersion == null) {
+			builder.setProperty(Constants.BUNDLE_VERSION, "0.0.0");
+			bundleVersion = "0.0.0";
+		}
 
-			String unqualifiedVersion = removeVersionQualifier(bundleVersion);
-			Version projectVersion = Version.parseVersion(unqualifiedVersion);
+		String unqualifiedVersion = removeVersionQualifier(bundleVersion);
+		Version projectVersion = Version.parseVersion(unqualifiedVersion);
 
-			String symbolicName = jar.getManifest().getMainAttributes().getValue(Constants.BUNDLE_SYMBOLICNAME);
-			if (symbolicName == null) {
-				symbolicName = jar.getName().substring(0, jar.getName().lastIndexOf('-'));
-			}
+		String symbolicName = jar.getManifest().getMainAttributes().getValue(Constants.BUNDLE_SYMBOLICNAME);
+		if (symbolicName == null) {
+			symbolicName = jar.getName().substring(0, jar.getName().lastIndexOf('-'));
+		}
 
-			Jar currentJar = null;
-			VersionRange range = new VersionRange("[" + projectVersion.toString() + "," + projectVersion.toString() + "]");
-			try {
-				if (baselineRepository != null) {
-					File[] files =  baselineRepository.get(symbolicName, range.toString());
-					if (files != null && files.length > 0) {
-						currentJar = new Jar(files[0]);
-					}
+		Jar currentJar = null;
+		VersionRange range = new VersionRange("[" + projectVersion.toString() + "," + projectVersion.toString() + "]");
+		try {
+			if (baselineRepository != null) {
+				File[] files =  baselineRepository.get(symbolicName, range.toString());
+				if (files != null && files.length > 0) {
+					currentJar = new Jar(files[0]);
 				}
-			} catch (Exception e) {
-				e.printStackTrace();
 			}
-
-			JarDiff diff = new JarDiff(jar, currentJar);
-			diff.setBaselineRepository(baselineRepository);
-			diff.compare();
-			diff.calculatePackageVersions();
-			return diff;
-		}
-		} catch (Exception e1) {
-			e1.printStackTrace();
+		} catch (Exception e) {
+			// Compare without a baseline rather than fail the release
+			builder.warning("Error getting the baseline of %s %s: %s", symbolicName, range, e);
 		}
-		return null;
+
+		JarDiff diff = new JarDiff(jar, currentJar);
+		diff.setBaselineRepository(baselineRepository);
+		diff.compare();
+		diff.calculatePackageVersions();
+		return diff;
 	}
 	
 	public void calculatePackageVersions() {
@@ -12,11 +12,6 @@ package bndtools.jareditor.internal;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Enumeration;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
 import org.eclipse.core.resources.IFile;
@@ -32,10 +27,13 @@ import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerCell;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Text;
 import org.eclipse.swt.widgets.Tree;
 import org.eclipse.ui.IFileEditorInput;
 import org.eclipse.ui.forms.AbstractFormPart;
@@ -46,11 +44,19 @@ import org.eclipse.ui.plugin.AbstractUIPlugin;
 
 public class JARContentTreePart extends AbstractFormPart {
 
+	/** Filtered trees with no more entries than this are expanded fully. */
+	private static final int AUTO_EXPAND_LIMIT = 200;
+
 	private final IManagedForm managedForm;
 
+	private final Text filterField;
 	private final Tree tree;
 	private final TreeViewer viewer;
 
+	private ZipIndex index = null;
+	private ZipTreeNode root = null;
+	private String filterText = "";
+
 
 	public JARContentTreePart(Composite parent, IManagedForm managedForm) {
 	    this.managedForm = managedForm;
@@ -59,9 +65,12 @@ public class JARContentTreePart extends AbstractFormPart {
 	    Section section = toolkit.createSection(parent, Section.TITLE_BAR | Section.EXPANDED);
 
 		section.setText("Content Tree");
-		tree = toolkit.createTree(section, SWT.FULL_SELECTION | SWT.SINGLE);
+		Composite composite = toolkit.createComposite(section);
+		filterField = toolkit.createText(composite, "", SWT.SEARCH | SWT.ICON_CANCEL);
+		filterField.setMessage("Filter entries");
+		tree = toolkit.createTree(composite, SWT.FULL_SELECTION | SWT.SINGLE);
 		tree.setData(FormToolkit.KEY_DRAW_BORDER, FormToolkit.TREE_BORDER);
-		section.setClient(tree);
+		section.setClient(composite);
 		toolkit.paintBordersFor(section);
 
 		viewer = new TreeViewer(tree);
@@ -75,8 +84,17 @@ public class JARContentTreePart extends AbstractFormPart {
 			}
 		});
 
+		filterField.addModifyListener(new ModifyListener() {
+			public void modifyText(ModifyEvent e) {
+				setFilter(filterField.getText());
+			}
+		});
+
 		parent.setLayout(new GridLayout());
 		section.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
+		composite.setLayout(new GridLayout());
+		filterField.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		tree.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true));
 	}
 
 	@Override
@@ -97,6 +115,26 @@ public class JARContentTreePart extends AbstractFormPart {
 		return false;
 	}
 
+	private void setFilter(String text) {
+		filterText = text.trim();
+		if (index == null)
+			return;
+		root = createRoot(index, filterText);
+		tree.setRedraw(false);
+		try {
+			viewer.refresh();
+			if (filterText.length() > 0 && root.getEntryCount() <= AUTO_EXPAND_LIMIT)
+				viewer.expandAll();
+		} finally {
+			tree.setRedraw(true);
+		}
+	}
+
+	private static ZipTreeNode createRoot(ZipIndex index, String filter) {
+		int[] view = filter.length() == 0 ? index.all() : index.filter(filter);
+		return ZipTreeNode.createRoot(index, view);
+	}
+
     private static class JARTreeLabelProvider extends StyledCellLabelProvider {
 
         private final Image folderImg = AbstractUIPlugin.imageDescriptorFromPlugin(Constants.PLUGIN_ID, "/icons/fldr_obj.gif").createImage();
@@ -134,37 +172,31 @@ public class JARContentTreePart extends AbstractFormPart {
 
 	private class JARTreeContentProvider implements ITreeContentProvider {
 
-		Map<String, ZipTreeNode> entryMap;
-
 		public Object[] getChildren(Object parentElement) {
 			ZipTreeNode parentNode = (ZipTreeNode) parentElement;
-			return parentNode.getChildren().toArray();
+			return parentNode.getChildren();
 		}
 
 		public Object getParent(Object element) {
-			return ((ZipTreeNode) element).getParent();
+			ZipTreeNode parent = ((ZipTreeNode) element).getParent();
+			return parent == root ? null : parent;
 		}
 		public boolean hasChildren(Object element) {
 			return ((ZipTreeNode) element).hasChildren();
 		}
 		public Object[] getElements(Object inputElement) {
-			return entryMap.values().toArray();
+			return root != null ? root.getChildren() : new Object[0];
 		}
 		public void dispose() {
 		}
 		public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
-			entryMap = new LinkedHashMap<String, ZipTreeNode>();
+			index = null;
+			root = null;
 			if(newInput instanceof IFileEditorInput) {
 				IFile file = ((IFileEditorInput) newInput).getFile();
 				try {
-					File ioFile = new File(file.getLocationURI());
-					JarFile jarFile = new JarFile(ioFile);
-
-					Enumeration<JarEntry> entries = jarFile.entries();
-					while (entries.hasMoreElements()) {
-						ZipTreeNode.addEntry(entryMap, entries.nextElement());
-					}
-					jarFile.close();
+					index = ZipIndex.open(new File(file.getLocationURI()));
+					root = createRoot(index, filterText);
 				} catch (IOException e) {
 					Status status = new Status(IStatus.ERROR, Constants.PLUGIN_ID, 0, "I/O error reading JAR file contents", e);
 					ErrorDialog.openError(managedForm.getForm().getShell(), "Error", null, status);
@@ -173,4 +205,3 @@ public class JARContentTreePart extends AbstractFormPart {
 		}
 	}
 }
-
@@ -1,6 +1,5 @@
 package bndtools.jareditor.internal;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
@@ -9,9 +8,7 @@ import java.nio.charset.Charset;
 import java.util.Iterator;
 import java.util.SortedMap;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
-import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -22,6 +19,8 @@ import org.eclipse.jface.resource.JFaceResources;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.custom.StyledTextContent;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.events.SelectionListener;
@@ -33,9 +32,7 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.IEditorPart;
-import org.eclipse.ui.IFileEditorInput;
 import org.eclipse.ui.forms.AbstractFormPart;
 import org.eclipse.ui.forms.IFormPart;
 import org.eclipse.ui.forms.IPartSelectionListener;
@@ -44,6 +41,8 @@ import org.eclipse.ui.forms.events.ExpansionEvent;
 import org.eclipse.ui.forms.widgets.FormToolkit;
 import org.eclipse.ui.forms.widgets.Section;
 
+import bndtools.utils.SWTConcurrencyUtil;
+
 public class JAREntryPart extends AbstractFormPart implements IPartSelectionListener {
 
     private static final String DEFAULT_CHARSET = "UTF-8";
@@ -51,9 +50,11 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
     private final IEditorPart editor;
 
     private Font textFont;
-    private Text text;
-    private ZipEntry zipEntry = null;
+    private StyledText text;
+    private StyledTextContent defaultContent;
+    private ZipTreeNode node = null;
     private Job displayJob = null;
+    private PagedEntryContent pagedContent = null;
 
     private boolean showAsText = true;
     private final String[] charsets;
@@ -80,8 +81,10 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
         Section textSection = toolkit.createSection(parent, Section.TITLE_BAR | Section.EXPANDED);
         textSection.setText("Entry Content");
         Composite textComposite = toolkit.createComposite(textSection);
-        text = toolkit.createText(textComposite, "", SWT.MULTI | SWT.V_SCROLL | SWT.H_SCROLL | SWT.READ_ONLY);
+        text = new StyledText(textComposite, SWT.MULTI | SWT.V_SCROLL | SWT.H_SCROLL | SWT.READ_ONLY);
+        toolkit.adapt(text);
         text.setFont(textFont);
+        defaultContent = text.getContent();
         textSection.setClient(textComposite);
 
         Section encodingSection = toolkit.createSection(parent, Section.TITLE_BAR | Section.EXPANDED);
@@ -150,19 +153,13 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
     }
 
     public void selectionChanged(IFormPart part, ISelection selection) {
+        ZipTreeNode selected = null;
         if(selection instanceof IStructuredSelection) {
             Object element = ((IStructuredSelection) selection).getFirstElement();
-
-            ZipEntry entry = null;
-            if(element instanceof ZipEntry)
-                entry = (ZipEntry) element;
-            else if(element instanceof ZipTreeNode)
-                entry = ((ZipTreeNode) element).getZipEntry();
-
-            this.zipEntry = entry;
-        } else {
-            this.zipEntry = null;
+            if(element instanceof ZipTreeNode)
+                selected = (ZipTreeNode) element;
         }
+        this.node = selected;
         loadContent();
     }
 
@@ -176,27 +173,54 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
         throw new IllegalArgumentException("Unknown charset name: " + selectedCharsetName);
     }
 
-    private void loadContent() {
+    @Override
+    public void dispose() {
+        clearContent();
+        textFont.dispose();
+        super.dispose();
+    }
+
+    private void clearContent() {
         if(displayJob != null && displayJob.getState() != Job.NONE)
             displayJob.cancel();
+        displayJob = null;
 
-        if(zipEntry != null && !zipEntry.isDirectory()) {
-            final IFile file = ((IFileEditorInput) editor.getEditorInput()).getFile();
-            final Display display = text.getDisplay();
+        if(pagedContent != null) {
+            pagedContent.dispose();
+            pagedContent = null;
+        }
+    }
+
+    private void loadContent() {
+        clearContent();
+
+        ZipEntry zipEntry = node != null ? node.getZipEntry() : null;
+        if(zipEntry == null || zipEntry.isDirectory()) {
+            setContent("");
+            return;
+        }
+
+        final ZipIndex index = node.getIndex();
+        final int entry = node.getEntryIndex();
+        final String charset = charsets[selectedCharset];
+        final Display display = text.getDisplay();
+
+        if(!showAsText || PagedEntryContent.supportsEncoding(charset)) {
+            // Page through the entry, so that it is never held in memory as a whole
+            pagedContent = new PagedEntryContent(index, entry, showAsText ? charset : null);
+            text.setContent(pagedContent);
+            text.setFont(textFont);
+            displayJob = pagedContent.createIndexJob(display);
+        } else {
+            final ZipEntry textEntry = zipEntry;
             displayJob = new Job("Load zip content") {
                 @Override
                 protected IStatus run(IProgressMonitor monitor) {
-                    File ioFile = new File(file.getLocationURI());
-                    ZipFile zipFile = null;
                     try {
-                        zipFile = new ZipFile(ioFile);
                         final StringWriter writer = new StringWriter();
-                        if(showAsText)
-                            readAsText(zipFile, zipEntry, charsets[selectedCharset], writer, 1024 * 20, monitor);
-                        else
-                            readAsHex(zipFile, zipEntry, writer, 1024 * 10, monitor);
+                        readAsText(index, entry, textEntry, charset, writer, 1024 * 20, monitor);
 
-                        display.asyncExec(new Runnable() {
+                        SWTConcurrencyUtil.execForDisplay(display, new Runnable() {
                             public void run() {
                                 setContent(writer.toString());
                             }
@@ -204,35 +228,23 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
 
                         return Status.OK_STATUS;
                     } catch (IOException e) {
-                        Status status = new Status(IStatus.ERROR, Constants.PLUGIN_ID, 0, "I/O error reading JAR file contents", e);
-                        //ErrorDialog.openError(getManagedForm().getForm().getShell(), "Error", null, status);
-                        return status;
-                    } finally {
-                        try {
-                            if(zipFile != null) zipFile.close();
-                        } catch (IOException e) {
-                            // TODO Auto-generated catch block
-                            e.printStackTrace();
-                        }
+                        return new Status(IStatus.ERROR, Constants.PLUGIN_ID, 0, "I/O error reading JAR file contents", e);
                     }
                 }
             };
-
-            displayJob.schedule();
-        } else {
-            setContent("");
         }
+        displayJob.schedule();
     }
 
     private void setContent(String content) {
         if (text != null && !text.isDisposed()) {
+            if (text.getContent() != defaultContent)
+                text.setContent(defaultContent);
             text.setText(content);
             text.setFont(textFont);
         }
     }
 
-    private static final String pseudo[] = { "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f" };
-
     private static SubMonitor createProgressMonitor(ZipEntry entry, long limit, IProgressMonitor monitor) {
         SubMonitor progress;
         long size = entry.getSize();
@@ -245,9 +257,9 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
         return progress;
     }
 
-    private static void readAsText(ZipFile zipFile, ZipEntry entry, String encoding, Writer out, long limit, IProgressMonitor monitor) throws IOException {
-        SubMonitor progress = createProgressMonitor(entry, limit, monitor);
-        InputStream stream = zipFile.getInputStream(entry);
+    private static void readAsText(ZipIndex index, int entry, ZipEntry zipEntry, String encoding, Writer out, long limit, IProgressMonitor monitor) throws IOException {
+        SubMonitor progress = createProgressMonitor(zipEntry, limit, monitor);
+        InputStream stream = index.openStream(entry);
         try {
             long total = 0;
 
@@ -270,42 +282,4 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
             stream.close();
         }
     }
-
-    private static void readAsHex(ZipFile zipFile, ZipEntry entry, Writer out, long limit, IProgressMonitor monitor) throws IOException {
-        SubMonitor progress = createProgressMonitor(entry, limit, monitor);
-
-        InputStream stream = zipFile.getInputStream(entry);
-        try {
-            byte[] buffer = new byte[1024];
-            long total = 0;
-
-            long charsWritten = 0;
-            while(true) {
-                if(progress.isCanceled())
-                    return;
-                int bytesRead = stream.read(buffer, 0, 1024);
-                if(bytesRead < 0) break;
-
-                byte ch;
-                for(int i=0; i<bytesRead; i++) {
-                    ch = (byte) (buffer[i] & 0xf0); // strip off high nibble
-                    ch = (byte) (ch >>> 4); // shift bits down
-                    ch = (byte) (ch & 0x0f);
-                    out.write(pseudo[ch]); // Convert to a string character
-                    ch = (byte) (buffer[i] & 0x0F); // Strip off low nibble
-                    out.write(pseudo[ch]); // convert the nibble to a String Character
-                    out.write(' ');
-                    charsWritten += 3;
-                    if(charsWritten % 75 == 0) out.write('\n');
-                }
-
-                total += bytesRead;
-                progress.worked(bytesRead);
-                if (limit >= 0 && total >= limit)
-                    return;
-            }
-        } finally {
-            stream.close();
-        }
-    }
 }
@@ -0,0 +1,506 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Neil Bartlett.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Neil Bartlett - initial API and implementation
+ *******************************************************************************/
+package bndtools.jareditor.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.custom.StyledTextContent;
+import org.eclipse.swt.custom.TextChangeListener;
+import org.eclipse.swt.custom.TextChangedEvent;
+import org.eclipse.swt.custom.TextChangingEvent;
+import org.eclipse.swt.widgets.Display;
+
+import bndtools.utils.SWTConcurrencyUtil;
+
+/**
+ * Read-only text content showing a ZIP entry as text or as a hex dump, for
+ * display in a {@code StyledText}. The entry is streamed, never held in
+ * memory: a background job scans it once to build the line index, copying the
+ * uncompressed bytes to a temporary file, and lines are rendered on demand
+ * from a small window of pages read back from that file. Lines become visible
+ * in the widget as the index grows.
+ * <p>
+ * Every line but the last is exposed with a single {@code '\n'} delimiter,
+ * whatever its terminator in the entry. Overlong lines are split, and the
+ * parts are separated by a delimiter that is not in the entry.
+ */
+class PagedEntryContent implements StyledTextContent {
+
+    private static final int PAGE_SIZE = 32 * 1024;
+    private static final int MAX_PAGES = 16;
+    private static final int MAX_LINE_BYTES = 4096;
+    private static final long PUBLISH_INTERVAL = 200;
+
+    private static final int HEX_BYTES_PER_LINE = 16;
+    private static final int HEX_LINE_LENGTH = 8 + 2 + HEX_BYTES_PER_LINE * 3 + 1 + HEX_BYTES_PER_LINE;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final ZipIndex index;
+    private final int entry;
+    private final String encoding;
+    private final boolean singleByte;
+    private final boolean utf8;
+
+    private final List<TextChangeListener> listeners = new ArrayList<TextChangeListener>();
+
+    // Window of pages read from the spill file
+    @SuppressWarnings("serial")
+    private final Map<Long, byte[]> pages = new LinkedHashMap<Long, byte[]>(MAX_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    // Uncompressed content of the entry, written by the indexing job
+    private File spillFile = null;
+    private RandomAccessFile spill = null;
+    private boolean disposed = false;
+
+    // Line index, written by the indexing job. Text only: element i holds the
+    // start of line i, up to and including the line after the last complete one.
+    // Character offsets count one delimiter character per line.
+    private long[] lineByteStart = new long[1024];
+    private int[] lineCharStart = new int[1024];
+    private int indexedLines = 0;
+    private long indexedBytes = 0;
+    private boolean indexComplete = false;
+
+    // State visible to the widget, only accessed in the UI thread
+    private int publishedLines = 0;
+    private int publishedChars = 0;
+    private boolean publishedComplete = false;
+    private String finalLine = "";
+
+    /**
+     * @param encoding
+     *            the character encoding of the entry, or {@code null} to show
+     *            it as a hex dump.
+     */
+    PagedEntryContent(ZipIndex index, int entry, String encoding) {
+        this.index = index;
+        this.entry = entry;
+        this.encoding = encoding;
+        this.singleByte = encoding != null && Charset.forName(encoding).newEncoder().maxBytesPerChar() <= 1.0f;
+        this.utf8 = encoding != null && Charset.forName(encoding).name().equals("UTF-8");
+    }
+
+    /**
+     * Returns whether entries in the encoding can be split into lines at
+     * newline bytes, i.e. whether the encoding is ASCII-compatible.
+     */
+    static boolean supportsEncoding(String encoding) {
+        try {
+            byte[] newline = "\n".getBytes(encoding);
+            byte[] a = "a".getBytes(encoding);
+            return newline.length == 1 && newline[0] == '\n' && a.length == 1 && a[0] == 'a';
+        } catch (UnsupportedEncodingException e) {
+            return false;
+        }
+    }
+
+    private boolean isHex() {
+        return encoding == null;
+    }
+
+    /**
+     * Creates the job that builds the line index and publishes the indexed
+     * lines to the widget in the given display.
+     */
+    Job createIndexJob(final Display display) {
+        Job job = new Job("Load zip content") {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    buildIndex(display, monitor);
+                    return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+                } catch (IOException e) {
+                    return new Status(IStatus.ERROR, Constants.PLUGIN_ID, 0, "I/O error reading JAR file contents", e);
+                }
+            }
+        };
+        job.setSystem(true);
+        return job;
+    }
+
+    private void buildIndex(Display display, IProgressMonitor monitor) throws IOException {
+        synchronized (this) {
+            if (disposed)
+                return;
+            spillFile = File.createTempFile("bndtools-entry", ".tmp");
+            spill = new RandomAccessFile(spillFile, "rw");
+        }
+
+        InputStream stream = index.openStream(entry);
+        try {
+            byte[] buffer = new byte[PAGE_SIZE];
+            byte[] line = new byte[256];
+            int lineLength = 0;
+            long position = 0;
+            long lineStart = 0;
+            byte previous = 0;
+            long lastPublished = System.currentTimeMillis();
+
+            int read;
+            while ((read = stream.read(buffer)) > 0) {
+                if (monitor.isCanceled())
+                    return;
+                synchronized (this) {
+                    if (spill == null)
+                        return;
+                    spill.seek(indexedBytes);
+                    spill.write(buffer, 0, read);
+
+                    if (isHex()) {
+                        position += read;
+                        indexedBytes = position;
+                        indexedLines = (int) (position / HEX_BYTES_PER_LINE);
+                    } else {
+                        for (int i = 0; i < read; i++) {
+                            byte b = buffer[i];
+                            // Split overlong lines, but not inside a UTF-8 sequence or a CRLF
+                            if (position - lineStart >= MAX_LINE_BYTES && b != '\n' && !(utf8 && (b & 0xC0) == 0x80)) {
+                                addLine(position, line, lineLength, 0);
+                                lineStart = position;
+                                lineLength = 0;
+                            }
+                            if (!singleByte) {
+                                if (lineLength == line.length) {
+                                    byte[] grown = new byte[line.length * 2];
+                                    System.arraycopy(line, 0, grown, 0, lineLength);
+                                    line = grown;
+                                }
+                                line[lineLength] = b;
+                            }
+                            lineLength++;
+                            position++;
+                            if (b == '\n') {
+                                addLine(position, line, lineLength, lineLength > 1 && previous == '\r' ? 2 : 1);
+                                lineStart = position;
+                                lineLength = 0;
+                            }
+                            previous = b;
+                        }
+                        indexedBytes = position;
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastPublished > PUBLISH_INTERVAL) {
+                    lastPublished = now;
+                    schedulePublish(display);
+                }
+            }
+
+            synchronized (this) {
+                indexComplete = true;
+            }
+            schedulePublish(display);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Adds a line ending at the given position, whose last bytes are a
+     * terminator of the given length. The terminator is exposed as a single
+     * delimiter character.
+     */
+    private void addLine(long end, byte[] line, int lineLength, int terminatorLength) throws UnsupportedEncodingException {
+        int textLength = lineLength - terminatorLength;
+        int chars = (singleByte ? textLength : new String(line, 0, textLength, encoding).length()) + 1;
+        if (indexedLines + 1 == lineByteStart.length) {
+            long[] newByteStart = new long[lineByteStart.length * 2];
+            System.arraycopy(lineByteStart, 0, newByteStart, 0, lineByteStart.length);
+            lineByteStart = newByteStart;
+            int[] newCharStart = new int[lineCharStart.length * 2];
+            System.arraycopy(lineCharStart, 0, newCharStart, 0, lineCharStart.length);
+            lineCharStart = newCharStart;
+        }
+        lineByteStart[indexedLines + 1] = end;
+        lineCharStart[indexedLines + 1] = lineCharStart[indexedLines] + chars;
+        indexedLines++;
+    }
+
+    private void schedulePublish(Display display) {
+        SWTConcurrencyUtil.execForDisplay(display, new Runnable() {
+            public void run() {
+                publish();
+            }
+        });
+    }
+
+    /**
+     * Makes the lines indexed so far visible to the widget.
+     */
+    void publish() {
+        int lines;
+        int chars;
+        boolean complete;
+        synchronized (this) {
+            lines = indexedLines;
+            chars = isHex() ? lines * (HEX_LINE_LENGTH + 1) : lineCharStart[lines];
+            complete = indexComplete;
+        }
+
+        if (lines > publishedLines) {
+            fireTextChanging(publishedChars, chars - publishedChars, lines - publishedLines);
+            publishedLines = lines;
+            publishedChars = chars;
+            fireTextChanged();
+        }
+
+        if (complete && !publishedComplete) {
+            String last = getLineText(publishedLines, false);
+            if (last.length() > 0) {
+                fireTextChanging(publishedChars, last.length(), 0);
+                finalLine = last;
+                publishedComplete = true;
+                fireTextChanged();
+            } else {
+                publishedComplete = true;
+            }
+        }
+    }
+
+    private void fireTextChanging(int start, int newCharCount, int newLineCount) {
+        TextChangingEvent event = new TextChangingEvent(this);
+        event.start = start;
+        event.newCharCount = newCharCount;
+        event.newLineCount = newLineCount;
+        event.replaceCharCount = 0;
+        event.replaceLineCount = 0;
+        for (TextChangeListener listener : listeners.toArray(new TextChangeListener[listeners.size()]))
+            listener.textChanging(event);
+    }
+
+    private void fireTextChanged() {
+        TextChangedEvent event = new TextChangedEvent(this);
+        for (TextChangeListener listener : listeners.toArray(new TextChangeListener[listeners.size()]))
+            listener.textChanged(event);
+    }
+
+    /**
+     * Returns the text of an indexed line without its terminator, optionally
+     * followed by the line delimiter.
+     */
+    private String getLineText(int line, boolean withDelimiter) {
+        if (isHex())
+            return getHexLine(line, withDelimiter);
+
+        long start;
+        long end;
+        boolean terminated;
+        synchronized (this) {
+            if (line > indexedLines)
+                return "";
+            start = lineByteStart[line];
+            terminated = line < indexedLines;
+            end = terminated ? lineByteStart[line + 1] : indexedBytes;
+        }
+        byte[] bytes = readBytes(start, (int) (end - start));
+        String text;
+        try {
+            text = new String(bytes, encoding);
+        } catch (UnsupportedEncodingException e) {
+            return "";
+        }
+        int length = text.length();
+        if (length > 0 && text.charAt(length - 1) == '\n') {
+            length--;
+            if (length > 0 && text.charAt(length - 1) == '\r')
+                length--;
+        }
+        text = text.substring(0, length);
+        return withDelimiter && terminated ? text + "\n" : text;
+    }
+
+    private String getHexLine(int line, boolean withDelimiter) {
+        long start = (long) line * HEX_BYTES_PER_LINE;
+        long available;
+        synchronized (this) {
+            available = indexedBytes - start;
+        }
+        if (available <= 0)
+            return "";
+        byte[] bytes = readBytes(start, (int) Math.min(HEX_BYTES_PER_LINE, available));
+
+        StringBuilder builder = new StringBuilder(HEX_LINE_LENGTH + 1);
+        for (int shift = 28; shift >= 0; shift -= 4)
+            builder.append(HEX_DIGITS[(int) (start >>> shift) & 0xF]);
+        builder.append("  ");
+        for (int i = 0; i < HEX_BYTES_PER_LINE; i++) {
+            if (i < bytes.length)
+                builder.append(HEX_DIGITS[(bytes[i] >>> 4) & 0xF]).append(HEX_DIGITS[bytes[i] & 0xF]).append(' ');
+            else
+                builder.append("   ");
+        }
+        builder.append(' ');
+        for (byte b : bytes)
+            builder.append(b >= 0x20 && b < 0x7F ? (char) b : '.');
+        if (withDelimiter && bytes.length == HEX_BYTES_PER_LINE)
+            builder.append('\n');
+        return builder.toString();
+    }
+
+    private synchronized byte[] readBytes(long start, int length) {
+        byte[] result = new byte[length];
+        int done = 0;
+        while (done < length) {
+            long offset = start + done;
+            long pageNumber = offset / PAGE_SIZE;
+            byte[] page = getPage(pageNumber);
+            int pageOffset = (int) (offset - pageNumber * PAGE_SIZE);
+            if (pageOffset >= page.length)
+                break;
+            int count = Math.min(page.length - pageOffset, length - done);
+            System.arraycopy(page, pageOffset, result, done, count);
+            done += count;
+        }
+        return result;
+    }
+
+    private byte[] getPage(long pageNumber) {
+        byte[] page = pages.get(pageNumber);
+        if (page != null)
+            return page;
+        if (spill == null)
+            return new byte[0];
+
+        long pageStart = pageNumber * PAGE_SIZE;
+        int length = (int) Math.max(0, Math.min(PAGE_SIZE, indexedBytes - pageStart));
+        page = new byte[length];
+        try {
+            spill.seek(pageStart);
+            spill.readFully(page);
+        } catch (IOException e) {
+            Plugin.getDefault().getLog().log(new Status(IStatus.ERROR, Constants.PLUGIN_ID, 0, "I/O error reading JAR file contents", e));
+            return new byte[0];
+        }
+        // The last page may still grow while the entry is being indexed
+        if (length == PAGE_SIZE || indexComplete)
+            pages.put(pageNumber, page);
+        return page;
+    }
+
+    /**
+     * Releases the temporary file and pages held by the content.
+     */
+    synchronized void dispose() {
+        disposed = true;
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            spill = null;
+        }
+        if (spillFile != null) {
+            spillFile.delete();
+            spillFile = null;
+        }
+        pages.clear();
+    }
+
+    public void addTextChangeListener(TextChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeTextChangeListener(TextChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public int getCharCount() {
+        return publishedChars + finalLine.length();
+    }
+
+    public String getLine(int lineIndex) {
+        if (lineIndex < publishedLines)
+            return getLineText(lineIndex, false);
+        return lineIndex == publishedLines ? finalLine : "";
+    }
+
+    public int getLineAtOffset(int offset) {
+        if (offset >= publishedChars)
+            return publishedLines;
+        if (isHex())
+            return offset / (HEX_LINE_LENGTH + 1);
+
+        synchronized (this) {
+            int low = 0;
+            int high = publishedLines - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (lineCharStart[mid] <= offset)
+                    low = mid;
+                else
+                    high = mid - 1;
+            }
+            return low;
+        }
+    }
+
+    public int getLineCount() {
+        return publishedLines + 1;
+    }
+
+    public String getLineDelimiter() {
+        return "\n";
+    }
+
+    public int getOffsetAtLine(int lineIndex) {
+        if (lineIndex >= publishedLines)
+            return publishedChars;
+        if (isHex())
+            return lineIndex * (HEX_LINE_LENGTH + 1);
+        synchronized (this) {
+            return lineCharStart[lineIndex];
+        }
+    }
+
+    public String getTextRange(int start, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        int end = start + length;
+        int line = getLineAtOffset(start);
+        while (builder.length() < length && line <= publishedLines) {
+            int lineOffset = getOffsetAtLine(line);
+            String text = line < publishedLines ? getLineText(line, true) : finalLine;
+            int from = Math.max(0, start - lineOffset);
+            int to = Math.min(text.length(), end - lineOffset);
+            if (from < to)
+                builder.append(text, from, to);
+            line++;
+        }
+        return builder.toString();
+    }
+
+    public void replaceTextRange(int start, int replaceLength, String text) {
+        // read-only
+    }
+
+    public void setText(String text) {
+        // read-only
+    }
+}
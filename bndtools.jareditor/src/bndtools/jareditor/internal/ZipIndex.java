@@ -0,0 +1,488 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Neil Bartlett.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Neil Bartlett - initial API and implementation
+ *******************************************************************************/
+package bndtools.jareditor.internal;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.util.Enumeration;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Compact index of the entries of a ZIP file, read once from its central
+ * directory. Entry names are kept as UTF-8 bytes in a single array, and the
+ * entry attributes in parallel primitive arrays, so no objects are created per
+ * entry. Entries are addressed by their position in name order.
+ */
+class ZipIndex {
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_LENGTH = 30;
+    private static final int END_LENGTH = 22;
+    private static final int CENTRAL_LENGTH = 46;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    private static final String UTF8 = "UTF-8";
+
+    private final File file;
+    private final byte[] names;
+    private final int[] nameStart;
+    private final int[] nameLength;
+    private final long[] size;
+    private final long[] compressedSize;
+    private final long[] crc;
+    private final int[] method;
+    private final long[] headerOffset;
+
+    private ZipIndex(File file, byte[] names, int count) {
+        this.file = file;
+        this.names = names;
+        this.nameStart = new int[count];
+        this.nameLength = new int[count];
+        this.size = new long[count];
+        this.compressedSize = new long[count];
+        this.crc = new long[count];
+        this.method = new int[count];
+        this.headerOffset = new long[count];
+    }
+
+    public static ZipIndex open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            ZipIndex index = readCentralDirectory(file, raf);
+            if (index == null)
+                index = readEntries(file);
+            index.sort();
+            return index;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the central directory, or returns {@code null} if the file does
+     * not have a plain (non-ZIP64) central directory.
+     */
+    private static ZipIndex readCentralDirectory(File file, RandomAccessFile raf) throws IOException {
+        long length = raf.length();
+        if (length < END_LENGTH)
+            return null;
+
+        int tailLength = (int) Math.min(length, END_LENGTH + MAX_COMMENT_LENGTH);
+        byte[] tail = new byte[tailLength];
+        raf.seek(length - tailLength);
+        raf.readFully(tail);
+
+        int end = -1;
+        for (int i = tailLength - END_LENGTH; i >= 0; i--) {
+            if (readInt(tail, i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0)
+            return null;
+
+        int count = readShort(tail, end + 10);
+        long directorySize = readInt(tail, end + 12) & 0xFFFFFFFFL;
+        long directoryOffset = readInt(tail, end + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || directoryOffset == 0xFFFFFFFFL || directorySize > Integer.MAX_VALUE)
+            return null;
+
+        byte[] directory = new byte[(int) directorySize];
+        raf.seek(directoryOffset);
+        raf.readFully(directory);
+
+        // The names are copied out so the rest of the directory can be discarded
+        int namesLength = 0;
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENTRAL_LENGTH > directory.length || readInt(directory, pos) != CENTRAL_SIGNATURE)
+                return null;
+            int nameLen = readShort(directory, pos + 28);
+            namesLength += nameLen;
+            pos += CENTRAL_LENGTH + nameLen + readShort(directory, pos + 30) + readShort(directory, pos + 32);
+        }
+
+        ZipIndex index = new ZipIndex(file, new byte[namesLength], count);
+        int nameOffset = 0;
+        pos = 0;
+        for (int i = 0; i < count; i++) {
+            int nameLen = readShort(directory, pos + 28);
+            System.arraycopy(directory, pos + CENTRAL_LENGTH, index.names, nameOffset, nameLen);
+            index.nameStart[i] = nameOffset;
+            index.nameLength[i] = nameLen;
+            index.method[i] = readShort(directory, pos + 10);
+            index.crc[i] = readInt(directory, pos + 16) & 0xFFFFFFFFL;
+            index.compressedSize[i] = readInt(directory, pos + 20) & 0xFFFFFFFFL;
+            index.size[i] = readInt(directory, pos + 24) & 0xFFFFFFFFL;
+            index.headerOffset[i] = readInt(directory, pos + 42) & 0xFFFFFFFFL;
+            nameOffset += nameLen;
+            pos += CENTRAL_LENGTH + nameLen + readShort(directory, pos + 30) + readShort(directory, pos + 32);
+        }
+        return index;
+    }
+
+    /**
+     * Fallback for archives that the central directory reader does not
+     * handle, e.g. ZIP64 files: reads the entries through {@link ZipFile}.
+     */
+    private static ZipIndex readEntries(File file) throws IOException {
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            int count = 0;
+            int namesLength = 0;
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                namesLength += entries.nextElement().getName().getBytes(UTF8).length;
+                count++;
+            }
+
+            ZipIndex index = new ZipIndex(file, new byte[namesLength], count);
+            int nameOffset = 0;
+            int i = 0;
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements() && i < count; i++) {
+                ZipEntry entry = entries.nextElement();
+                byte[] name = entry.getName().getBytes(UTF8);
+                System.arraycopy(name, 0, index.names, nameOffset, name.length);
+                index.nameStart[i] = nameOffset;
+                index.nameLength[i] = name.length;
+                index.method[i] = entry.getMethod();
+                index.crc[i] = entry.getCrc();
+                index.compressedSize[i] = entry.getCompressedSize();
+                index.size[i] = entry.getSize();
+                index.headerOffset[i] = -1;
+                nameOffset += name.length;
+            }
+            return index;
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private static int readShort(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return readShort(b, off) | (readShort(b, off + 2) << 16);
+    }
+
+    /**
+     * Sorts the entry arrays by name, keeping them parallel.
+     */
+    private void sort() {
+        int count = nameStart.length;
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++)
+            order[i] = i;
+        mergeSort(order, new int[count], 0, count);
+
+        permute(order, nameStart);
+        permute(order, nameLength);
+        permute(order, method);
+        permute(order, crc);
+        permute(order, compressedSize);
+        permute(order, size);
+        permute(order, headerOffset);
+    }
+
+    private void mergeSort(int[] a, int[] tmp, int from, int to) {
+        if (to - from < 2)
+            return;
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid);
+        mergeSort(a, tmp, mid, to);
+        if (compareEntries(a[mid - 1], a[mid]) <= 0)
+            return;
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to)
+            a[k++] = compareEntries(tmp[i], tmp[j]) <= 0 ? tmp[i++] : tmp[j++];
+        while (i < mid)
+            a[k++] = tmp[i++];
+        while (j < to)
+            a[k++] = tmp[j++];
+    }
+
+    private int compareEntries(int e1, int e2) {
+        return compare(names, nameStart[e1], nameLength[e1], names, nameStart[e2], nameLength[e2]);
+    }
+
+    private static int compare(byte[] b1, int off1, int len1, byte[] b2, int off2, int len2) {
+        int n = Math.min(len1, len2);
+        for (int i = 0; i < n; i++) {
+            int diff = (b1[off1 + i] & 0xFF) - (b2[off2 + i] & 0xFF);
+            if (diff != 0)
+                return diff;
+        }
+        return len1 - len2;
+    }
+
+    private static void permute(int[] order, int[] values) {
+        int[] copy = values.clone();
+        for (int i = 0; i < order.length; i++)
+            values[i] = copy[order[i]];
+    }
+
+    private static void permute(int[] order, long[] values) {
+        long[] copy = values.clone();
+        for (int i = 0; i < order.length; i++)
+            values[i] = copy[order[i]];
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int size() {
+        return nameStart.length;
+    }
+
+    public String getName(int entry) {
+        return decode(nameStart[entry], nameLength[entry]);
+    }
+
+    /**
+     * Returns the part of the entry name from the given byte offset up to
+     * and including the next slash, or to the end of the name.
+     */
+    String getSegment(int entry, int from) {
+        int start = nameStart[entry] + from;
+        int end = nameStart[entry] + nameLength[entry];
+        int pos = start;
+        while (pos < end && names[pos] != '/')
+            pos++;
+        if (pos < end)
+            pos++;
+        return decode(start, pos - start);
+    }
+
+    int getNameLength(int entry) {
+        return nameLength[entry];
+    }
+
+    public long getHeaderOffset(int entry) {
+        return headerOffset[entry];
+    }
+
+    public int getMethod(int entry) {
+        return method[entry];
+    }
+
+    public long getCompressedSize(int entry) {
+        return compressedSize[entry];
+    }
+
+    /**
+     * Opens a stream over the uncompressed content of the entry. Stored and
+     * deflated entries are read directly from their local header offset;
+     * anything else goes through {@link ZipFile}.
+     */
+    public InputStream openStream(int entry) throws IOException {
+        long offset = headerOffset[entry];
+        int entryMethod = method[entry];
+        if (offset < 0 || (entryMethod != ZipEntry.STORED && entryMethod != ZipEntry.DEFLATED))
+            return openZipFileStream(entry);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        boolean opened = false;
+        try {
+            byte[] header = new byte[LOCAL_LENGTH];
+            raf.seek(offset);
+            raf.readFully(header);
+            if (readInt(header, 0) != LOCAL_SIGNATURE)
+                throw new IOException("Invalid local header for entry " + getName(entry));
+            long dataStart = offset + LOCAL_LENGTH + readShort(header, 26) + readShort(header, 28);
+
+            boolean deflated = entryMethod == ZipEntry.DEFLATED;
+            InputStream result = new EntryDataStream(raf, dataStart, compressedSize[entry], deflated);
+            if (deflated) {
+                result = new InflaterInputStream(result, new Inflater(true)) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inf.end();
+                    }
+                };
+            }
+            opened = true;
+            return result;
+        } finally {
+            if (!opened)
+                raf.close();
+        }
+    }
+
+    private InputStream openZipFileStream(int entry) throws IOException {
+        final ZipFile zipFile = new ZipFile(file);
+        ZipEntry zipEntry = zipFile.getEntry(getName(entry));
+        if (zipEntry == null) {
+            zipFile.close();
+            throw new IOException("Entry not found: " + getName(entry));
+        }
+        return new FilterInputStream(zipFile.getInputStream(zipEntry)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    zipFile.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * The raw data of an entry, optionally followed by the extra dummy byte
+     * that an {@link Inflater} in "nowrap" mode may need to detect the end of
+     * input.
+     */
+    private static class EntryDataStream extends InputStream {
+        private final RandomAccessFile raf;
+        private long position;
+        private long remaining;
+        private boolean dummy;
+
+        EntryDataStream(RandomAccessFile raf, long position, long length, boolean dummy) {
+            this.raf = raf;
+            this.position = position;
+            this.remaining = length;
+            this.dummy = dummy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (remaining <= 0) {
+                if (!dummy)
+                    return -1;
+                dummy = false;
+                b[off] = 0;
+                return 1;
+            }
+            raf.seek(position);
+            int n = raf.read(b, off, (int) Math.min(len, remaining));
+            if (n < 0)
+                throw new IOException("Unexpected end of ZIP file");
+            position += n;
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            raf.close();
+        }
+    }
+
+    public ZipEntry createZipEntry(int entry) {
+        ZipEntry result = new ZipEntry(getName(entry));
+        result.setMethod(method[entry]);
+        result.setCrc(crc[entry]);
+        result.setCompressedSize(compressedSize[entry]);
+        result.setSize(size[entry]);
+        return result;
+    }
+
+    /**
+     * Returns the position in the view of the first entry whose name is not
+     * less than the given UTF-8 bytes, searching between the given positions.
+     */
+    int lowerBound(int[] view, int from, int to, byte[] key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int entry = view[mid];
+            if (compare(names, nameStart[entry], nameLength[entry], key, 0, key.length) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the positions of all entries, in name order.
+     */
+    int[] all() {
+        int[] result = new int[size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = i;
+        return result;
+    }
+
+    /**
+     * Returns the positions, in name order, of the entries whose name
+     * contains the given text, ignoring case in ASCII characters.
+     */
+    int[] filter(String text) {
+        byte[] pattern = encode(text);
+        for (int i = 0; i < pattern.length; i++)
+            pattern[i] = toLowerCase(pattern[i]);
+        int[] matches = new int[size()];
+        int count = 0;
+        for (int entry = 0; entry < matches.length; entry++) {
+            if (contains(nameStart[entry], nameLength[entry], pattern))
+                matches[count++] = entry;
+        }
+        int[] result = new int[count];
+        System.arraycopy(matches, 0, result, 0, count);
+        return result;
+    }
+
+    private boolean contains(int start, int length, byte[] pattern) {
+        int last = start + length - pattern.length;
+        outer: for (int pos = start; pos <= last; pos++) {
+            for (int i = 0; i < pattern.length; i++) {
+                if (toLowerCase(names[pos + i]) != pattern[i])
+                    continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private String decode(int start, int length) {
+        try {
+            return new String(names, start, length, UTF8);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static byte[] encode(String string) {
+        try {
+            return string.getBytes(UTF8);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
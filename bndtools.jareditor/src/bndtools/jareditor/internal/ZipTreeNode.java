@@ -10,89 +10,134 @@
  *******************************************************************************/
 package bndtools.jareditor.internal;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.zip.ZipEntry;
 
 import org.eclipse.core.runtime.IAdaptable;
 
+/**
+ * Node of the content tree of a ZIP file. A folder node covers the range of
+ * entries sharing its path in a name-ordered view of a {@link ZipIndex}; its
+ * children are only created when they are first requested.
+ */
 class ZipTreeNode implements IAdaptable {
-	
+
+	private static final ZipTreeNode[] NO_CHILDREN = new ZipTreeNode[0];
+
 	private final ZipTreeNode parent;
+	private final ZipIndex index;
+	private final int[] view;
 	private final String name;
-	private final ZipEntry entry;
-	private final Map<String, ZipTreeNode> children = new LinkedHashMap<String, ZipTreeNode>();
+	private final byte[] path;
+	private final int from;
+	private final int to;
+	private final int entryIndex;
 
-	private ZipTreeNode(ZipTreeNode parent, String name, ZipEntry entry) {
+	private ZipEntry entry = null;
+	private ZipTreeNode[] children = null;
+
+	private ZipTreeNode(ZipTreeNode parent, ZipIndex index, int[] view, String name, byte[] path, int from, int to, int entryIndex) {
 		this.parent = parent;
+		this.index = index;
+		this.view = view;
 		this.name = name;
-		this.entry = entry;
+		this.path = path;
+		this.from = from;
+		this.to = to;
+		this.entryIndex = entryIndex;
+	}
+
+	/**
+	 * Creates the invisible root node over the entries at the given positions
+	 * of the index, which must be in name order.
+	 */
+	public static ZipTreeNode createRoot(ZipIndex index, int[] view) {
+		return new ZipTreeNode(null, index, view, "", new byte[0], 0, view.length, -1);
 	}
-	
+
 	public ZipTreeNode getParent() {
 		return parent;
 	}
 
 	public boolean hasChildren() {
-		return !children.isEmpty();
+		// A folder's own entry, if present, sorts first in its range
+		return path != null && to - from > (entryIndex >= 0 ? 1 : 0);
+	}
+
+	public synchronized ZipTreeNode[] getChildren() {
+		if (children == null)
+			children = path != null ? createChildren() : NO_CHILDREN;
+		return children;
 	}
-	
-	public Collection<ZipTreeNode> getChildren() {
-		return Collections.unmodifiableCollection(children.values());
+
+	private ZipTreeNode[] createChildren() {
+		List<ZipTreeNode> result = new ArrayList<ZipTreeNode>();
+		int pos = from;
+		while (pos < to) {
+			int e = view[pos];
+			if (index.getNameLength(e) == path.length) {
+				pos++;
+				continue;
+			}
+
+			String segment = index.getSegment(e, path.length);
+			if (segment.endsWith("/")) {
+				byte[] segmentBytes = ZipIndex.encode(segment);
+				byte[] childPath = new byte[path.length + segmentBytes.length];
+				System.arraycopy(path, 0, childPath, 0, path.length);
+				System.arraycopy(segmentBytes, 0, childPath, path.length, segmentBytes.length);
+
+				// All names starting with "a/b/" sort before "a/b0"
+				byte[] upper = childPath.clone();
+				upper[upper.length - 1] = '/' + 1;
+				int end = index.lowerBound(view, pos, to, upper);
+
+				int dirEntry = index.getNameLength(e) == childPath.length ? e : -1;
+				result.add(new ZipTreeNode(this, index, view, segment, childPath, pos, end, dirEntry));
+				pos = end;
+			} else {
+				result.add(new ZipTreeNode(this, index, view, segment, null, pos, pos + 1, e));
+				pos++;
+			}
+		}
+		return result.toArray(new ZipTreeNode[result.size()]);
 	}
-	
-	public ZipEntry getZipEntry() {
+
+	/**
+	 * Returns the number of entries at or below this node.
+	 */
+	public int getEntryCount() {
+		return to - from;
+	}
+
+	public ZipIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the position of the node's entry in the index, or -1 for a
+	 * folder without an entry of its own.
+	 */
+	public int getEntryIndex() {
+		return entryIndex;
+	}
+
+	public synchronized ZipEntry getZipEntry() {
+		if (entry == null && entryIndex >= 0)
+			entry = index.createZipEntry(entryIndex);
 		return entry;
 	}
-	
+
 	@Override
 	public String toString() {
 		return name;
-	
-	}
-	public static void addEntry(Map<String, ZipTreeNode> rootMap, ZipEntry entry) {
-		List<String> path = getPath(entry);
-		pushEntry(null, rootMap, path, entry);
-	}
-	
-	private static void pushEntry(ZipTreeNode parent, Map<String, ZipTreeNode> map, List<String> path, ZipEntry entry) {
-		String pathPart = path.remove(0);
-		ZipTreeNode node = map.get(pathPart);
-		if(node == null) {
-			node = new ZipTreeNode(parent, pathPart, path.isEmpty() ? entry : null);
-			map.put(pathPart, node);
-		}
-		if(!path.isEmpty()) pushEntry(node, node.children, path, entry);
-	}
-	
-	private static List<String> getPath(ZipEntry entry) {
-		List<String> path = new LinkedList<String>();
-		
-		String name = entry.getName();
-		int index = 0;
-		while(index < name.length()) {
-			int nextSlash = name.indexOf('/', index);
-			
-			if(nextSlash == -1) {
-				path.add(name.substring(index));
-				break;
-			} else {
-				path.add(name.substring(index, nextSlash + 1));
-				index = nextSlash + 1;
-			}
-		}
-		
-		return path;
 	}
 
 	public Object getAdapter(@SuppressWarnings("unchecked") Class adapter) {
 		if(adapter == JarEntry.class) {
-			return entry;
+			return getZipEntry();
 		}
 		return null;
 	}
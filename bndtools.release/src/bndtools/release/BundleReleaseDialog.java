@@ -40,14 +40,16 @@ public class BundleReleaseDialog extends Dialog {
 	private BundleRelease release;
 	private Project project;
 	private List<JarDiff> diffs;
+	private ReleaseSession session;
 	private Combo releaseRepoCombo;
 	
-	public BundleReleaseDialog(Shell parentShell, Project project, List<JarDiff> compare) {
+	public BundleReleaseDialog(Shell parentShell, Project project, List<JarDiff> compare, ReleaseSession session) {
 		super(parentShell);
 		super.setShellStyle(SWT.DIALOG_TRIM | SWT.RESIZE | SWT.MAX | SWT.MIN);
 		this.project = project;
 		release = new BundleRelease(compare);
 		this.diffs = compare;
+		this.session = session;
 	}
 
 	@Override
@@ -150,7 +152,7 @@ public class BundleReleaseDialog extends Dialog {
 
 		ReleaseContext context = new ReleaseContext(project, diffs, release, updateOnly);
 		
-		ReleaseJob job = new ReleaseJob(context);
+		ReleaseJob job = new ReleaseJob(context, session);
 		job.schedule();
 		
 		super.okPressed();
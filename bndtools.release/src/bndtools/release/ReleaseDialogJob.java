@@ -30,6 +30,7 @@ import org.osgi.framework.Constants;
 import aQute.bnd.build.Project;
 import aQute.bnd.service.RepositoryPlugin;
 import aQute.lib.osgi.Builder;
+import aQute.lib.osgi.Jar;
 import bndtools.diff.JarDiff;
 import bndtools.release.nl.Messages;
 
@@ -38,6 +39,7 @@ public class ReleaseDialogJob extends Job {
 	private final Shell shell;
 	private final Project project;
 	private final List<File> subBundles;
+	private final ReleaseSession session = new ReleaseSession();
 	
 	public ReleaseDialogJob(Project project, List<File> subBundles) {
 		super(Messages.releaseJob);
@@ -52,6 +54,7 @@ public class ReleaseDialogJob extends Job {
 		
         try {
 	    	monitor.beginTask(Messages.cleaningProject, 100);
+	        long buildStart = System.currentTimeMillis();
 	        try {
 				IProject proj = ResourcesPlugin.getWorkspace().getRoot().getProject(project.getName());
 				proj.build(IncrementalProjectBuilder.FULL_BUILD, null);
@@ -73,9 +76,22 @@ public class ReleaseDialogJob extends Job {
 					}
 				}
 				
-				RepositoryPlugin baselineRepository = ReleaseHelper.getBaselineRepository(project, b.getBsn(), b.getProperty(Constants.BUNDLE_VERSION));
-				
-				JarDiff jarDiff = JarDiff.createJarDiff(project, baselineRepository, b.getBsn());
+				RepositoryPlugin baselineRepository = session.getBaselineRepository(project, b.getBsn(), b.getProperty(Constants.BUNDLE_VERSION));
+
+				// Compare the bundle produced by the build above rather than packaging it again
+				File built = session.recordBuild(project, b, buildStart);
+				JarDiff jarDiff;
+				if (built != null) {
+					// The diff reads the jar only while it is being created
+					Jar jar = new Jar(built);
+					try {
+						jarDiff = JarDiff.createJarDiff(b, jar, baselineRepository);
+					} finally {
+						jar.close();
+					}
+				} else {
+					jarDiff = JarDiff.createJarDiff(project, baselineRepository, b.getBsn());
+				}
 				if (jarDiff != null) {
 					diffs.add(jarDiff);
 				}
@@ -88,7 +104,7 @@ public class ReleaseDialogJob extends Job {
 			
 			Runnable runnable = new Runnable() {
 				public void run() {
-					BundleReleaseDialog dialog = new BundleReleaseDialog(shell, project, diffs);
+					BundleReleaseDialog dialog = new BundleReleaseDialog(shell, project, diffs, session);
 					dialog.open();
 				}
 			};
@@ -19,7 +19,9 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -38,6 +40,7 @@ import aQute.lib.osgi.Builder;
 import aQute.lib.osgi.Constants;
 import aQute.lib.osgi.Jar;
 import aQute.libg.reporter.Reporter;
+import aQute.libg.version.Version;
 import bndtools.diff.JarDiff;
 import bndtools.diff.PackageInfo;
 import bndtools.editor.model.BndEditModel;
@@ -115,6 +118,35 @@ public class ReleaseHelper {
 		}
 	}
 
+	/**
+	 * Refreshes the files the version updates and release participants may
+	 * have changed. The version updates only change the bnd files, apart from
+	 * the packageinfo files, which are refreshed as they are written. What a
+	 * participant writes is unknown, so if there are any participants the
+	 * whole project is refreshed.
+	 */
+	private static void refreshChangedFiles(ReleaseContext context, List<IReleaseParticipant> participants) throws Exception {
+		if (!participants.isEmpty()) {
+			IProject project = ReleaseUtils.getProject(context.getProject());
+			project.refreshLocal(IResource.DEPTH_INFINITE, context.getProgressMonitor());
+			return;
+		}
+
+		Set<File> files = new LinkedHashSet<File>();
+		files.add(context.getProject().getPropertiesFile());
+		for (Builder builder : context.getProject().getBuilder(null).getSubBuilders()) {
+			if (builder.getPropertiesFile() != null) {
+				files.add(builder.getPropertiesFile());
+			}
+		}
+		for (File file : files) {
+			IResource resource = ReleaseUtils.toResource(file);
+			if (resource != null) {
+				resource.refreshLocal(IResource.DEPTH_ZERO, context.getProgressMonitor());
+			}
+		}
+	}
+
 	private static JarDiff getJarDiffForBuilder(Builder builder, ReleaseContext context) {
 		JarDiff current = null;
 		for (JarDiff jd : context.getJarDiffs()) {
@@ -127,6 +159,10 @@ public class ReleaseHelper {
 	}
 
 	public static boolean release(ReleaseContext context, List<JarDiff> jarDiffs) throws Exception {
+		return release(context, jarDiffs, new ReleaseSession());
+	}
+
+	public static boolean release(ReleaseContext context, List<JarDiff> jarDiffs, ReleaseSession session) throws Exception {
 
 		boolean ret = true;
 
@@ -140,8 +176,7 @@ public class ReleaseHelper {
 
 		ReleaseHelper.updateProject(context);
 
-		IProject proj = ReleaseUtils.getProject(context.getProject());
-		proj.refreshLocal(IResource.DEPTH_INFINITE, context.getProgressMonitor());
+		refreshChangedFiles(context, participants);
 
 		if (context.isUpdateOnly()) {
 			return true;
@@ -163,7 +198,7 @@ public class ReleaseHelper {
 				}
 			}
 			if (builder != null) {
-				if (!release(context, participants, builder)) {
+				if (!release(context, participants, builder, session)) {
 					ret = false;
 				}
 			}
@@ -214,28 +249,41 @@ public class ReleaseHelper {
 
 	}
 
-	private static boolean release(ReleaseContext context, List<IReleaseParticipant> participants, Builder builder) throws Exception {
+	private static boolean release(ReleaseContext context, List<IReleaseParticipant> participants, Builder builder, ReleaseSession session) throws Exception {
 
 		context.getProject().refresh();
 		context.getProject().setChanged();
 
-		Jar jar = builder.build();
+		Jar jar;
+		File built = session.getBuiltJar(context.getProject(), builder);
+		if (built != null) {
+			jar = new Jar(built);
+		} else {
+			jar = builder.build();
+			handleBuildErrors(context, builder, jar);
+		}
 
-		handleBuildErrors(context, builder, jar);
+		String symbName;
+		String version;
+		try {
+			symbName = ReleaseUtils.getBundleSymbolicName(jar);
+			version = ReleaseUtils.getBundleVersion(jar);
 
-		String symbName = ReleaseUtils.getBundleSymbolicName(jar);
-		String version = ReleaseUtils.getBundleVersion(jar);
+			boolean proceed = preJarRelease(context, participants, jar);
+			if (!proceed) {
+				postRelease(context, participants, false);
+				displayErrors(context, Scope.PRE_JAR_RELEASE);
+				return false;
+			}
 
-		boolean proceed = preJarRelease(context, participants, jar);
-		if (!proceed) {
-			postRelease(context, participants, false);
-			displayErrors(context, Scope.PRE_JAR_RELEASE);
-			return false;
+			context.getProject().release(context.getReleaseRepository().getName(), jar);
+			context.getProject().refresh();
+		} finally {
+			// A jar built by the builder belongs to the builder
+			if (built != null)
+				jar.close();
 		}
 
-		context.getProject().release(context.getReleaseRepository().getName(), jar);
-		context.getProject().refresh();
-
 		File file = context.getReleaseRepository().get(symbName, '[' + version + ',' + version + ']', Strategy.HIGHEST, null);
 		Jar releasedJar = null;
 		if (file != null && file.exists()) {
@@ -387,6 +435,11 @@ public class ReleaseHelper {
 		List<RepositoryPlugin> repos = Activator.getRepositories();
 		for (RepositoryPlugin repo : repos) {
 			try {
+				// Only fetch from repositories that have the bundle at all
+				List<Version> versions = repo.versions(bsn);
+				if (versions == null || versions.isEmpty()) {
+					continue;
+				}
 				File file;
 				if (version == null) {
 					file = repo.get(bsn, null, Strategy.HIGHEST, null);
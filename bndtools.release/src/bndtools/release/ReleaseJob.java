@@ -28,10 +28,12 @@ import bndtools.release.nl.Messages;
 public class ReleaseJob  extends Job {
 	
 	private ReleaseContext context;
+	private ReleaseSession session;
 
-	public ReleaseJob(ReleaseContext context) {
+	public ReleaseJob(ReleaseContext context, ReleaseSession session) {
 		super(Messages.bundleReleaseJob);
 		this.context = context;
+		this.session = session;
 	}
 
 	@Override
@@ -45,7 +47,7 @@ public class ReleaseJob  extends Job {
 			proj.refreshLocal(IResource.DEPTH_INFINITE, monitor);
 			
 			
-			boolean ok = ReleaseHelper.release(context, context.getJarDiffs());
+			boolean ok = ReleaseHelper.release(context, context.getJarDiffs(), session);
 			
 			ResourcesPlugin.getWorkspace().getRoot().getProject(context.getProject().getName()).refreshLocal(IResource.DEPTH_INFINITE, context.getProgressMonitor());
 			
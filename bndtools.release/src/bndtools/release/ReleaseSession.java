@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Per Kr. Soreide.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Per Kr. Soreide - initial API and implementation
+ *******************************************************************************/
+package bndtools.release;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.service.RepositoryPlugin;
+import aQute.lib.osgi.Builder;
+import aQute.lib.osgi.Jar;
+
+/**
+ * State shared by the steps of a single release, from the build done before
+ * the release dialog opens to the release of the last bundle. It remembers the
+ * bundles produced by that build, so that they are only packaged again when
+ * their inputs have changed, and the baseline repository found for each
+ * bundle.
+ */
+public class ReleaseSession {
+
+	private final Map<String, BuiltJar> builtJars = new HashMap<String, BuiltJar>();
+	private final Map<String, RepositoryPlugin> baselineRepositories = new HashMap<String, RepositoryPlugin>();
+
+	private static class BuiltJar {
+		final String digest;
+		final File file;
+		final long lastModified;
+		final long length;
+
+		BuiltJar(String digest, File file) {
+			this.digest = digest;
+			this.file = file;
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+		}
+	}
+
+	/**
+	 * Records the target JAR of a builder as built from its current inputs,
+	 * provided it was written at or after the given time.
+	 *
+	 * @return the recorded JAR, or null if there is none recent enough.
+	 */
+	public synchronized File recordBuild(Project project, Builder builder, long since) throws Exception {
+		File file = project.getOutputFile(builder.getBsn());
+		// Allow for file systems that only store modification times in seconds
+		if (!file.isFile() || file.lastModified() < since - since % 1000) {
+			return null;
+		}
+		builtJars.put(builder.getBsn(), new BuiltJar(digest(project, builder), file));
+		return file;
+	}
+
+	/**
+	 * Returns the target JAR recorded for the builder if neither the JAR nor
+	 * the builder's inputs have changed since, or null if it must be built
+	 * again.
+	 */
+	public synchronized File getBuiltJar(Project project, Builder builder) throws Exception {
+		BuiltJar built = builtJars.get(builder.getBsn());
+		if (built == null) {
+			return null;
+		}
+		if (built.file.lastModified() != built.lastModified || built.file.length() != built.length || !built.digest.equals(digest(project, builder))) {
+			builtJars.remove(builder.getBsn());
+			return null;
+		}
+		return built.file;
+	}
+
+	public synchronized RepositoryPlugin getBaselineRepository(Project project, String bsn, String version) {
+		String key = bsn + ';' + version;
+		if (baselineRepositories.containsKey(key)) {
+			return baselineRepositories.get(key);
+		}
+		RepositoryPlugin repo = ReleaseHelper.getBaselineRepository(project, bsn, version);
+		baselineRepositories.put(key, repo);
+		return repo;
+	}
+
+	/**
+	 * Computes a digest of the inputs of a builder: its properties, and the
+	 * names and modification times of its classpath and of the project output.
+	 */
+	static String digest(Project project, Builder builder) throws Exception {
+		MessageDigest md = MessageDigest.getInstance("SHA-1");
+
+		Map<String, String> properties = new TreeMap<String, String>();
+		Properties props = builder.getProperties();
+		for (Enumeration<?> e = props.propertyNames(); e.hasMoreElements();) {
+			String key = (String) e.nextElement();
+			properties.put(key, props.getProperty(key));
+		}
+		for (Map.Entry<String, String> entry : properties.entrySet()) {
+			update(md, entry.getKey());
+			update(md, entry.getValue());
+		}
+
+		for (Jar jar : builder.getClasspath()) {
+			File source = jar.getSource();
+			if (source != null) {
+				update(md, source.getAbsolutePath());
+				updateTimestamps(md, source);
+			} else {
+				update(md, jar.getName());
+				update(md, Long.toString(jar.lastModified()));
+			}
+		}
+		File output = project.getOutput();
+		update(md, output.getAbsolutePath());
+		updateTimestamps(md, output);
+
+		StringBuilder sb = new StringBuilder();
+		for (byte b : md.digest()) {
+			sb.append(Integer.toHexString((b >> 4) & 0xF)).append(Integer.toHexString(b & 0xF));
+		}
+		return sb.toString();
+	}
+
+	private static void updateTimestamps(MessageDigest md, File file) throws Exception {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children != null) {
+				Arrays.sort(children);
+				update(md, Integer.toString(children.length));
+				for (File child : children) {
+					update(md, child.getName());
+					updateTimestamps(md, child);
+				}
+			}
+		} else {
+			update(md, Long.toString(file.lastModified()));
+			update(md, Long.toString(file.length()));
+		}
+	}
+
+	private static void update(MessageDigest md, String s) throws Exception {
+		md.update(String.valueOf(s).getBytes("UTF-8"));
+		md.update((byte) 0);
+	}
+}
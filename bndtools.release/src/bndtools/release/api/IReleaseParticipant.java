@@ -44,7 +44,8 @@ public interface IReleaseParticipant {
 
 	/**
 	 * Called just before the the '*.bnd' and 'packageinfo' files in the project are updated. 
-	 * Can be used to override the suggested versions in JarDiff's
+	 * Can be used to override the suggested versions in JarDiff's.
+	 * The project is refreshed after the update, so files written here need not be refreshed.
 	 * @param context
 	 * @return if false, the release is canceled and postRelease is called with success = false
 	 */
@@ -13,7 +13,20 @@ package bndtools.release.api;
 import java.io.File;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -25,7 +38,9 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.team.core.RepositoryProvider;
 import org.eclipse.team.core.history.IFileHistory;
 import org.eclipse.team.core.history.IFileHistoryProvider;
@@ -34,13 +49,19 @@ import org.eclipse.team.core.subscribers.Subscriber;
 import org.eclipse.team.core.synchronize.SyncInfoSet;
 
 import aQute.bnd.build.Project;
+import aQute.bnd.build.Workspace;
 import aQute.bnd.service.RepositoryPlugin;
+import aQute.lib.osgi.Builder;
 import aQute.lib.osgi.Constants;
 import aQute.lib.osgi.Jar;
+import aQute.lib.osgi.Processor;
+import aQute.libg.header.OSGiHeader;
 import aQute.libg.version.Version;
 
 public class ReleaseUtils {
 
+	private static final long CANCEL_POLL_INTERVAL = 200;
+
 	/**
 	 * Get the Jar name as it appears in the Repository e.g. bndtools.release-1.0.0.jar
 	 * @param jar
@@ -195,29 +216,245 @@ public class ReleaseUtils {
 		return getTeamOutOfSyncResources(project, monitor).length == 0;
 	}
 
+	/**
+	 * Returns the resources that are out of sync with the team repository,
+	 * except *.bnd & packageinfo files. For a bnd project only the source
+	 * folders of the packages and the resources included by its sub-builders
+	 * are checked; each sub-builder is checked concurrently. If nothing of the
+	 * project can be attributed to a sub-builder, the whole project is checked.
+	 * @param project
+	 * @param monitor
+	 * @return
+	 * @throws CoreException
+	 */
 	public static IResource[] getTeamOutOfSyncResources(IProject project, IProgressMonitor monitor) throws CoreException {
 		RepositoryProvider provider = RepositoryProvider.getProvider(project);
 		if (provider == null) {
 			return new IResource[0];
 		}
-		Subscriber subscriber = provider.getSubscriber();
-		subscriber.refresh(new IResource[] {project}, IResource.DEPTH_INFINITE, monitor);
+		final Subscriber subscriber = provider.getSubscriber();
+
+		List<ReleaseScope> scopes = getReleaseScopes(project);
+		if (scopes == null || scopes.isEmpty()) {
+			// Not a bnd project, its builders could not be read or name nothing in it: check all of it
+			ReleaseScope scope = new ReleaseScope();
+			scope.add(project, IResource.DEPTH_INFINITE);
+			scopes = Collections.singletonList(scope);
+		}
+
+		final IProgressMonitor root = monitor != null ? monitor : new NullProgressMonitor();
+		final SubMonitor progress = SubMonitor.convert(monitor, scopes.size());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(scopes.size(), Runtime.getRuntime().availableProcessors()));
+		try {
+			List<Future<SyncInfoSet>> futures = new ArrayList<Future<SyncInfoSet>>(scopes.size());
+			for (final ReleaseScope scope : scopes) {
+				futures.add(executor.submit(new Callable<SyncInfoSet>() {
+					public SyncInfoSet call() throws Exception {
+						// A SubMonitor must not be used from other threads, so each scope only follows the cancellation of the caller's monitor
+						return scope.collectOutOfSync(subscriber, new NullProgressMonitor() {
+							@Override
+							public boolean isCanceled() {
+								return super.isCanceled() || root.isCanceled();
+							}
+						});
+					}
+				}));
+			}
+
+			Set<IResource> res = new LinkedHashSet<IResource>();
+			for (Future<SyncInfoSet> future : futures) {
+				SyncInfoSet sis = null;
+				try {
+					while (sis == null) {
+						if (progress.isCanceled()) {
+							throw new OperationCanceledException();
+						}
+						try {
+							sis = future.get(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+						} catch (TimeoutException e) {
+							// check for cancellation again
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new OperationCanceledException();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof CoreException) {
+						throw (CoreException) e.getCause();
+					}
+					throw new RuntimeException(e.getCause());
+				}
+				for (IResource resource : sis.getResources()) {
+					if (resource instanceof IFile) {
+						IFile file = (IFile) resource;
+						if (file.getName().endsWith(".bnd") || file.getName().equals("packageinfo")) {
+							continue;
+						}
+					}
+					res.add(resource);
+				}
+				progress.worked(1);
+			}
+			return res.toArray(new IResource[res.size()]);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * The folders that feed the bundle of one sub-builder, with the depth at
+	 * which each is checked.
+	 */
+	private static class ReleaseScope {
+		final List<IResource> deep = new ArrayList<IResource>();
+		final List<IResource> shallow = new ArrayList<IResource>();
+
+		void add(IResource resource, int depth) {
+			if (depth == IResource.DEPTH_INFINITE) {
+				deep.add(resource);
+			} else {
+				shallow.add(resource);
+			}
+		}
+
+		SyncInfoSet collectOutOfSync(Subscriber subscriber, IProgressMonitor monitor) throws CoreException {
+			SyncInfoSet sis = new SyncInfoSet();
+			collectOutOfSync(subscriber, deep, IResource.DEPTH_INFINITE, sis, monitor);
+			collectOutOfSync(subscriber, shallow, IResource.DEPTH_ONE, sis, monitor);
+			return sis;
+		}
+
+		private static void collectOutOfSync(Subscriber subscriber, List<IResource> resources, int depth, SyncInfoSet sis, IProgressMonitor monitor) throws CoreException {
+			if (resources.isEmpty()) {
+				return;
+			}
+			if (monitor.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			IResource[] array = resources.toArray(new IResource[resources.size()]);
+			subscriber.refresh(array, depth, monitor);
+			subscriber.collectOutOfSync(array, depth, sis, monitor);
+		}
+	}
 
-		SyncInfoSet sis = new SyncInfoSet();
-		subscriber.collectOutOfSync(new IResource[] {project}, IResource.DEPTH_INFINITE, sis, monitor);
-		List<IResource> res = new ArrayList<IResource>();
-		for (IResource resource : sis.getResources()) {
-			if (resource instanceof IFile) {
-				IFile file = (IFile) resource;
-				if (file.getName().endsWith(".bnd") || file.getName().equals("packageinfo")) {
+	/**
+	 * Works out, for each sub-builder of a bnd project, the source folders of
+	 * the packages named by its Export-Package, Private-Package,
+	 * -exportcontents and Conditional-Package instructions, and the files and
+	 * folders included by its Include-Resource and -includeresource
+	 * instructions. A wildcard instruction covers the package folder that
+	 * contains the wildcard's name segment and everything below; a plain
+	 * package name only the files of its folder. A folder is only checked for
+	 * the first sub-builder that needs it. The bnd files themselves are never
+	 * part of the scope.
+	 *
+	 * @return the scopes, or null if the project is not a bnd project.
+	 */
+	private static List<ReleaseScope> getReleaseScopes(IProject project) {
+		Collection<? extends Builder> builders;
+		Collection<File> sourcePath;
+		try {
+			Project model = Workspace.getProject(project.getLocation().toFile());
+			if (model == null || !model.getPropertiesFile().isFile()) {
+				return null;
+			}
+			builders = model.getSubBuilders();
+			sourcePath = model.getSourcePath();
+		} catch (Exception e) {
+			return null;
+		}
+
+		Map<IResource, Integer> claimed = new HashMap<IResource, Integer>();
+		List<ReleaseScope> scopes = new ArrayList<ReleaseScope>(builders.size());
+		for (Builder builder : builders) {
+			Set<String> patterns = new LinkedHashSet<String>();
+			patterns.addAll(OSGiHeader.parseHeader(builder.getProperty(Constants.EXPORT_PACKAGE)).keySet());
+			patterns.addAll(OSGiHeader.parseHeader(builder.getProperty(Constants.PRIVATE_PACKAGE)).keySet());
+			patterns.addAll(OSGiHeader.parseHeader(builder.getProperty(Constants.EXPORT_CONTENTS)).keySet());
+			patterns.addAll(OSGiHeader.parseHeader(builder.getProperty(Constants.CONDITIONAL_PACKAGE)).keySet());
+
+			ReleaseScope scope = new ReleaseScope();
+			for (String pattern : patterns) {
+				pattern = Processor.removeDuplicateMarker(pattern);
+				if (pattern.startsWith("!")) {
 					continue;
 				}
+				int depth = IResource.DEPTH_ONE;
+				int wildcard = pattern.indexOf('*');
+				if (wildcard > -1) {
+					pattern = pattern.substring(0, wildcard);
+					// A wildcard within a name, e.g. com.foo*, also matches sibling packages such as com.foobar
+					if (!pattern.endsWith(".")) {
+						pattern = pattern.substring(0, pattern.lastIndexOf('.') + 1);
+					}
+					depth = IResource.DEPTH_INFINITE;
+				}
+				String path = pattern.replace('.', '/');
+				while (path.endsWith("/")) {
+					path = path.substring(0, path.length() - 1);
+				}
+				for (File sourceDir : sourcePath) {
+					IResource folder = toWorkspaceResource(path.length() > 0 ? new File(sourceDir, path) : sourceDir);
+					if (folder == null || !folder.exists()) {
+						continue;
+					}
+					Integer claimedDepth = claimed.get(folder);
+					if (claimedDepth != null && (claimedDepth == IResource.DEPTH_INFINITE || claimedDepth == depth)) {
+						continue;
+					}
+					claimed.put(folder, depth);
+					scope.add(folder, depth);
+				}
+			}
+			addIncludedResources(builder, builder.getProperty(Constants.INCLUDE_RESOURCE), scope, claimed);
+			addIncludedResources(builder, builder.getProperty(Constants.INCLUDERESOURCE), scope, claimed);
+			if (!scope.deep.isEmpty() || !scope.shallow.isEmpty()) {
+				scopes.add(scope);
 			}
-			res.add(resource);
 		}
-		return res.toArray(new IResource[res.size()]);
+		return scopes;
 	}
-	
+
+	/**
+	 * Adds the sources of an Include-Resource style instruction to the scope:
+	 * folders with everything below them, files on their own. Literal
+	 * resources have no source and are skipped.
+	 */
+	private static void addIncludedResources(Builder builder, String instruction, ReleaseScope scope, Map<IResource, Integer> claimed) {
+		Map<String, Map<String, String>> clauses = OSGiHeader.parseHeader(instruction);
+		for (Map.Entry<String, Map<String, String>> clause : clauses.entrySet()) {
+			if (clause.getValue().containsKey("literal")) {
+				continue;
+			}
+			String source = Processor.removeDuplicateMarker(clause.getKey());
+			if (source.startsWith("{") && source.endsWith("}")) {
+				source = source.substring(1, source.length() - 1);
+			}
+			if (source.startsWith("-")) {
+				source = source.substring(1);
+			}
+			int eq = source.indexOf('=');
+			if (eq > -1) {
+				source = source.substring(eq + 1);
+			}
+			if (source.startsWith("@")) {
+				source = source.substring(1);
+			}
+
+			File file = builder.getFile(source);
+			IResource resource = toWorkspaceResource(file);
+			if (resource == null || !resource.exists()) {
+				continue;
+			}
+			int depth = file.isDirectory() ? IResource.DEPTH_INFINITE : IResource.DEPTH_ONE;
+			if (claimed.get(resource) != null && claimed.get(resource) == IResource.DEPTH_INFINITE) {
+				continue;
+			}
+			claimed.put(resource, depth);
+			scope.add(resource, depth);
+		}
+	}
+
 	public static String stripInstructions(String header) {
 		if (header == null) {
 			return null;